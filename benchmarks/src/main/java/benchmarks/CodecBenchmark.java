@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.MessageCodec;
+import entities.Message;
+import entities.Message.MessageType;
+import entities.ParkingOrder;
+import server.ParkingServer;
+
+/**
+ * CodecBenchmark - ParkingServer.serialize/deserialize of a gate request and of a 50-row history
+ * reply, with Java serialization and with the binary codec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CodecBenchmark {
+
+    @Param({ "java", "binary" })
+    public String codec;
+
+    @Param({ "gateRequest", "historyReply" })
+    public String shape;
+
+    private Object codecVersion;
+    private Message message;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        codecVersion = "binary".equals(codec) ? MessageCodec.VERSION : null;
+        message = "gateRequest".equals(shape)
+            ? new Message(MessageType.ENTER_PARKING, EmbeddedDatabase.subscriber(1))
+            : new Message(MessageType.PARKING_HISTORY_RESPONSE, sampleHistory(50));
+        encoded = ParkingServer.serialize(message, codecVersion);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return ParkingServer.serialize(message, codecVersion);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return ParkingServer.deserialize(encoded);
+    }
+
+    private static ArrayList<ParkingOrder> sampleHistory(int rows) {
+        ArrayList<ParkingOrder> orders = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 8, 0);
+        for (int i = 0; i < rows; i++) {
+            LocalDateTime entry = start.plusHours(i * 5L);
+            orders.add(new ParkingOrder(i + 1, String.valueOf(100000 + i), EmbeddedDatabase.subscriber(1),
+                i % 2 == 0 ? "ordered" : "not ordered", entry, entry.plusHours(4)));
+        }
+        return orders;
+    }
+}
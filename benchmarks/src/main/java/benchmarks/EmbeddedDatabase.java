@@ -0,0 +1,171 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import services.ConnectionPool;
+
+/**
+ * EmbeddedDatabase - a private in-memory H2 database (MySQL mode) loaded with schema.sql and a
+ * fixed data set, so benchmarks never touch a real ParkB schema.
+ *
+ * Data: SPOTS free spots, SUBSCRIBERS subscribers (subscriber1..N) plus a manager and an attendant,
+ * HISTORY_DAYS days of closed sessions for the reports, and preorders for tomorrow so the
+ * time-slot search has reservations to work around. The random data uses a fixed seed.
+ *
+ * Each instance is a new database with its own pool; close it to drop both.
+ */
+public class EmbeddedDatabase implements AutoCloseable {
+
+    public static final int SPOTS = 100;
+    public static final int SUBSCRIBERS = 200;
+    public static final int HISTORY_DAYS = 30;
+    public static final int SESSIONS_PER_DAY = 40;
+    public static final int RESERVATIONS_TOMORROW = 30;
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final ConnectionPool pool;
+
+    public EmbeddedDatabase() throws SQLException, IOException {
+        String url = "jdbc:h2:mem:parkb" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        pool = new ConnectionPool(url, "sa", "", ConnectionPool.DEFAULT_MIN_SIZE, ConnectionPool.DEFAULT_MAX_SIZE);
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            for (String sql : readSchema().split(";")) {
+                if (!sql.isBlank()) {
+                    stmt.execute(sql);
+                }
+            }
+            seed(conn);
+        }
+    }
+
+    public ConnectionPool getDataSource() {
+        return pool;
+    }
+
+    public static String subscriber(int number) {
+        return "subscriber" + number;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String readSchema() throws IOException {
+        try (InputStream in = EmbeddedDatabase.class.getResourceAsStream("/schema.sql")) {
+            if (in == null) {
+                throw new IOException("schema.sql is not on the classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Data ************************************************************
+
+    private static void seed(Connection conn) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement users = conn.prepareStatement(
+                "INSERT INTO users (UserName, Name, Phone, Email, CarNum, UserTypeEnum) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= SUBSCRIBERS; i++) {
+                addUser(users, subscriber(i), "sub");
+            }
+            addUser(users, "manager1", "mng");
+            addUser(users, "attendant1", "emp");
+            users.executeBatch();
+        }
+
+        try (PreparedStatement spots = conn.prepareStatement("INSERT INTO ParkingSpot (isOccupied) VALUES (false)")) {
+            for (int i = 0; i < SPOTS; i++) {
+                spots.addBatch();
+            }
+            spots.executeBatch();
+        }
+
+        try (PreparedStatement sessions = conn.prepareStatement("""
+                INSERT INTO ParkingInfo
+                (ParkingSpot_ID, User_ID, Date, Code, Actual_start_time, Actual_end_time, Estimated_start_time,
+                 Estimated_end_time, IsOrderedEnum, IsLate, IsExtended)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """)) {
+            int code = 100000;
+            for (int day = HISTORY_DAYS; day >= 1; day--) {
+                LocalDate date = LocalDate.now().minusDays(day);
+                for (int i = 0; i < SESSIONS_PER_DAY; i++) {
+                    LocalTime start = LocalTime.of(6 + random.nextInt(12), random.nextInt(60));
+                    LocalTime estimatedEnd = start.plusHours(4);
+                    boolean late = random.nextInt(10) == 0;
+                    LocalTime end = late ? estimatedEnd.plusMinutes(30) : start.plusMinutes(30 + random.nextInt(210));
+                    sessions.setInt(1, 1 + random.nextInt(SPOTS));
+                    sessions.setInt(2, 1 + random.nextInt(SUBSCRIBERS));
+                    sessions.setDate(3, Date.valueOf(date));
+                    sessions.setInt(4, code++);
+                    sessions.setTime(5, Time.valueOf(start));
+                    sessions.setTime(6, Time.valueOf(end));
+                    sessions.setTime(7, Time.valueOf(start));
+                    sessions.setTime(8, Time.valueOf(estimatedEnd));
+                    sessions.setString(9, random.nextBoolean() ? "ordered" : "not ordered");
+                    sessions.setBoolean(10, late);
+                    sessions.setBoolean(11, random.nextInt(10) == 0);
+                    sessions.addBatch();
+                }
+            }
+            sessions.executeBatch();
+        }
+
+        try (PreparedStatement reservations = conn.prepareStatement("""
+                INSERT INTO Reservations
+                (User_ID, parking_ID, reservation_Date, reservation_start_time, reservation_end_time,
+                 Date_Of_Placing_Order, statusEnum, assigned_parking_spot_id)
+                VALUES (?, ?, ?, ?, ?, ?, 'preorder', ?)
+                """)) {
+            LocalDate tomorrow = LocalDate.now().plusDays(1);
+            for (int i = 0; i < RESERVATIONS_TOMORROW; i++) {
+                int spot = 1 + random.nextInt(SPOTS);
+                LocalTime start = LocalTime.of(8 + random.nextInt(8), 0);
+                reservations.setInt(1, 1 + random.nextInt(SUBSCRIBERS));
+                reservations.setInt(2, spot);
+                reservations.setDate(3, Date.valueOf(tomorrow));
+                reservations.setTime(4, Time.valueOf(start));
+                reservations.setTime(5, Time.valueOf(start.plusHours(4)));
+                reservations.setTimestamp(6, Timestamp.valueOf(LocalDateTime.now().minusDays(1)));
+                reservations.setInt(7, spot);
+                reservations.addBatch();
+            }
+            reservations.executeBatch();
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    private static void addUser(PreparedStatement users, String userName, String type) throws SQLException {
+        users.setString(1, userName);
+        users.setString(2, "User " + userName);
+        users.setString(3, "050-0000000");
+        users.setString(4, userName + "@parkb.test");
+        users.setString(5, "CAR-" + userName);
+        users.setString(6, type);
+        users.addBatch();
+    }
+}
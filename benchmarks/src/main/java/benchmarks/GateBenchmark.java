@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controllers.ParkingController;
+
+/**
+ * GateBenchmark - gate entries through ParkingController.enterParking.
+ *
+ * An entry takes a spot, so each invocation parks ENTRIES different subscribers in a freshly
+ * seeded database and the score is the time per entry. Exits are not measured: exitParking uses a
+ * multi-table UPDATE ... JOIN that H2 does not support.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(2)
+public class GateBenchmark {
+
+    private static final int ENTRIES = 50;
+
+    private EmbeddedDatabase database;
+    private ParkingController parking;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase();
+        parking = new ParkingController(database.getDataSource());
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws Exception {
+        parking.shutdown();
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public int enterParking() {
+        int parked = 0;
+        for (int i = 1; i <= ENTRIES; i++) {
+            String result = parking.enterParking(EmbeddedDatabase.subscriber(i));
+            if (!result.startsWith("Entry successful")) {
+                throw new IllegalStateException(result);
+            }
+            parked++;
+        }
+        return parked;
+    }
+}
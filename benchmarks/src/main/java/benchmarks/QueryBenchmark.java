@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controllers.ReportAggregates;
+import controllers.ReportController;
+import controllers.SmartParkingController;
+import controllers.SmartParkingController.TimeSlot;
+import entities.ParkingReport;
+
+/**
+ * QueryBenchmark - the read-only queries behind the reservation screen and the manager reports,
+ * against one seeded embedded database per fork.
+ *
+ * The report aggregates are loaded first, as the server's ParkingController does at start-up, so
+ * the reports come from the in-memory path (the SQL fallback uses DATE_SUB, which H2 lacks).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class QueryBenchmark {
+
+    private EmbeddedDatabase database;
+    private SmartParkingController smart;
+    private ReportController reports;
+    private LocalDate tomorrow;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase();
+        smart = new SmartParkingController(database.getDataSource());
+        reports = new ReportController(database.getDataSource());
+        ReportAggregates.forDataSource(database.getDataSource()).loadFromDatabase();
+        tomorrow = LocalDate.now().plusDays(1);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public List<TimeSlot> availableTimeSlots() {
+        return smart.getAvailableTimeSlots(tomorrow, LocalTime.of(10, 0));
+    }
+
+    @Benchmark
+    public List<ParkingReport> parkingReports() {
+        return reports.getParkingReports("ALL");
+    }
+}
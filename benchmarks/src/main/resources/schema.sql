@@ -0,0 +1,56 @@
+-- ParkB schema for the embedded benchmark database (H2 in MySQL mode).
+-- Columns are the ones the controllers read and write, with MySQL ENUMs as plain VARCHARs.
+
+CREATE TABLE users (
+    User_ID INT AUTO_INCREMENT PRIMARY KEY,
+    UserName VARCHAR(50) NOT NULL UNIQUE,
+    Name VARCHAR(100),
+    Phone VARCHAR(20),
+    Email VARCHAR(100),
+    CarNum VARCHAR(20),
+    UserTypeEnum VARCHAR(3) NOT NULL -- 'sub', 'emp' or 'mng'
+);
+
+CREATE TABLE ParkingSpot (
+    ParkingSpot_ID INT AUTO_INCREMENT PRIMARY KEY,
+    isOccupied BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+CREATE TABLE ParkingInfo (
+    ParkingInfo_ID INT AUTO_INCREMENT PRIMARY KEY,
+    ParkingSpot_ID INT NOT NULL,
+    User_ID INT NOT NULL,
+    Date DATE NOT NULL,
+    Code INT NOT NULL,
+    Actual_start_time TIME,
+    Actual_end_time TIME,
+    Estimated_start_time TIME,
+    Estimated_end_time TIME,
+    IsOrderedEnum VARCHAR(20), -- 'ordered' or 'not ordered'
+    IsLate BOOLEAN NOT NULL DEFAULT FALSE,
+    IsExtended BOOLEAN NOT NULL DEFAULT FALSE,
+    FOREIGN KEY (ParkingSpot_ID) REFERENCES ParkingSpot (ParkingSpot_ID),
+    FOREIGN KEY (User_ID) REFERENCES users (User_ID)
+);
+CREATE INDEX ParkingInfo_Code ON ParkingInfo (Code);
+CREATE INDEX ParkingInfo_Date ON ParkingInfo (Date);
+
+CREATE TABLE Reservations (
+    Reservation_code INT AUTO_INCREMENT PRIMARY KEY,
+    User_ID INT NOT NULL,
+    parking_ID INT,
+    reservation_Date DATE,
+    reservation_start_time TIME,
+    reservation_end_time TIME,
+    Date_Of_Placing_Order DATETIME,
+    statusEnum VARCHAR(20) NOT NULL, -- 'preorder', 'active', 'finished' or 'cancelled'
+    assigned_parking_spot_id INT,
+    FOREIGN KEY (User_ID) REFERENCES users (User_ID)
+);
+
+CREATE TABLE Reports (
+    Report_ID INT AUTO_INCREMENT PRIMARY KEY,
+    Report_Type VARCHAR(50) NOT NULL,
+    Generated_Date DATETIME NOT NULL,
+    Report_Data CLOB
+);
@@ -6,16 +6,37 @@ import javafx.stage.Stage;
 import javafx.scene.Scene;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
+import common.MessageCodec;
 import entities.Message;
 import ocsf.client.ObservableClient;
 import controllers.*;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BParkClientApp extends Application {
     private static BParkClient client;
     private static String serverIP = "localhost";
     private static int serverPort = 5555;
     
+    // Requests waiting for their reply, by correlation ID
+    public static final long DEFAULT_REQUEST_TIMEOUT_MS = 10000;
+    private static final AtomicInteger lastCorrelationId = new AtomicInteger();
+    private static final Map<Integer, CompletableFuture<Message>> pendingRequests = new ConcurrentHashMap<>();
+    
+    // Decodes server messages one at a time, in arrival order, off the FX thread
+    private static final ExecutorService decoder = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "message-decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     // Current user info
     private static String currentUser;
     private static String userType; // "sub", "emp", "mng"
@@ -42,6 +63,10 @@ public class BParkClientApp extends Application {
         try {
             client = new BParkClient(serverIP, serverPort);
             client.openConnection();
+            // Offer the binary codec; until the server answers, messages use Java serialization
+            ClientMessageHandler.resetCodec();
+            ResponseCache.clear();
+            send(MessageCodec.hello());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -90,18 +115,27 @@ public class BParkClientApp extends Application {
         
         @Override
         protected void handleMessageFromServer(Object msg) {
-            Platform.runLater(() -> {
+            // Decoding runs off the FX thread; the UI work is batched with other updates
+            decoder.execute(() -> {
                 try {
                     Object message = msg;
                     if (message instanceof byte[]) {
                         message = ClientMessageHandler.deserialize(message);
                     }
-                    
-                    if (message instanceof Message) {
-                        ClientMessageHandler.handleMessage((Message) message);
-                    } else if (message instanceof String) {
-                        ClientMessageHandler.handleStringMessage((String) message);
+                    if (message instanceof Message && ClientMessageHandler.handleInBackground((Message) message)) {
+                        return;
                     }
+                    
+                    Object decoded = message;
+                    FxUpdateQueue.post(() -> {
+                        if (decoded instanceof Message) {
+                            if (!completeRequest((Message) decoded)) {
+                                ClientMessageHandler.handleMessage((Message) decoded);
+                            }
+                        } else if (decoded instanceof String) {
+                            ClientMessageHandler.handleStringMessage((String) decoded);
+                        }
+                    });
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -110,6 +144,7 @@ public class BParkClientApp extends Application {
         
         @Override
         protected void connectionClosed() {
+            failPendingRequests(new IOException("Connection closed"));
             Platform.runLater(() -> {
                 System.out.println("Connection closed");
                 // Show reconnect dialog
@@ -126,20 +161,92 @@ public class BParkClientApp extends Application {
     }
     
     // Utility methods for sending messages
+    
+    /**
+     * OCSF writes to the socket unsynchronized, and background listeners send as well as the FX thread
+     */
+    private static synchronized void send(Object msg) throws IOException {
+        client.sendToServer(msg);
+    }
+    
     public static void sendMessage(Message msg) {
+        // Read-only requests may be answered from memory (see ResponseCache)
+        if (ResponseCache.isCacheable(msg.getType())) {
+            ResponseCache.send(msg);
+            return;
+        }
         try {
             if (client != null && client.isConnected()) {
-                client.sendToServer(ClientMessageHandler.serialize(msg));
+                send(ClientMessageHandler.serialize(msg));
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
+    /**
+     * Sends a request and returns its reply, with the default timeout
+     */
+    public static CompletableFuture<Message> request(Message msg) {
+        return request(msg, DEFAULT_REQUEST_TIMEOUT_MS);
+    }
+    
+    /**
+     * Sends a request and returns a future completed with the server's reply to that request.
+     * Any number of requests, of the same type or not, may be outstanding at once; replies are
+     * matched by correlation ID and are not passed to ClientMessageHandler.
+     * The future completes on the FX thread with the reply, or fails with a TimeoutException
+     * after timeoutMs or an IOException when the request cannot be sent (on another thread).
+     */
+    public static CompletableFuture<Message> request(Message msg, long timeoutMs) {
+        int id = lastCorrelationId.updateAndGet(last -> last == Integer.MAX_VALUE ? 1 : last + 1);
+        msg.setCorrelationId(id);
+        
+        CompletableFuture<Message> reply = new CompletableFuture<>();
+        pendingRequests.put(id, reply);
+        reply.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+             .whenComplete((result, error) -> pendingRequests.remove(id));
+        
+        try {
+            if (client == null || !client.isConnected()) {
+                throw new IOException("Not connected to server");
+            }
+            send(ClientMessageHandler.serialize(msg));
+        } catch (Exception e) {
+            reply.completeExceptionally(e);
+        }
+        return reply;
+    }
+    
+    /**
+     * Hands a reply to the request waiting for it
+     * @return false if the message is not a reply to request() and needs normal handling
+     */
+    private static boolean completeRequest(Message msg) {
+        if (msg.getCorrelationId() == 0) {
+            return false;
+        }
+        CompletableFuture<Message> reply = pendingRequests.remove(msg.getCorrelationId());
+        if (reply != null) {
+            reply.complete(msg);
+        }
+        // A reply that arrives after its timeout is dropped
+        return true;
+    }
+    
+    private static void failPendingRequests(Exception cause) {
+        for (Integer id : pendingRequests.keySet()) {
+            CompletableFuture<Message> reply = pendingRequests.remove(id);
+            if (reply != null) {
+                reply.completeExceptionally(cause);
+            }
+        }
+    }
+    
     public static void sendStringMessage(String msg) {
         try {
             if (client != null && client.isConnected()) {
-                client.sendToServer(msg);
+                send(msg);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -152,6 +259,9 @@ public class BParkClientApp extends Application {
     }
     
     public static void setCurrentUser(String user) {
+        if (!Objects.equals(currentUser, user)) {
+            ResponseCache.clear(); // Cached replies belong to the previous user
+        }
         currentUser = user;
     }
     
@@ -170,7 +280,7 @@ public class BParkClientApp extends Application {
     public static void disconnect() {
         try {
             if (client != null && client.isConnected()) {
-                client.sendToServer("ClientDisconnect");
+                send("ClientDisconnect");
                 client.closeConnection();
             }
         } catch (Exception e) {
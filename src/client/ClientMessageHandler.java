@@ -5,8 +5,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
+import common.MessageCodec;
+import entities.ActiveParkingChanges;
+import entities.HistoryPage;
 import entities.Message;
+import entities.ParkingEvent;
 import entities.ParkingOrder;
 import entities.ParkingReport;
 import entities.ParkingSubscriber;
@@ -15,8 +22,81 @@ import javafx.scene.control.Alert;
 
 public class ClientMessageHandler {
     
+    // Binary codec version agreed with the server (0 = Java serialization)
+    private static volatile int codecVersion = 0;
+    
+    // Open screens that subscribed to pushed parking updates
+    private static final List<Consumer<ParkingEvent>> parkingUpdateListeners = new CopyOnWriteArrayList<>();
+    private static final List<Consumer<ActiveParkingChanges>> activeParkingChangesListeners = new CopyOnWriteArrayList<>();
+    private static final List<Consumer<HistoryPage>> historyChunkListeners = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Forget the negotiated codec (called when a new connection is opened)
+     */
+    public static void resetCodec() {
+        codecVersion = 0;
+    }
+    
+    /**
+     * Register a screen for PARKING_UPDATE pushes.
+     * Listeners run on the message decoder thread, in arrival order, and post their UI changes
+     * through FxUpdateQueue.
+     */
+    public static void addParkingUpdateListener(Consumer<ParkingEvent> listener) {
+        parkingUpdateListeners.add(listener);
+    }
+    
+    public static void removeParkingUpdateListener(Consumer<ParkingEvent> listener) {
+        parkingUpdateListeners.remove(listener);
+    }
+    
+    /**
+     * Register a screen for ACTIVE_PARKING_CHANGES_RESPONSE (runs on the decoder thread, like parking updates)
+     */
+    public static void addActiveParkingChangesListener(Consumer<ActiveParkingChanges> listener) {
+        activeParkingChangesListeners.add(listener);
+    }
+    
+    public static void removeActiveParkingChangesListener(Consumer<ActiveParkingChanges> listener) {
+        activeParkingChangesListeners.remove(listener);
+    }
+    
     /**
-     * Handle Message objects received from server
+     * Register a screen for PARKING_HISTORY_CHUNK (called on the FX thread)
+     */
+    public static void addHistoryChunkListener(Consumer<HistoryPage> listener) {
+        historyChunkListeners.add(listener);
+    }
+    
+    public static void removeHistoryChunkListener(Consumer<HistoryPage> listener) {
+        historyChunkListeners.remove(listener);
+    }
+    
+    /**
+     * Handles the pushed parking changes on the thread that decoded them, so a burst of them
+     * never queues up on the FX thread
+     * @return false if the message must be handled on the FX thread by handleMessage
+     */
+    public static boolean handleInBackground(Message message) {
+        switch (message.getType()) {
+            case PARKING_UPDATE:
+                handleParkingUpdate(message);
+                return true;
+                
+            case ACTIVE_PARKING_CHANGES_RESPONSE:
+                if (message.getCorrelationId() != 0) {
+                    return false; // Reply to BParkClientApp.request
+                }
+                handleActiveParkingChanges(message);
+                return true;
+                
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Handle Message objects received from server (on the FX thread)
      */
     public static void handleMessage(Message message) {
         switch (message.getType()) {
@@ -24,6 +104,14 @@ public class ClientMessageHandler {
                 handleLoginResponse(message);
                 break;
                 
+            case PARKING_HISTORY_CHUNK:
+                handleHistoryChunk(message);
+                break;
+                
+            case CACHE_INVALIDATE:
+                handleCacheInvalidate(message);
+                break;
+                
             case PARKING_AVAILABILITY_RESPONSE:
                 handleParkingAvailability(message);
                 break;
@@ -73,6 +161,11 @@ public class ClientMessageHandler {
      * Handle String messages from server (legacy support)
      */
     public static void handleStringMessage(String message) {
+        if (MessageCodec.isHello(message)) {
+            codecVersion = MessageCodec.negotiate(message);
+            return;
+        }
+        
         String[] parts = message.split(" ", 2);
         String command = parts[0];
         String data = parts.length > 1 ? parts[1] : "";
@@ -165,6 +258,12 @@ public class ClientMessageHandler {
         System.out.println("Received " + history.size() + " parking records");
     }
     
+    @SuppressWarnings("unchecked")
+    private static void handleCacheInvalidate(Message message) {
+        ArrayList<String> staleKeys = (ArrayList<String>) message.getContent();
+        ResponseCache.invalidate(staleKeys);
+    }
+    
     @SuppressWarnings("unchecked")
     private static void handleReports(Message message) {
         ArrayList<ParkingReport> reports = (ArrayList<ParkingReport>) message.getContent();
@@ -198,6 +297,27 @@ public class ClientMessageHandler {
         showAlert("Reservation Cancellation", response);
     }
     
+    private static void handleParkingUpdate(Message message) {
+        ParkingEvent event = (ParkingEvent) message.getContent();
+        for (Consumer<ParkingEvent> listener : parkingUpdateListeners) {
+            listener.accept(event);
+        }
+    }
+    
+    private static void handleActiveParkingChanges(Message message) {
+        ActiveParkingChanges changes = (ActiveParkingChanges) message.getContent();
+        for (Consumer<ActiveParkingChanges> listener : activeParkingChangesListeners) {
+            listener.accept(changes);
+        }
+    }
+    
+    private static void handleHistoryChunk(Message message) {
+        HistoryPage chunk = (HistoryPage) message.getContent();
+        for (Consumer<HistoryPage> listener : historyChunkListeners) {
+            listener.accept(chunk);
+        }
+    }
+    
     // String message handlers (legacy)
     
     private static void handleStringLoginResponse(String data) {
@@ -216,10 +336,13 @@ public class ClientMessageHandler {
     // Utility methods
     
     /**
-     * Serialize a Message object to byte array
+     * Serialize a Message object to byte array (binary codec once negotiated)
      */
     public static byte[] serialize(Message msg) {
         try {
+            if (codecVersion > 0) {
+                return MessageCodec.encode(msg, codecVersion);
+            }
             ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
             ObjectOutputStream out = new ObjectOutputStream(byteStream);
             out.writeObject(msg);
@@ -232,11 +355,14 @@ public class ClientMessageHandler {
     }
     
     /**
-     * Deserialize byte array to object
+     * Deserialize byte array to object (binary codec or Java serialization)
      */
     public static Object deserialize(Object msg) {
         try {
             byte[] messageBytes = (byte[]) msg;
+            if (MessageCodec.isBinary(messageBytes)) {
+                return MessageCodec.decode(messageBytes);
+            }
             ByteArrayInputStream byteStream = new ByteArrayInputStream(messageBytes);
             ObjectInputStream objectStream = new ObjectInputStream(byteStream);
             return objectStream.readObject();
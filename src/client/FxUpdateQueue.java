@@ -0,0 +1,76 @@
+package client;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+
+/**
+ * FxUpdateQueue - hands UI work from background threads to the JavaFX Application Thread in batches.
+ * However many updates are posted between two pulses, they run in one Platform.runLater, in order.
+ * Updates posted under the same key replace each other until they run, so a burst of changes to
+ * one view is applied once with the latest state.
+ *
+ * A batch stops after MAX_BATCH_NANOS and continues in the next pulse, so a flood of updates
+ * never holds the FX thread for longer than a frame.
+ */
+public class FxUpdateQueue {
+
+    private static final long MAX_BATCH_NANOS = 8_000_000; // Half a 60fps frame
+
+    private static final Queue<Runnable> updates = new ConcurrentLinkedQueue<>();
+    private static final Map<Object, Runnable> latestByKey = new ConcurrentHashMap<>();
+    private static final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /**
+     * Run an update on the FX thread with the next batch
+     */
+    public static void post(Runnable update) {
+        updates.add(update);
+        schedule();
+    }
+
+    /**
+     * Run an update on the FX thread with the next batch, replacing one still waiting under the same key
+     */
+    public static void post(Object key, Runnable update) {
+        if (latestByKey.put(key, update) == null) {
+            updates.add(() -> {
+                Runnable latest = latestByKey.remove(key);
+                if (latest != null) {
+                    latest.run();
+                }
+            });
+        }
+        schedule();
+    }
+
+    private static void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(FxUpdateQueue::runBatch);
+        }
+    }
+
+    private static void runBatch() {
+        scheduled.set(false);
+        long deadline = System.nanoTime() + MAX_BATCH_NANOS;
+        Runnable update;
+        // Updates posted by these ones (on this thread) join the same batch
+        while ((update = updates.poll()) != null) {
+            try {
+                update.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        if (!updates.isEmpty()) {
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package client;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import common.MessageCodec;
+import entities.Message;
+import entities.Message.MessageType;
+import javafx.application.Platform;
+
+/**
+ * ResponseCache - keeps the replies to read-only requests so a screen that asks again
+ * renders at once from memory instead of waiting for the server.
+ *
+ * Each cacheable request type has a TTL. Within it the cached reply is delivered and nothing
+ * is sent. After it, up to the type's max staleness, the cached reply is still delivered at once
+ * while the request goes to the server; the fresh reply is delivered again only if it differs
+ * (stale-while-revalidate). Older entries are fetched as if they were never cached.
+ *
+ * Entries are keyed by request type and content (see {@link #key}). The server names the
+ * entries that a request of ours made stale in a CACHE_INVALIDATE message sent before its reply.
+ */
+public class ResponseCache {
+
+    private static final Map<MessageType, Policy> POLICIES = new EnumMap<>(MessageType.class);
+    static {
+        // Only requests with no effect on the server: a login opens the connection's session
+        POLICIES.put(MessageType.CHECK_PARKING_AVAILABILITY, new Policy(5000, 60000));
+    }
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Bumped by every invalidation; a reply fetched across one is delivered but not stored
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong staleHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    public static boolean isCacheable(MessageType type) {
+        return POLICIES.containsKey(type);
+    }
+
+    /**
+     * Cache key of a request: the type name, followed by ':' and the content when there is one.
+     * CACHE_INVALIDATE hints use the same format.
+     */
+    public static String key(MessageType type, Serializable content) {
+        return content == null ? type.name() : type.name() + ":" + content;
+    }
+
+    /**
+     * Answers a cacheable request from memory when possible, otherwise sends it.
+     * The reply always reaches ClientMessageHandler.handleMessage on the FX thread.
+     */
+    public static void send(Message msg) {
+        Policy policy = POLICIES.get(msg.getType());
+        String key = key(msg.getType(), msg.getContent());
+        Entry entry = entries.get(key);
+        long age = entry == null ? Long.MAX_VALUE : System.currentTimeMillis() - entry.storedAt;
+
+        if (age > policy.maxStaleMs) {
+            misses.incrementAndGet();
+            fetch(key, msg, null);
+            return;
+        }
+
+        Message cached = entry.reply;
+        Platform.runLater(() -> ClientMessageHandler.handleMessage(cached));
+        if (age <= policy.ttlMs) {
+            hits.incrementAndGet();
+        } else {
+            staleHits.incrementAndGet();
+            if (!entry.revalidating) {
+                entry.revalidating = true;
+                fetch(key, msg, entry);
+            }
+        }
+    }
+
+    private static void fetch(String key, Message msg, Entry stale) {
+        long sentIn = generation.get();
+        BParkClientApp.request(msg).whenComplete((reply, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                System.out.println("Request " + msg.getType() + " failed: " + error.getMessage());
+                if (stale != null) {
+                    stale.revalidating = false;
+                }
+                return;
+            }
+
+            byte[] fingerprint = fingerprint(reply);
+            if (sentIn == generation.get()) {
+                entries.put(key, new Entry(reply, fingerprint));
+            }
+            if (stale == null || fingerprint == null || !Arrays.equals(fingerprint, stale.fingerprint)) {
+                ClientMessageHandler.handleMessage(reply);
+            }
+        }));
+    }
+
+    /**
+     * Reply encoded without its correlation ID, to tell whether a refresh changed anything
+     */
+    private static byte[] fingerprint(Message reply) {
+        try {
+            return MessageCodec.encode(new Message(reply.getType(), reply.getContent()));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Invalidation ****************************************************
+
+    /**
+     * Drops the entries named by a server hint
+     */
+    public static void invalidate(List<String> keys) {
+        generation.incrementAndGet();
+        for (String key : keys) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Drops everything (new connection or another user)
+     */
+    public static void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public static String getStatistics() {
+        return "ResponseCache{entries=" + entries.size() + " hits=" + hits.get()
+            + " stale=" + staleHits.get() + " misses=" + misses.get() + "}";
+    }
+
+    private static class Policy {
+        final long ttlMs;
+        final long maxStaleMs;
+
+        Policy(long ttlMs, long maxStaleMs) {
+            this.ttlMs = ttlMs;
+            this.maxStaleMs = maxStaleMs;
+        }
+    }
+
+    private static class Entry {
+        final Message reply;
+        final byte[] fingerprint;
+        final long storedAt = System.currentTimeMillis();
+        volatile boolean revalidating;
+
+        Entry(Message reply, byte[] fingerprint) {
+            this.reply = reply;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
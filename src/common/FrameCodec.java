@@ -0,0 +1,83 @@
+package common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * FrameCodec - length-prefixed framing used by the non-blocking transport.
+ * Each frame is a 4-byte big-endian payload length followed by the payload,
+ * which is one Java-serialized object (a command String or the byte[] of a serialized Message).
+ */
+public class FrameCodec {
+
+    /**
+     * Size of the length prefix in bytes
+     */
+    public static final int HEADER_BYTES = 4;
+
+    /**
+     * Largest payload accepted; anything bigger is treated as a corrupt stream
+     */
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Serializes an object into a complete frame (prefix + payload) ready to write
+     */
+    public static ByteBuffer encode(Object msg) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        byteStream.write(new byte[HEADER_BYTES]); // Placeholder for the length
+        try (ObjectOutputStream out = new ObjectOutputStream(byteStream)) {
+            out.writeObject(msg);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(byteStream.toByteArray());
+        frame.putInt(0, frame.capacity() - HEADER_BYTES);
+        return frame;
+    }
+
+    /**
+     * Turns a frame payload back into the object that was sent
+     */
+    public static Object decodePayload(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * Checks a length prefix read from the wire
+     */
+    public static int checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new StreamCorruptedException("Invalid frame length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Writes one frame to a blocking stream (for clients and tools)
+     */
+    public static void writeFrame(DataOutputStream out, Object msg) throws IOException {
+        ByteBuffer frame = encode(msg);
+        out.write(frame.array(), 0, frame.limit());
+        out.flush();
+    }
+
+    /**
+     * Reads one frame from a blocking stream (for clients and tools)
+     */
+    public static Object readFrame(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte[] payload = new byte[checkLength(in.readInt())];
+        in.readFully(payload);
+        return decodePayload(payload);
+    }
+}
@@ -0,0 +1,650 @@
+package common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import entities.ActiveParkingChanges;
+import entities.HistoryPage;
+import entities.Message;
+import entities.Message.MessageType;
+import entities.ParkingEvent;
+import entities.ParkingEvent.EventType;
+import entities.ParkingOrder;
+import entities.ParkingReport;
+import entities.ParkingSubscriber;
+
+/**
+ * MessageCodec - compact binary encoding of entities.Message.
+ * Replaces Java object serialization (class descriptors on every request) with
+ * hand-written encoders for the entities we actually send.
+ *
+ * Layout: MAGIC, version, message type, correlation ID (version 2 and up), content tag, content.
+ * Integers are variable-length, repeated strings inside one message are sent once
+ * and then referenced by index, and timestamps are deltas from the previous one.
+ * Content types without a dedicated encoder fall back to Java serialization inside the frame.
+ *
+ * Peers agree on the codec at connect time: the client sends {@link #hello()},
+ * the server answers with the version both sides support, and from then on both may send binary.
+ * Decoding always detects the format from the first byte, so a peer that never
+ * negotiated keeps using plain serialization.
+ */
+public class MessageCodec {
+
+    /**
+     * First byte of every binary message (serialized Java streams start with 0xAC)
+     */
+    public static final byte MAGIC = (byte) 0xB7;
+
+    /**
+     * Highest codec version this build can read and write
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * First version that carries Message.correlationId
+     */
+    private static final int CORRELATION_VERSION = 2;
+
+    /**
+     * Prefix of the negotiation strings exchanged after connecting
+     */
+    public static final String HELLO_PREFIX = "codec:binary/";
+
+    // Content tags
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_BOOLEAN = 3;
+    private static final int TAG_ORDER = 4;
+    private static final int TAG_ORDER_LIST = 5;
+    private static final int TAG_SUBSCRIBER = 6;
+    private static final int TAG_REPORT = 7;
+    private static final int TAG_REPORT_LIST = 8;
+    private static final int TAG_STRING_LIST = 9;
+    private static final int TAG_PARKING_EVENT = 10;
+    private static final int TAG_PARKING_CHANGES = 11;
+    private static final int TAG_HISTORY_PAGE = 12;
+    private static final int TAG_SERIALIZED = 127;
+
+    // ParkingOrder flag bits
+    private static final int ORDER_LATE = 1;
+    private static final int ORDER_EXTENDED = 1 << 1;
+    private static final int ORDER_HAS_ENTRY = 1 << 2;
+    private static final int ORDER_HAS_EXIT = 1 << 3;
+    private static final int ORDER_HAS_EXPECTED_EXIT = 1 << 4;
+
+    // ParkingEvent flag bits
+    private static final int EVENT_HAS_ORDER = 1;
+    private static final int EVENT_HAS_SNAPSHOT = 1 << 1;
+
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private MessageCodec() {
+    }
+
+    // Negotiation *****************************************************
+
+    /**
+     * @return the string a client sends to offer the binary codec
+     */
+    public static String hello() {
+        return HELLO_PREFIX + VERSION;
+    }
+
+    /**
+     * @return true if the string is a codec negotiation message
+     */
+    public static boolean isHello(String msg) {
+        return msg != null && msg.startsWith(HELLO_PREFIX);
+    }
+
+    /**
+     * Picks the version to use from the peer's offer
+     * @return the agreed version, or 0 if the offer cannot be understood
+     */
+    public static int negotiate(String hello) {
+        try {
+            int offered = Integer.parseInt(hello.substring(HELLO_PREFIX.length()).trim());
+            return Math.max(0, Math.min(offered, VERSION));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return true if the bytes were produced by this codec (rather than ObjectOutputStream)
+     */
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 1 && data[0] == MAGIC;
+    }
+
+    // Encoding ********************************************************
+
+    /**
+     * Encodes a message with the given codec version
+     */
+    public static byte[] encode(Message msg, int version) throws IOException {
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported codec version: " + version);
+        }
+        Writer out = new Writer();
+        out.data.writeByte(MAGIC);
+        out.data.writeByte(version);
+        out.writeVarInt(msg.getType().ordinal());
+        if (version >= CORRELATION_VERSION) {
+            out.writeVarInt(msg.getCorrelationId());
+        }
+        writeContent(out, msg.getContent());
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a message with the newest codec version
+     */
+    public static byte[] encode(Message msg) throws IOException {
+        return encode(msg, VERSION);
+    }
+
+    private static void writeContent(Writer out, Serializable content) throws IOException {
+        if (content == null) {
+            out.writeVarInt(TAG_NULL);
+        } else if (content instanceof String) {
+            out.writeVarInt(TAG_STRING);
+            out.writeString((String) content);
+        } else if (content instanceof Integer) {
+            out.writeVarInt(TAG_INTEGER);
+            out.writeVarLong(zigZag((Integer) content));
+        } else if (content instanceof Boolean) {
+            out.writeVarInt(TAG_BOOLEAN);
+            out.data.writeBoolean((Boolean) content);
+        } else if (content instanceof ParkingOrder) {
+            out.writeVarInt(TAG_ORDER);
+            writeOrder(out, (ParkingOrder) content);
+        } else if (content instanceof ParkingSubscriber) {
+            out.writeVarInt(TAG_SUBSCRIBER);
+            writeSubscriber(out, (ParkingSubscriber) content);
+        } else if (content instanceof ParkingReport) {
+            out.writeVarInt(TAG_REPORT);
+            writeReport(out, (ParkingReport) content);
+        } else if (content instanceof ParkingEvent) {
+            out.writeVarInt(TAG_PARKING_EVENT);
+            writeParkingEvent(out, (ParkingEvent) content);
+        } else if (content instanceof ActiveParkingChanges) {
+            out.writeVarInt(TAG_PARKING_CHANGES);
+            writeParkingChanges(out, (ActiveParkingChanges) content);
+        } else if (content instanceof HistoryPage) {
+            out.writeVarInt(TAG_HISTORY_PAGE);
+            writeOrders(out, ((HistoryPage) content).getOrders());
+            out.writeString(((HistoryPage) content).getNextCursor());
+            out.writeString(((HistoryPage) content).getError());
+        } else if (content instanceof ArrayList && allOfType((List<?>) content, ParkingOrder.class)) {
+            out.writeVarInt(TAG_ORDER_LIST);
+            writeOrders(out, castList(content));
+        } else if (content instanceof ArrayList && allOfType((List<?>) content, ParkingReport.class)) {
+            out.writeVarInt(TAG_REPORT_LIST);
+            List<ParkingReport> reports = castList(content);
+            out.writeVarInt(reports.size());
+            for (ParkingReport report : reports) {
+                writeReport(out, report);
+            }
+        } else if (content instanceof ArrayList && allOfType((List<?>) content, String.class)) {
+            out.writeVarInt(TAG_STRING_LIST);
+            List<String> strings = castList(content);
+            out.writeVarInt(strings.size());
+            for (String s : strings) {
+                out.writeString(s);
+            }
+        } else {
+            out.writeVarInt(TAG_SERIALIZED);
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectStream = new ObjectOutputStream(byteStream)) {
+                objectStream.writeObject(content);
+            }
+            byte[] serialized = byteStream.toByteArray();
+            out.writeVarInt(serialized.length);
+            out.data.write(serialized);
+        }
+    }
+
+    private static void writeOrders(Writer out, List<ParkingOrder> orders) throws IOException {
+        out.writeVarInt(orders.size());
+        for (ParkingOrder order : orders) {
+            writeOrder(out, order);
+        }
+    }
+
+    private static void writeOrder(Writer out, ParkingOrder order) throws IOException {
+        int flags = (order.isLate() ? ORDER_LATE : 0)
+            | (order.isExtended() ? ORDER_EXTENDED : 0)
+            | (order.getEntryTime() != null ? ORDER_HAS_ENTRY : 0)
+            | (order.getExitTime() != null ? ORDER_HAS_EXIT : 0)
+            | (order.getExpectedExitTime() != null ? ORDER_HAS_EXPECTED_EXIT : 0);
+        out.writeVarInt(flags);
+        out.writeVarLong(zigZag(order.getOrderID()));
+        out.writeString(order.getParkingCode());
+        out.writeString(order.getSubscriberName());
+        out.writeString(order.getOrderType());
+        out.writeString(order.getStatus());
+        out.writeString(order.getSpotNumber());
+        if (order.getEntryTime() != null) {
+            out.writeDateTime(order.getEntryTime());
+        }
+        if (order.getExitTime() != null) {
+            out.writeDateTime(order.getExitTime());
+        }
+        if (order.getExpectedExitTime() != null) {
+            out.writeDateTime(order.getExpectedExitTime());
+        }
+    }
+
+    private static void writeParkingEvent(Writer out, ParkingEvent event) throws IOException {
+        int flags = (event.getOrder() != null ? EVENT_HAS_ORDER : 0)
+            | (event.getActiveParkings() != null ? EVENT_HAS_SNAPSHOT : 0);
+        out.writeVarInt(event.getType().ordinal());
+        out.writeVarInt(flags);
+        out.writeVarLong(zigZag(event.getSpotId()));
+        out.writeString(event.getParkingCode());
+        out.writeVarLong(zigZag(event.getAvailableSpots()));
+        out.writeVarLong(event.getVersion());
+        if (event.getOrder() != null) {
+            writeOrder(out, event.getOrder());
+        }
+        if (event.getActiveParkings() != null) {
+            writeOrders(out, event.getActiveParkings());
+        }
+    }
+
+    private static void writeParkingChanges(Writer out, ActiveParkingChanges changes) throws IOException {
+        out.writeVarLong(changes.getVersion());
+        out.data.writeBoolean(changes.isSnapshot());
+        writeOrders(out, changes.getInserted());
+        writeOrders(out, changes.getUpdated());
+        out.writeVarInt(changes.getRemoved().size());
+        for (String code : changes.getRemoved()) {
+            out.writeString(code);
+        }
+    }
+
+    private static void writeSubscriber(Writer out, ParkingSubscriber subscriber) throws IOException {
+        out.writeVarLong(zigZag(subscriber.getSubscriberID()));
+        out.writeString(subscriber.getSubscriberCode());
+        out.writeString(subscriber.getFirstName());
+        out.writeString(subscriber.getPhoneNumber());
+        out.writeString(subscriber.getEmail());
+        out.writeString(subscriber.getCarNumber());
+        out.writeString(subscriber.getUserType());
+        List<ParkingOrder> history = subscriber.getParkingHistory();
+        writeOrders(out, history != null ? history : new ArrayList<>());
+    }
+
+    private static void writeReport(Writer out, ParkingReport report) throws IOException {
+        out.writeString(report.getReportType());
+        out.data.writeBoolean(report.getReportDate() != null);
+        if (report.getReportDate() != null) {
+            out.writeVarLong(zigZag(report.getReportDate().toEpochDay()));
+        }
+        out.writeVarLong(zigZag(report.getTotalParkings()));
+        out.data.writeDouble(report.getAverageParkingTime());
+        out.writeVarLong(zigZag(report.getLateExits()));
+        out.writeVarLong(zigZag(report.getExtensions()));
+        out.writeVarLong(zigZag(report.getMinParkingTime()));
+        out.writeVarLong(zigZag(report.getMaxParkingTime()));
+        out.writeVarLong(zigZag(report.getActiveSubscribers()));
+        out.writeVarLong(zigZag(report.getTotalOrders()));
+        out.writeVarLong(zigZag(report.getReservations()));
+        out.writeVarLong(zigZag(report.getImmediateEntries()));
+        out.writeVarLong(zigZag(report.getCancelledReservations()));
+        out.data.writeDouble(report.getAverageSessionDuration());
+    }
+
+    // Decoding ********************************************************
+
+    /**
+     * Decodes a message produced by {@link #encode(Message, int)}
+     */
+    public static Message decode(byte[] data) throws IOException {
+        if (!isBinary(data)) {
+            throw new StreamCorruptedException("Not a binary message");
+        }
+        Reader in = new Reader(data);
+        in.data.readByte(); // MAGIC
+        int version = in.data.readUnsignedByte();
+        if (version < 1 || version > VERSION) {
+            throw new StreamCorruptedException("Unsupported codec version: " + version);
+        }
+        int typeIndex = in.readVarInt();
+        if (typeIndex < 0 || typeIndex >= TYPES.length) {
+            throw new StreamCorruptedException("Unknown message type: " + typeIndex);
+        }
+        int correlationId = version >= CORRELATION_VERSION ? in.readVarInt() : 0;
+        Message msg = new Message(TYPES[typeIndex], readContent(in));
+        msg.setCorrelationId(correlationId);
+        return msg;
+    }
+
+    private static Serializable readContent(Reader in) throws IOException {
+        int tag = in.readVarInt();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_STRING:
+            return in.readString();
+        case TAG_INTEGER:
+            return (int) unZigZag(in.readVarLong());
+        case TAG_BOOLEAN:
+            return in.data.readBoolean();
+        case TAG_ORDER:
+            return readOrder(in);
+        case TAG_ORDER_LIST:
+            return readOrders(in);
+        case TAG_SUBSCRIBER:
+            return readSubscriber(in);
+        case TAG_REPORT:
+            return readReport(in);
+        case TAG_PARKING_EVENT:
+            return readParkingEvent(in);
+        case TAG_PARKING_CHANGES:
+            return readParkingChanges(in);
+        case TAG_HISTORY_PAGE:
+            return new HistoryPage(readOrders(in), in.readString(), in.readString());
+        case TAG_REPORT_LIST:
+            int reportCount = in.readCount();
+            ArrayList<ParkingReport> reports = new ArrayList<>(reportCount);
+            for (int i = 0; i < reportCount; i++) {
+                reports.add(readReport(in));
+            }
+            return reports;
+        case TAG_STRING_LIST:
+            int stringCount = in.readCount();
+            ArrayList<String> strings = new ArrayList<>(stringCount);
+            for (int i = 0; i < stringCount; i++) {
+                strings.add(in.readString());
+            }
+            return strings;
+        case TAG_SERIALIZED:
+            byte[] serialized = new byte[in.readCount()];
+            in.data.readFully(serialized);
+            try (ObjectInputStream objectStream = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                return (Serializable) objectStream.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown content class", e);
+            }
+        default:
+            throw new StreamCorruptedException("Unknown content tag: " + tag);
+        }
+    }
+
+    private static ArrayList<ParkingOrder> readOrders(Reader in) throws IOException {
+        int count = in.readCount();
+        ArrayList<ParkingOrder> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(readOrder(in));
+        }
+        return orders;
+    }
+
+    private static ParkingOrder readOrder(Reader in) throws IOException {
+        int flags = in.readVarInt();
+        ParkingOrder order = new ParkingOrder();
+        order.setOrderID((int) unZigZag(in.readVarLong()));
+        order.setParkingCode(in.readString());
+        order.setSubscriberName(in.readString());
+        order.setOrderType(in.readString());
+        order.setStatus(in.readString());
+        order.setSpotNumber(in.readString());
+        order.setLate((flags & ORDER_LATE) != 0);
+        order.setExtended((flags & ORDER_EXTENDED) != 0);
+        if ((flags & ORDER_HAS_ENTRY) != 0) {
+            order.setEntryTime(in.readDateTime());
+        }
+        if ((flags & ORDER_HAS_EXIT) != 0) {
+            order.setExitTime(in.readDateTime());
+        }
+        if ((flags & ORDER_HAS_EXPECTED_EXIT) != 0) {
+            order.setExpectedExitTime(in.readDateTime());
+        }
+        return order;
+    }
+
+    private static ParkingEvent readParkingEvent(Reader in) throws IOException {
+        int typeIndex = in.readVarInt();
+        if (typeIndex < 0 || typeIndex >= EVENT_TYPES.length) {
+            throw new StreamCorruptedException("Unknown parking event type: " + typeIndex);
+        }
+        int flags = in.readVarInt();
+        ParkingEvent event = new ParkingEvent();
+        event.setType(EVENT_TYPES[typeIndex]);
+        event.setSpotId((int) unZigZag(in.readVarLong()));
+        event.setParkingCode(in.readString());
+        event.setAvailableSpots((int) unZigZag(in.readVarLong()));
+        event.setVersion(in.readVarLong());
+        if ((flags & EVENT_HAS_ORDER) != 0) {
+            event.setOrder(readOrder(in));
+        }
+        if ((flags & EVENT_HAS_SNAPSHOT) != 0) {
+            event.setActiveParkings(readOrders(in));
+        }
+        return event;
+    }
+
+    private static ActiveParkingChanges readParkingChanges(Reader in) throws IOException {
+        ActiveParkingChanges changes = new ActiveParkingChanges(in.readVarLong(), in.data.readBoolean());
+        changes.setInserted(readOrders(in));
+        changes.setUpdated(readOrders(in));
+        int removedCount = in.readCount();
+        for (int i = 0; i < removedCount; i++) {
+            changes.getRemoved().add(in.readString());
+        }
+        return changes;
+    }
+
+    private static ParkingSubscriber readSubscriber(Reader in) throws IOException {
+        ParkingSubscriber subscriber = new ParkingSubscriber();
+        subscriber.setSubscriberID((int) unZigZag(in.readVarLong()));
+        subscriber.setSubscriberCode(in.readString());
+        subscriber.setFirstName(in.readString());
+        subscriber.setPhoneNumber(in.readString());
+        subscriber.setEmail(in.readString());
+        subscriber.setCarNumber(in.readString());
+        subscriber.setUserType(in.readString());
+        subscriber.setParkingHistory(readOrders(in));
+        return subscriber;
+    }
+
+    private static ParkingReport readReport(Reader in) throws IOException {
+        ParkingReport report = new ParkingReport();
+        report.setReportType(in.readString());
+        if (in.data.readBoolean()) {
+            report.setReportDate(LocalDate.ofEpochDay(unZigZag(in.readVarLong())));
+        }
+        report.setTotalParkings((int) unZigZag(in.readVarLong()));
+        report.setAverageParkingTime(in.data.readDouble());
+        report.setLateExits((int) unZigZag(in.readVarLong()));
+        report.setExtensions((int) unZigZag(in.readVarLong()));
+        report.setMinParkingTime((int) unZigZag(in.readVarLong()));
+        report.setMaxParkingTime((int) unZigZag(in.readVarLong()));
+        report.setActiveSubscribers((int) unZigZag(in.readVarLong()));
+        report.setTotalOrders((int) unZigZag(in.readVarLong()));
+        report.setReservations((int) unZigZag(in.readVarLong()));
+        report.setImmediateEntries((int) unZigZag(in.readVarLong()));
+        report.setCancelledReservations((int) unZigZag(in.readVarLong()));
+        report.setAverageSessionDuration(in.data.readDouble());
+        return report;
+    }
+
+    // Helpers *********************************************************
+
+    /**
+     * True if every element is exactly of the given class (an empty list matches the first check, ParkingOrder)
+     */
+    private static boolean allOfType(List<?> list, Class<?> type) {
+        for (Object element : list) {
+            if (element == null || element.getClass() != type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> castList(Serializable content) {
+        return (List<T>) content;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Output side: varints, and a string table so repeated strings are sent once per message
+     */
+    private static class Writer {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream data = new DataOutputStream(bytes);
+        private final Map<String, Integer> strings = new HashMap<>();
+        private long lastSeconds = 0;
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                data.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            data.writeByte((int) value);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        /**
+         * 0 = null, 1 = reference to an earlier string, n >= 2 = new string of n - 2 UTF-8 bytes
+         */
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = strings.get(s);
+            if (index != null) {
+                writeVarInt(1);
+                writeVarInt(index);
+                return;
+            }
+            strings.put(s, strings.size());
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length + 2);
+            data.write(utf8);
+        }
+
+        /**
+         * Seconds relative to the previous timestamp in this message, low bit flags a nano part
+         */
+        void writeDateTime(LocalDateTime time) throws IOException {
+            long seconds = time.toEpochSecond(ZoneOffset.UTC);
+            int nanos = time.getNano();
+            writeVarLong(zigZag(seconds - lastSeconds) << 1 | (nanos != 0 ? 1 : 0));
+            if (nanos != 0) {
+                writeVarInt(nanos);
+            }
+            lastSeconds = seconds;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Input side, mirror of Writer
+     */
+    private static class Reader {
+        final DataInputStream data;
+        private final List<String> strings = new ArrayList<>();
+        private final int length;
+        private long lastSeconds = 0;
+
+        Reader(byte[] bytes) {
+            this.data = new DataInputStream(new ByteArrayInputStream(bytes));
+            this.length = bytes.length;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = data.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+
+        /**
+         * Reads a length or element count, rejecting values larger than the message itself
+         */
+        int readCount() throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > length) {
+                throw new StreamCorruptedException("Invalid length: " + count);
+            }
+            return count;
+        }
+
+        String readString() throws IOException {
+            int header = readCount();
+            if (header == 0) {
+                return null;
+            }
+            if (header == 1) {
+                int index = readVarInt();
+                if (index < 0 || index >= strings.size()) {
+                    throw new StreamCorruptedException("Invalid string reference: " + index);
+                }
+                return strings.get(index);
+            }
+            byte[] utf8 = new byte[header - 2];
+            data.readFully(utf8);
+            String s = new String(utf8, StandardCharsets.UTF_8);
+            strings.add(s);
+            return s;
+        }
+
+        LocalDateTime readDateTime() throws IOException {
+            long header = readVarLong();
+            long seconds = lastSeconds + unZigZag(header >>> 1);
+            int nanos = (header & 1) != 0 ? readVarInt() : 0;
+            lastSeconds = seconds;
+            try {
+                return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+            } catch (DateTimeException e) {
+                throw new StreamCorruptedException("Invalid timestamp: " + e.getMessage());
+            }
+        }
+    }
+}
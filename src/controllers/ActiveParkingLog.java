@@ -0,0 +1,170 @@
+package controllers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import entities.ActiveParkingChanges;
+import entities.ParkingOrder;
+
+/**
+ * ActiveParkingLog - the open parking sessions kept in memory, with a versioned log of changes.
+ * Every start, extension and end of a session bumps the version by one, so a client holding
+ * version N can be sent only the sessions inserted, updated or removed after N.
+ *
+ * The last MAX_CHANGES changes are kept; a cursor older than that gets a snapshot instead.
+ * Versions continue from the load time (milliseconds * 1000), so a cursor from an earlier
+ * server run is always older than the log and also gets a snapshot.
+ * One instance is shared by all controllers on the same DataSource.
+ */
+public class ActiveParkingLog {
+
+    public static final int MAX_CHANGES = 4096;
+
+    private static final Map<DataSource, ActiveParkingLog> LOGS = new IdentityHashMap<>();
+
+    private final LinkedHashMap<String, ParkingOrder> sessions = new LinkedHashMap<>(); // By parking code, in entry order
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    private long version = 0;
+    private long oldestCursor = 0; // Smallest cursor the retained changes can serve
+    private volatile boolean loaded = false;
+
+    /**
+     * Returns the shared log for a DataSource, creating it (not yet loaded) on first use
+     */
+    public static synchronized ActiveParkingLog forDataSource(DataSource dataSource) {
+        return LOGS.computeIfAbsent(dataSource, ds -> new ActiveParkingLog());
+    }
+
+    /**
+     * Replaces the contents with the sessions read from the database and starts a new version range.
+     * Changes reported before loading are ignored, since the rows they wrote are read here.
+     */
+    public synchronized void load(List<ParkingOrder> activeParkings) {
+        sessions.clear();
+        for (ParkingOrder order : activeParkings) {
+            sessions.put(order.getParkingCode(), order);
+        }
+        changes.clear();
+        version = Math.max(version + 1, System.currentTimeMillis() * 1000);
+        oldestCursor = version;
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    // Changes *********************************************************
+
+    /**
+     * A session started or changed; order is its current state
+     * @return the new version, or 0 if the log is not loaded
+     */
+    public synchronized long upsert(ParkingOrder order) {
+        if (!loaded) {
+            return 0;
+        }
+        boolean inserted = sessions.put(order.getParkingCode(), order) == null;
+        return record(new Change(order.getParkingCode(), order, inserted));
+    }
+
+    /**
+     * A session ended
+     * @return the new version, or 0 if the log is not loaded or the session was not open
+     */
+    public synchronized long remove(String parkingCode) {
+        if (!loaded || sessions.remove(parkingCode) == null) {
+            return 0;
+        }
+        return record(new Change(parkingCode, null, false));
+    }
+
+    private long record(Change change) {
+        change.version = ++version;
+        changes.addLast(change);
+        if (changes.size() > MAX_CHANGES) {
+            oldestCursor = changes.removeFirst().version;
+        }
+        return version;
+    }
+
+    // Queries *********************************************************
+
+    /**
+     * @return the open session with a parking code, or null if there is none (or the log is not loaded)
+     */
+    public synchronized ParkingOrder get(String parkingCode) {
+        return sessions.get(parkingCode);
+    }
+
+    /**
+     * @return the open sessions in entry order
+     */
+    public synchronized ArrayList<ParkingOrder> getActiveParkings() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Changes after a client's cursor, folded to one entry per session
+     * @param sinceVersion The version the client has, or -1 for a snapshot
+     */
+    public synchronized ActiveParkingChanges changesSince(long sinceVersion) {
+        if (sinceVersion < oldestCursor || sinceVersion > version) {
+            ActiveParkingChanges snapshot = new ActiveParkingChanges(version, true);
+            snapshot.setInserted(getActiveParkings());
+            return snapshot;
+        }
+
+        // First change after the cursor decides insert vs update; the last one gives the state
+        Map<String, Change> first = new LinkedHashMap<>();
+        Map<String, Change> last = new LinkedHashMap<>();
+        for (Change change : changes) {
+            if (change.version > sinceVersion) {
+                first.putIfAbsent(change.parkingCode, change);
+                last.put(change.parkingCode, change);
+            }
+        }
+
+        ActiveParkingChanges delta = new ActiveParkingChanges(version, false);
+        for (Map.Entry<String, Change> entry : last.entrySet()) {
+            Change latest = entry.getValue();
+            boolean newToClient = first.get(entry.getKey()).inserted;
+            if (latest.order == null) {
+                if (!newToClient) { // A session that started and ended after the cursor was never seen
+                    delta.getRemoved().add(entry.getKey());
+                }
+            } else if (newToClient) {
+                delta.getInserted().add(latest.order);
+            } else {
+                delta.getUpdated().add(latest.order);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * One change; order is null when the session ended
+     */
+    private static class Change {
+        final String parkingCode;
+        final ParkingOrder order;
+        final boolean inserted;
+        long version;
+
+        Change(String parkingCode, ParkingOrder order, boolean inserted) {
+            this.parkingCode = parkingCode;
+            this.order = order;
+            this.inserted = inserted;
+        }
+    }
+}
@@ -11,11 +11,23 @@ import javafx.animation.Timeline;
 import javafx.animation.KeyFrame;
 import javafx.util.Duration;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import client.BParkClientApp;
+import client.ClientMessageHandler;
+import client.FxUpdateQueue;
+import entities.ActiveParkingChanges;
 import entities.Message;
 import entities.Message.MessageType;
+import entities.ParkingEvent;
 import entities.ParkingOrder;
 
 public class AttendantController implements Initializable {
@@ -48,11 +60,25 @@ public class AttendantController implements Initializable {
     @FXML private ComboBox<String> comboAssistAction;
     
     private ObservableList<ParkingOrder> activeParkings = FXCollections.observableArrayList();
+    private final Consumer<ParkingEvent> updateListener = this::applyParkingEvent;
+    private final Consumer<ActiveParkingChanges> changesListener = this::applyActiveParkingChanges;
+    
+    // Live model, updated on the message decoder thread; the table catches up with it once per frame.
+    // Everything below is guarded by liveLock.
+    private final Object liveLock = new Object();
+    private final Map<String, ParkingOrder> liveParkings = new LinkedHashMap<>(); // By parking code
+    private final Map<String, ParkingOrder> pendingUpserts = new LinkedHashMap<>(); // Rows the table must set or add
+    private final Set<String> pendingRemovals = new HashSet<>(); // Rows the table must drop
+    private int liveAvailableSpots = -1;
+    
+    // Server change-log version the model reflects (0 = the server keeps no log, apply events as they come)
+    private long activeParkingsVersion = 0;
+    private long newestVersionSeen = 0;
+    private boolean changesRequested = false;
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         setupUI();
-        loadActiveParkings();
     }
     
     private void setupUI() {
@@ -72,8 +98,8 @@ public class AttendantController implements Initializable {
             setupTableColumns();
         }
         
-        // Auto-refresh active parkings every 30 seconds
-        startAutoRefresh();
+        // Live active parkings: a snapshot now, then pushed changes
+        startLiveUpdates();
     }
     
     private void setupTableColumns() {
@@ -97,12 +123,19 @@ public class AttendantController implements Initializable {
             new SimpleStringProperty(cellData.getValue().getOrderType()));
     }
     
-    private void startAutoRefresh() {
-        Timeline timeline = new Timeline(
-            new KeyFrame(Duration.seconds(30), event -> loadActiveParkings())
-        );
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+    private void startLiveUpdates() {
+        ClientMessageHandler.addParkingUpdateListener(updateListener);
+        ClientMessageHandler.addActiveParkingChangesListener(changesListener);
+        BParkClientApp.sendMessage(new Message(MessageType.SUBSCRIBE_PARKING_UPDATES, null));
+    }
+    
+    /**
+     * Stop receiving pushed updates (when the screen is closed)
+     */
+    public void stopLiveUpdates() {
+        ClientMessageHandler.removeParkingUpdateListener(updateListener);
+        ClientMessageHandler.removeActiveParkingChangesListener(changesListener);
+        BParkClientApp.sendMessage(new Message(MessageType.UNSUBSCRIBE_PARKING_UPDATES, null));
     }
     
     // ===== Action Handlers =====
@@ -142,7 +175,19 @@ public class AttendantController implements Initializable {
     
     @FXML
     private void loadActiveParkings() {
-        Message msg = new Message(MessageType.GET_ACTIVE_PARKINGS, null);
+        // Only the sessions changed since the table's version come back
+        synchronized (liveLock) {
+            changesRequested = false;
+            requestChanges();
+        }
+    }
+    
+    private void requestChanges() {
+        if (changesRequested) {
+            return;
+        }
+        changesRequested = true;
+        Message msg = new Message(MessageType.GET_ACTIVE_PARKING_CHANGES, String.valueOf(activeParkingsVersion));
         BParkClientApp.sendMessage(msg);
     }
     
@@ -304,6 +349,183 @@ public class AttendantController implements Initializable {
     
     // ===== UI Update Methods =====
     
+    /**
+     * Applies one pushed change to the model (runs on the message decoder thread)
+     */
+    private void applyParkingEvent(ParkingEvent event) {
+        synchronized (liveLock) {
+            switch (event.getType()) {
+                case SNAPSHOT:
+                    mergeSnapshot(event.getActiveParkings());
+                    activeParkingsVersion = event.getVersion();
+                    break;
+                    
+                case SESSION_STARTED:
+                case SESSION_EXTENDED:
+                case SESSION_ENDED:
+                    if (inSequence(event.getVersion())) {
+                        if (event.getOrder() != null) {
+                            upsertParking(event.getOrder());
+                        } else {
+                            removeParking(event.getParkingCode());
+                        }
+                    }
+                    break;
+                    
+                default:
+                    break; // Spot events only change the occupancy
+            }
+            liveAvailableSpots = event.getAvailableSpots();
+        }
+        FxUpdateQueue.post(this, this::refreshTable);
+    }
+    
+    /**
+     * Applies the answer to GET_ACTIVE_PARKING_CHANGES (runs on the message decoder thread)
+     */
+    private void applyActiveParkingChanges(ActiveParkingChanges changes) {
+        synchronized (liveLock) {
+            changesRequested = false;
+            if (changes.getVersion() != 0 && changes.getVersion() <= activeParkingsVersion) {
+                return; // Pushed events already got the model this far
+            }
+            
+            if (changes.isSnapshot()) {
+                mergeSnapshot(changes.getInserted());
+            } else {
+                for (ParkingOrder order : changes.getInserted()) {
+                    upsertParking(order);
+                }
+                for (ParkingOrder order : changes.getUpdated()) {
+                    upsertParking(order);
+                }
+                for (String parkingCode : changes.getRemoved()) {
+                    removeParking(parkingCode);
+                }
+            }
+            activeParkingsVersion = changes.getVersion();
+            
+            if (newestVersionSeen > activeParkingsVersion) {
+                requestChanges(); // Events arrived while the answer was on its way
+            }
+        }
+        FxUpdateQueue.post(this, this::refreshTable);
+    }
+    
+    /**
+     * @return true if a session event is the next change for the model;
+     *         older ones are already applied, and a gap asks the server for what was missed
+     */
+    private boolean inSequence(long version) {
+        if (version == 0) {
+            return true;
+        }
+        newestVersionSeen = Math.max(newestVersionSeen, version);
+        if (version <= activeParkingsVersion) {
+            return false;
+        }
+        if (version == activeParkingsVersion + 1) {
+            activeParkingsVersion = version;
+            return true;
+        }
+        requestChanges();
+        return false;
+    }
+    
+    /**
+     * Brings the model to a full list, queueing only the rows that differ
+     */
+    private void mergeSnapshot(List<ParkingOrder> parkings) {
+        Map<String, ParkingOrder> latest = new LinkedHashMap<>();
+        for (ParkingOrder order : parkings) {
+            latest.put(order.getParkingCode(), order);
+        }
+        for (String parkingCode : new ArrayList<>(liveParkings.keySet())) {
+            if (!latest.containsKey(parkingCode)) {
+                removeParking(parkingCode);
+            }
+        }
+        for (ParkingOrder order : latest.values()) {
+            upsertParking(order);
+        }
+    }
+    
+    private void upsertParking(ParkingOrder order) {
+        ParkingOrder shown = liveParkings.put(order.getParkingCode(), order);
+        if (shown == null || !sameRow(shown, order)) {
+            pendingRemovals.remove(order.getParkingCode()); // Still in the table: replace it in place
+            pendingUpserts.put(order.getParkingCode(), order);
+        }
+    }
+    
+    /**
+     * True if replacing the row would not change what the table shows
+     */
+    private boolean sameRow(ParkingOrder shown, ParkingOrder order) {
+        return Objects.equals(shown.getSubscriberName(), order.getSubscriberName())
+            && Objects.equals(shown.getSpotNumber(), order.getSpotNumber())
+            && Objects.equals(shown.getEntryTime(), order.getEntryTime())
+            && Objects.equals(shown.getExpectedExitTime(), order.getExpectedExitTime())
+            && Objects.equals(shown.getOrderType(), order.getOrderType());
+    }
+    
+    private void removeParking(String parkingCode) {
+        if (liveParkings.remove(parkingCode) != null) {
+            pendingUpserts.remove(parkingCode);
+            pendingRemovals.add(parkingCode);
+        }
+    }
+    
+    /**
+     * Applies the rows queued since the last frame to the table in one pass (FX thread)
+     */
+    private void refreshTable() {
+        Map<String, ParkingOrder> upserts;
+        Set<String> removals;
+        int availableSpots;
+        synchronized (liveLock) {
+            upserts = new LinkedHashMap<>(pendingUpserts);
+            removals = new HashSet<>(pendingRemovals);
+            pendingUpserts.clear();
+            pendingRemovals.clear();
+            availableSpots = liveAvailableSpots;
+        }
+        
+        if (!removals.isEmpty()) {
+            activeParkings.removeIf(order -> removals.contains(order.getParkingCode()));
+        }
+        for (int i = 0; i < activeParkings.size() && !upserts.isEmpty(); i++) {
+            ParkingOrder changed = upserts.remove(activeParkings.get(i).getParkingCode());
+            if (changed != null) {
+                activeParkings.set(i, changed);
+            }
+        }
+        if (!upserts.isEmpty()) {
+            activeParkings.addAll(upserts.values()); // New sessions
+        }
+        
+        updateSessionCount();
+        if (availableSpots >= 0) {
+            updateOccupancy(availableSpots);
+        }
+    }
+    
+    private void updateSessionCount() {
+        if (lblParkingStatus != null) {
+            lblParkingStatus.setText(String.format("Active Sessions: %d", activeParkings.size()));
+        }
+    }
+    
+    private void updateOccupancy(int availableSpots) {
+        int occupied = 100 - availableSpots;
+        if (progressOccupancy != null) {
+            progressOccupancy.setProgress(occupied / 100.0);
+        }
+        if (lblOccupancyDetails != null) {
+            lblOccupancyDetails.setText(String.format("%d occupied, %d available", occupied, availableSpots));
+        }
+    }
+    
     public void updateActiveParkings(ObservableList<ParkingOrder> parkings) {
         this.activeParkings.clear();
         this.activeParkings.addAll(parkings);
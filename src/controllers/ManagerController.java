@@ -7,19 +7,21 @@ import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.chart.*;
 import javafx.scene.control.*;
-import javafx.animation.Timeline;
-import javafx.animation.KeyFrame;
-import javafx.util.Duration;
 import java.net.URL;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import client.BParkClientApp;
+import client.ClientMessageHandler;
+import client.FxUpdateQueue;
 import entities.Message;
 import entities.Message.MessageType;
+import entities.ParkingEvent;
 import entities.ParkingOrder;
 import entities.ParkingReport;
 
@@ -66,14 +68,17 @@ public class ManagerController implements Initializable {
     // Embedded Attendant Controller (if using include)
     @FXML private AttendantController attendantController;
     
-    private Timeline refreshTimeline;
     private ObservableList<ParkingReport> currentReports = FXCollections.observableArrayList();
+    private final ArrayList<ParkingOrder> liveParkings = new ArrayList<>(); // Kept current by pushed updates
+    private boolean liveSessionsChanged = false; // Guarded by liveParkings, like liveAvailableSpots
+    private int liveAvailableSpots;
+    private final Consumer<ParkingEvent> updateListener = this::applyParkingEvent;
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         setupUI();
         loadInitialData();
-        startAutoRefresh();
+        startLiveUpdates();
     }
     
     private void setupUI() {
@@ -149,8 +154,7 @@ public class ManagerController implements Initializable {
     }
     
     private void loadInitialData() {
-        // Load parking availability
-        checkParkingStatus();
+        // Parking availability arrives with the update subscription's snapshot
         
         // Load initial reports
         loadReports("ALL");
@@ -159,16 +163,62 @@ public class ManagerController implements Initializable {
         updateLastRefreshTime();
     }
     
-    private void startAutoRefresh() {
-        // Refresh dashboard every 30 seconds
-        refreshTimeline = new Timeline(
-            new KeyFrame(Duration.seconds(30), event -> {
-                checkParkingStatus();
-                updateLastRefreshTime();
-            })
-        );
-        refreshTimeline.setCycleCount(Timeline.INDEFINITE);
-        refreshTimeline.play();
+    private void startLiveUpdates() {
+        // The server pushes a snapshot, then every occupancy and session change
+        ClientMessageHandler.addParkingUpdateListener(updateListener);
+        BParkClientApp.sendMessage(new Message(MessageType.SUBSCRIBE_PARKING_UPDATES, null));
+    }
+    
+    /**
+     * Applies one pushed change to the live sessions (runs on the message decoder thread)
+     */
+    private void applyParkingEvent(ParkingEvent event) {
+        synchronized (liveParkings) {
+            switch (event.getType()) {
+                case SNAPSHOT:
+                    liveParkings.clear();
+                    liveParkings.addAll(event.getActiveParkings());
+                    liveSessionsChanged = true;
+                    break;
+                    
+                case SESSION_STARTED:
+                case SESSION_EXTENDED:
+                    liveParkings.removeIf(p -> p.getParkingCode().equals(event.getParkingCode()));
+                    if (event.getOrder() != null) {
+                        liveParkings.add(event.getOrder());
+                    }
+                    liveSessionsChanged = true;
+                    break;
+                    
+                case SESSION_ENDED:
+                    liveParkings.removeIf(p -> p.getParkingCode().equals(event.getParkingCode()));
+                    liveSessionsChanged = true;
+                    break;
+                    
+                default:
+                    break; // Spot events only change the availability
+            }
+            liveAvailableSpots = event.getAvailableSpots();
+        }
+        // A burst of events redraws the dashboard once
+        FxUpdateQueue.post(liveParkings, this::showLiveState);
+    }
+    
+    private void showLiveState() {
+        ArrayList<ParkingOrder> sessions = null;
+        int availableSpots;
+        synchronized (liveParkings) {
+            availableSpots = liveAvailableSpots;
+            if (liveSessionsChanged) {
+                sessions = new ArrayList<>(liveParkings);
+                liveSessionsChanged = false;
+            }
+        }
+        updateParkingStatus(availableSpots);
+        if (sessions != null) {
+            updateActiveParkings(sessions);
+        }
+        updateLastRefreshTime();
     }
     
     // ===== Action Handlers =====
@@ -214,18 +264,33 @@ public class ManagerController implements Initializable {
     }
     
     @FXML
+    @SuppressWarnings("unchecked")
     private void checkParkingStatus() {
-        Message msg = new Message(MessageType.CHECK_PARKING_AVAILABILITY, null);
-        BParkClientApp.sendMessage(msg);
+        // Both requests are in flight at once; each reply is applied when it arrives
+        CompletableFuture<Message> availability = BParkClientApp.request(
+            new Message(MessageType.CHECK_PARKING_AVAILABILITY, null));
+        CompletableFuture<Message> active = BParkClientApp.request(
+            new Message(MessageType.GET_ACTIVE_PARKINGS, null));
         
-        // Also get active parkings for statistics
-        Message activeMsg = new Message(MessageType.GET_ACTIVE_PARKINGS, null);
-        BParkClientApp.sendMessage(activeMsg);
+        availability.thenAccept(reply -> updateParkingStatus((Integer) reply.getContent()));
+        active.thenAccept(reply -> updateActiveParkings((ArrayList<ParkingOrder>) reply.getContent()));
+        CompletableFuture.allOf(availability, active).whenComplete((done, error) -> {
+            if (error != null) {
+                System.out.println("Parking status refresh failed: " + error.getMessage());
+            } else {
+                Platform.runLater(this::updateLastRefreshTime);
+            }
+        });
     }
     
+    @SuppressWarnings("unchecked")
     private void loadReports(String type) {
-        Message msg = new Message(MessageType.MANAGER_GET_REPORTS, type);
-        BParkClientApp.sendMessage(msg);
+        BParkClientApp.request(new Message(MessageType.MANAGER_GET_REPORTS, type))
+            .thenAccept(reply -> updateReports((ArrayList<ParkingReport>) reply.getContent()))
+            .exceptionally(error -> {
+                System.out.println("Loading reports failed: " + error.getMessage());
+                return null;
+            });
     }
     
     // ===== UI Update Methods =====
@@ -433,9 +498,11 @@ public class ManagerController implements Initializable {
     
     @FXML
     private void handleLogout() {
-        // Stop refresh timeline
-        if (refreshTimeline != null) {
-            refreshTimeline.stop();
+        // Stop pushed updates
+        ClientMessageHandler.removeParkingUpdateListener(updateListener);
+        BParkClientApp.sendMessage(new Message(MessageType.UNSUBSCRIBE_PARKING_UPDATES, null));
+        if (attendantController != null) {
+            attendantController.stopLiveUpdates();
         }
         
         // Send logout notification
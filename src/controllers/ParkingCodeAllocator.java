@@ -0,0 +1,231 @@
+package controllers;
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalTime;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * ParkingCodeAllocator - hands out the 6-digit parking codes and keeps the open parking
+ * sessions in memory by code, so no two cars hold the same code and an exit or extension
+ * finds its session without querying ParkingInfo.
+ *
+ * Codes are drawn in the order of a random permutation of 100000-999999 (a keyed Feistel
+ * network over 20 bits, walked until it lands in range), so they look random, do not repeat
+ * before the whole space was used, and a code still held by an open session is skipped.
+ * A code is reserved by allocate(), bound to its session by activate() once the row is
+ * inserted, and freed by release() on exit or when the insert failed.
+ *
+ * Until the open sessions were loaded, lookups fall back to the database.
+ * One allocator is shared by all controllers on the same DataSource.
+ */
+public class ParkingCodeAllocator {
+
+    public static final int MIN_CODE = 100000;
+    public static final int CODE_SPACE = 900000;
+
+    private static final int HALF_BITS = 10; // 2^20 > CODE_SPACE
+    private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+
+    private static final Map<DataSource, ParkingCodeAllocator> ALLOCATORS = new IdentityHashMap<>();
+
+    // Placeholder for a code handed out whose session is not inserted yet
+    private static final ActiveCode RESERVED = new ActiveCode(-1, -1, null, null);
+
+    private final DataSource dataSource;
+    private final int[] roundKeys = new int[ROUNDS];
+    private final AtomicLong counter;
+    private final Map<Integer, ActiveCode> active = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    /**
+     * @param dataSource Where open sessions are loaded from; null for an allocator filled only through activate()
+     */
+    public ParkingCodeAllocator(DataSource dataSource) {
+        this.dataSource = dataSource;
+        SecureRandom random = new SecureRandom();
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = random.nextInt();
+        }
+        this.counter = new AtomicLong(random.nextInt(CODE_SPACE));
+    }
+
+    /**
+     * Returns the shared allocator for a DataSource, creating it (not yet loaded) on first use
+     */
+    public static synchronized ParkingCodeAllocator forDataSource(DataSource dataSource) {
+        return ALLOCATORS.computeIfAbsent(dataSource, ParkingCodeAllocator::new);
+    }
+
+    // Loading *********************************************************
+
+    /**
+     * Reads the open sessions from ParkingInfo; their codes are not handed out until they exit
+     */
+    public void loadFromDatabase() throws SQLException {
+        String qry = "SELECT Code, ParkingSpot_ID, User_ID, IsOrderedEnum, Estimated_end_time FROM ParkingInfo WHERE Actual_end_time IS NULL";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(qry);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                active.put(rs.getInt("Code"), readActiveCode(rs));
+            }
+        }
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Allocation ******************************************************
+
+    /**
+     * Reserves a code that no open session holds
+     * @throws IllegalStateException if every code is in use
+     */
+    public int allocate() {
+        for (int attempt = 0; attempt < CODE_SPACE; attempt++) {
+            int code = MIN_CODE + permute((int) Math.floorMod(counter.getAndIncrement(), (long) CODE_SPACE));
+            if (active.putIfAbsent(code, RESERVED) == null) {
+                return code;
+            }
+        }
+        throw new IllegalStateException("No free parking codes");
+    }
+
+    /**
+     * Binds a reserved code to the session just inserted under it
+     */
+    public void activate(int code, int spotID, int userID, String orderType, LocalTime estimatedEnd) {
+        active.put(code, new ActiveCode(spotID, userID, orderType, estimatedEnd));
+    }
+
+    /**
+     * Frees a code whose session ended or was never inserted
+     */
+    public void release(int code) {
+        active.remove(code);
+    }
+
+    /**
+     * Write-through after a session was extended
+     */
+    public void extend(int code, LocalTime estimatedEnd) {
+        ActiveCode session = active.get(code);
+        if (session != null && session != RESERVED) {
+            session.estimatedEnd = estimatedEnd;
+        }
+    }
+
+    // Lookup **********************************************************
+
+    /**
+     * @return the open session holding a code, or null if there is none
+     */
+    public ActiveCode find(int code) throws SQLException {
+        if (loaded) {
+            ActiveCode session = active.get(code);
+            return session == RESERVED ? null : session;
+        }
+        String qry = "SELECT Code, ParkingSpot_ID, User_ID, IsOrderedEnum, Estimated_end_time FROM ParkingInfo WHERE Code = ? AND Actual_end_time IS NULL";
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
+            stmt.setInt(1, code);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? readActiveCode(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Number of codes held by open sessions or reserved for one being inserted
+     */
+    public int size() {
+        return active.size();
+    }
+
+    private static ActiveCode readActiveCode(ResultSet rs) throws SQLException {
+        Time end = rs.getTime("Estimated_end_time");
+        return new ActiveCode(rs.getInt("ParkingSpot_ID"), rs.getInt("User_ID"),
+            rs.getString("IsOrderedEnum"), end != null ? end.toLocalTime() : null);
+    }
+
+    // Permutation *****************************************************
+
+    /**
+     * Bijection on [0, CODE_SPACE): a Feistel network is a bijection on [0, 2^20), and
+     * re-applying it until the value falls in range keeps it one on the smaller set
+     */
+    private int permute(int index) {
+        int value = index;
+        do {
+            value = feistel(value);
+        } while (value >= CODE_SPACE);
+        return value;
+    }
+
+    private int feistel(int value) {
+        int left = value >>> HALF_BITS;
+        int right = value & HALF_MASK;
+        for (int key : roundKeys) {
+            int next = left ^ round(right, key);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private static int round(int half, int key) {
+        int h = (half ^ key) * 0x9E3779B1;
+        h ^= h >>> 15;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h & HALF_MASK;
+    }
+
+    /**
+     * One open parking session
+     */
+    public static class ActiveCode {
+        private final int spotID;
+        private final int userID;
+        private final String orderType;
+        private volatile LocalTime estimatedEnd;
+
+        ActiveCode(int spotID, int userID, String orderType, LocalTime estimatedEnd) {
+            this.spotID = spotID;
+            this.userID = userID;
+            this.orderType = orderType;
+            this.estimatedEnd = estimatedEnd;
+        }
+
+        public int getSpotID() {
+            return spotID;
+        }
+
+        public int getUserID() {
+            return userID;
+        }
+
+        /**
+         * @return IsOrderedEnum of the session ('ordered' or 'not ordered')
+         */
+        public String getOrderType() {
+            return orderType;
+        }
+
+        public LocalTime getEstimatedEnd() {
+            return estimatedEnd;
+        }
+    }
+}
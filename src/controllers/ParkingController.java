@@ -2,7 +2,6 @@ package controllers;
 
 import java.sql.Connection;
 import java.sql.Date;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -11,11 +10,19 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.function.Predicate;
 
+import javax.sql.DataSource;
+
+import entities.ActiveParkingChanges;
+import entities.HistoryPage;
+import entities.ParkingEvent;
+import entities.ParkingEvent.EventType;
 import entities.ParkingOrder;
 import entities.ParkingSubscriber;
+import services.ConnectionPool;
 import services.EmailService; // 🆕 ADD THIS IMPORT
 
 /**
@@ -23,10 +30,12 @@ import services.EmailService; // 🆕 ADD THIS IMPORT
  * Handles all database operations for the ParkB parking management system.
  */
 public class ParkingController {
-    protected Connection conn;
+    protected DataSource dataSource;
     public int successFlag;
     private static final int TOTAL_PARKING_SPOTS = 100;
     private static final double RESERVATION_THRESHOLD = 0.4;
+    public static final int HISTORY_PAGE_SIZE = 50;
+    public static final int MAX_HISTORY_PAGE_SIZE = 500;
     /**
      * Role-based access control for all parking operations
      */
@@ -56,23 +65,15 @@ public class ParkingController {
     }
 
     /**
-     * Get user role from database
+     * Get user role (from the session of a logged-in user, otherwise from the user cache or database)
      */
     private UserRole getUserRole(String userName) {
-        String qry = "SELECT UserTypeEnum FROM users WHERE UserName = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setString(1, userName);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String userType = rs.getString("UserTypeEnum");
-                    return UserRole.fromDbValue(userType);
-                }
-            }
-        } catch (SQLException e) {
-            System.out.println("Error getting user role: " + e.getMessage());
+        SessionRegistry.UserSession session = sessions.get(userName);
+        if (session != null) {
+            return session.getRole();
         }
-        return null;
+        ParkingSubscriber user = findUser(userName);
+        return user != null ? UserRole.fromDbValue(user.getUserType()) : null;
     }
 
     /**
@@ -98,20 +99,74 @@ public class ParkingController {
     
     // Auto-cancellation service
     private SimpleAutoCancellationService autoCancellationService;
+    
+    // In-memory spot occupancy, written through to the ParkingSpot table
+    private SpotOccupancy spotOccupancy;
+    
+    // In-memory index of reservations holding a spot, shared with SmartParkingController
+    private ReservationIndex reservationIndex;
+    
+    // Rolling per-day report totals, shared with ReportController
+    private ReportAggregates reportAggregates;
+    
+    // Open sessions in memory with a versioned change log, for delta refreshes
+    private ActiveParkingLog activeParkingLog;
+    
+    // Users logged in on each connection, so their role and ID checks skip the users table
+    private SessionRegistry sessions;
+    
+    // Recently used users rows, by UserName and User_ID
+    private UserCache userCache;
+    
+    // Parking codes of the open sessions, shared with SmartParkingController
+    private ParkingCodeAllocator parkingCodes;
+    
+    // Told about every occupancy and session change (the server pushes them to subscribed clients)
+    private volatile ParkingEventListener eventListener;
 
     public ParkingController(String dbname, String pass) {
         String connectPath = "jdbc:mysql://localhost/" + dbname + "?serverTimezone=IST";
         connectToDB(connectPath, pass);
+        initialize();
+    }
+
+    /**
+     * Uses a pool that is already set up (e.g. an embedded database in the benchmarks)
+     */
+    public ParkingController(DataSource dataSource) {
+        this.dataSource = dataSource;
+        successFlag = 1;
+        initialize();
+    }
+
+    private void initialize() {
+        spotOccupancy = SpotOccupancy.forDataSource(dataSource);
+        reservationIndex = ReservationIndex.forDataSource(dataSource);
+        reportAggregates = ReportAggregates.forDataSource(dataSource);
+        activeParkingLog = ActiveParkingLog.forDataSource(dataSource);
+        sessions = SessionRegistry.forDataSource(dataSource);
+        userCache = UserCache.forDataSource(dataSource);
+        parkingCodes = ParkingCodeAllocator.forDataSource(dataSource);
         
         // Initialize auto-cancellation service after DB connection
         if (successFlag == 1) {
+            loadReportAggregates();
+            loadActiveParkingLog();
+            loadParkingCodes();
             this.autoCancellationService = new SimpleAutoCancellationService(this);
             startAutoCancellationService();
         }
     }
 
-    public Connection getConnection() {
-        return conn;
+    /**
+     * Borrows a pooled connection; the caller must close it to return it to the pool
+     */
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
     }
 
     public void connectToDB(String path, String pass) {
@@ -122,8 +177,12 @@ public class ParkingController {
             System.out.println("Driver definition failed");
         }
 
-        try {
-            conn = DriverManager.getConnection(path, "root", pass);
+        // All controllers on the same database share one pool
+        dataSource = ConnectionPool.forDatabase(path, "root", pass);
+        try (Connection conn = dataSource.getConnection()) {
+            if (!conn.isValid(5)) {
+                throw new SQLException("Connection is not valid");
+            }
             System.out.println("SQL connection succeed");
             successFlag = 1;
         } catch (SQLException ex) {
@@ -134,6 +193,53 @@ public class ParkingController {
         }
     }
 
+    /**
+     * Reads the report window once, before any client can change ParkingInfo
+     */
+    private void loadReportAggregates() {
+        try {
+            reportAggregates.loadFromDatabase();
+        } catch (SQLException e) {
+            System.out.println("Error loading report aggregates (reports will query the database): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the open sessions once; from then on every start, extension and exit updates the log
+     */
+    private void loadActiveParkingLog() {
+        try {
+            activeParkingLog.load(queryActiveParkings());
+        } catch (SQLException e) {
+            System.out.println("Error loading active parkings (they will be queried each time): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the codes of the open sessions once; from then on every entry and exit updates them
+     */
+    private void loadParkingCodes() {
+        try {
+            parkingCodes.loadFromDatabase();
+        } catch (SQLException e) {
+            System.out.println("Error loading parking codes (exits will query the database): " + e.getMessage());
+        }
+    }
+
+    public ReportAggregates getReportAggregates() {
+        return reportAggregates;
+    }
+
+    /**
+     * Registers the listener for occupancy and session changes (null removes it).
+     * Events are raised on the thread that made the change, after the database write.
+     */
+    public void setEventListener(ParkingEventListener listener) {
+        this.eventListener = listener;
+        spotOccupancy.setChangeListener(listener == null ? null
+            : (spotId, occupied, freeSpots) -> listener.parkingEvent(ParkingEvent.spotChanged(spotId, occupied, freeSpots)));
+    }
+
     /**
      * Start the automatic reservation cancellation service
      */
@@ -161,6 +267,7 @@ public class ParkingController {
         if (autoCancellationService != null) {
             autoCancellationService.shutdown();
         }
+        spotOccupancy.shutdown();
     }
 
     // ========== ALL YOUR EXISTING METHODS ==========
@@ -168,7 +275,7 @@ public class ParkingController {
     public String checkLogin(String userName, String password) {
         String qry = "SELECT UserTypeEnum FROM users WHERE UserName = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -185,10 +292,65 @@ public class ParkingController {
      * Gets user information by userName
      */
     public ParkingSubscriber getUserInfo(String userName) {
-        String qry = "SELECT * FROM users WHERE UserName = ?";
+        SessionRegistry.UserSession session = sessions.get(userName);
+        if (session != null) {
+            return session.getProfile();
+        }
+        return findUser(userName);
+    }
+    
+    /**
+     * Logs a user in on a client connection: reads the user's row once and keeps it for the session
+     * @param connection Key identifying the client connection
+     * @return the user's profile, or null if there is no such user
+     */
+    public ParkingSubscriber openSession(Object connection, String userName) {
+        ParkingSubscriber profile = findUser(userName);
+        if (profile != null) {
+            sessions.open(connection, profile);
+        }
+        return profile;
+    }
+    
+    /**
+     * Ends the session on a client connection (logout or disconnect)
+     */
+    public void closeSession(Object connection) {
+        sessions.close(connection);
+    }
+
+    /**
+     * Check if a manager is logged in on a client connection
+     */
+    public boolean isManagerSession(Object connection) {
+        SessionRegistry.UserSession session = sessions.getForConnection(connection);
+        return session != null && session.getRole() == UserRole.MANAGER;
+    }
+    
+    /**
+     * Looks a user up by UserName in the user cache, reading the row on a miss
+     * @return the user, or null if there is no such user
+     */
+    private ParkingSubscriber findUser(String userName) {
+        ParkingSubscriber cached = userCache.get(userName);
+        return cached != null ? cached : loadUser("UserName = ?", userName);
+    }
+    
+    /**
+     * Looks a user up by User_ID in the user cache, reading the row on a miss
+     * @return the user, or null if there is no such user
+     */
+    private ParkingSubscriber findUser(int userID) {
+        ParkingSubscriber cached = userCache.get(userID);
+        return cached != null ? cached : loadUser("User_ID = ?", userID);
+    }
+    
+    private ParkingSubscriber loadUser(String condition, Object key) {
+        String qry = "SELECT * FROM users WHERE " + condition;
+        long readGeneration = userCache.generation(); // Before the SELECT, so a write during it is noticed
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setString(1, userName);
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
+            stmt.setObject(1, key);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     ParkingSubscriber user = new ParkingSubscriber();
@@ -197,8 +359,9 @@ public class ParkingController {
                     user.setPhoneNumber(rs.getString("Phone"));
                     user.setEmail(rs.getString("Email"));
                     user.setCarNumber(rs.getString("CarNum"));
-                    user.setSubscriberCode(userName);
+                    user.setSubscriberCode(rs.getString("UserName"));
                     user.setUserType(rs.getString("UserTypeEnum"));
+                    userCache.put(user, readGeneration);
                     return user;
                 }
             }
@@ -212,18 +375,35 @@ public class ParkingController {
      * Gets the number of available parking spots
      */
     public int getAvailableParkingSpots() {
-        String qry = "SELECT COUNT(*) as available FROM ParkingSpot WHERE isOccupied = false";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("available");
-                }
-            }
-        } catch (SQLException e) {
-            System.out.println("Error getting available spots: " + e.getMessage());
-        }
-        return 0;
+        return spots().getFreeCount();
+    }
+
+    /**
+     * Gets the number of parking spots known to the in-memory occupancy (0 before it was loaded)
+     */
+    public int getTotalParkingSpots() {
+        return spotOccupancy.getSpotCount();
+    }
+
+    /**
+     * Gets the occupied parking spots from the in-memory occupancy, never touching the database
+     */
+    public int getOccupiedParkingSpots() {
+        return spotOccupancy.isLoaded() ? spotOccupancy.getSpotCount() - spotOccupancy.getFreeCount() : 0;
+    }
+
+    /**
+     * Gets how late past their deadline late preorders are cancelled, in milliseconds (0 without the service)
+     */
+    public long getAutoCancellationLagMillis() {
+        return autoCancellationService != null ? autoCancellationService.getLagMillis() : 0;
+    }
+
+    /**
+     * Gets the number of preorders the auto-cancellation service is waiting on
+     */
+    public int getPendingAutoCancellations() {
+        return autoCancellationService != null ? autoCancellationService.getPendingCount() : 0;
     }
 
     /**
@@ -274,13 +454,13 @@ public class ParkingController {
 
             // Create reservation with DATETIME
             String qry = """
-                INSERT INTO Reservations 
+                INSERT INTO Reservations
                 (User_ID, parking_ID, reservation_Date, reservation_start_time, reservation_end_time,
-                 Date_Of_Placing_Order, statusEnum, assigned_parking_spot_id) 
+                 Date_Of_Placing_Order, statusEnum, assigned_parking_spot_id)
                 VALUES (?, ?, ?, ?, ?, NOW(), 'preorder', ?)
                 """;
             
-            try (PreparedStatement stmt = conn.prepareStatement(qry, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry, PreparedStatement.RETURN_GENERATED_KEYS)) {
                 stmt.setInt(1, userID);
                 stmt.setInt(2, parkingSpotID);
                 stmt.setDate(3, Date.valueOf(reservationDateTime.toLocalDate()));
@@ -293,6 +473,10 @@ public class ParkingController {
                 try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
                     if (generatedKeys.next()) {
                         int reservationCode = generatedKeys.getInt(1);
+                        reservations().add(reservationCode, parkingSpotID, reservationDateTime, estimatedEndTime);
+                        if (autoCancellationService != null) {
+                            autoCancellationService.scheduleCancellation(reservationCode, reservationDateTime);
+                        }
                         System.out.println("New preorder reservation created: " + reservationCode + 
                                          " for " + reservationDateTime + " (15-min auto-cancel rule applies)");
                         
@@ -356,38 +540,20 @@ public class ParkingController {
             return "Invalid user code";
         }
 
-        // Check if spots are available
-        if (getAvailableParkingSpots() <= 0) {
-            return "No parking spots available";
-        }
-
-        // Find available parking spot
-        int spotID = getAvailableParkingSpotID();
-        if (spotID == -1) {
-            return "No available parking spot found";
-        }
+        // Borrow the connection first, so a pool timeout leaves no spot or code claimed
+        try (Connection conn = dataSource.getConnection()) {
+            // Claim a free spot (no other gate can get it from here on)
+            int spotID = spots().allocatePinned();
+            if (spotID == -1) {
+                return "No parking spots available";
+            }
 
-        // Generate unique parking code
-        int parkingCode = generateParkingCode();
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime estimatedEnd = now.plusHours(4); // Default 4 hours
+            // Generate unique parking code
+            int parkingCode = generateParkingCode();
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime estimatedEnd = now.plusHours(4); // Default 4 hours
 
-        // Create parking info record
-        String qry = "INSERT INTO ParkingInfo (ParkingSpot_ID, User_ID, Date, Code, Actual_start_time, Estimated_start_time, Estimated_end_time, IsOrderedEnum, IsLate, IsExtended) VALUES (?, ?, ?, ?, ?, ?, ?, 'not ordered', false, false)";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setInt(1, spotID);
-            stmt.setInt(2, userID);
-            stmt.setDate(3, Date.valueOf(now.toLocalDate()));
-            stmt.setInt(4, parkingCode);
-            stmt.setTime(5, Time.valueOf(now.toLocalTime()));
-            stmt.setTime(6, Time.valueOf(now.toLocalTime()));
-            stmt.setTime(7, Time.valueOf(estimatedEnd.toLocalTime()));
-            stmt.executeUpdate();
-
-            // Mark parking spot as occupied
-            updateParkingSpotStatus(spotID, true);
-            
+            startParkingSession(conn, parkingCode, spotID, userID, now, estimatedEnd, false, false, -1);
             return "Entry successful. Parking code: " + parkingCode + ". Spot: " + spotID;
         } catch (SQLException e) {
             System.out.println("Error handling entry: " + e.getMessage());
@@ -402,7 +568,7 @@ public class ParkingController {
         // Check if reservation exists and is in preorder status
         String checkQry = "SELECT r.*, u.User_ID FROM Reservations r JOIN users u ON r.User_ID = u.User_ID WHERE r.Reservation_code = ? AND r.statusEnum = 'preorder'";
         
-        try (PreparedStatement stmt = conn.prepareStatement(checkQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(checkQry)) {
             stmt.setInt(1, reservationCode);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -422,10 +588,9 @@ public class ParkingController {
                         }
                     }
 
-                    // Check if spot is still available
-                    if (!isParkingSpotAvailable(parkingSpotID)) {
-                        // Find another available spot
-                        parkingSpotID = getAvailableParkingSpotID();
+                    // Claim the assigned spot, or another one if it is taken (the reservation moves with it)
+                    if (!spots().claimPinned(parkingSpotID)) {
+                        parkingSpotID = spots().allocatePinned();
                         if (parkingSpotID == -1) {
                             return "No available parking spots found";
                         }
@@ -436,26 +601,11 @@ public class ParkingController {
                     LocalDateTime now = LocalDateTime.now();
                     LocalDateTime estimatedEnd = now.plusHours(4);
 
-                    // Create parking info record
-                    String insertQry = "INSERT INTO ParkingInfo (ParkingSpot_ID, User_ID, Date, Code, Actual_start_time, Estimated_start_time, Estimated_end_time, IsOrderedEnum, IsLate, IsExtended) VALUES (?, ?, ?, ?, ?, ?, ?, 'ordered', false, false)";
+                    // Session, spot and reservation (preorder → active) in one transaction
+                    startParkingSession(conn, parkingCode, parkingSpotID, userID, now, estimatedEnd, true, false, reservationCode);
                     
-                    try (PreparedStatement insertStmt = conn.prepareStatement(insertQry)) {
-                        insertStmt.setInt(1, parkingSpotID);
-                        insertStmt.setInt(2, userID);
-                        insertStmt.setDate(3, Date.valueOf(now.toLocalDate()));
-                        insertStmt.setInt(4, parkingCode);
-                        insertStmt.setTime(5, Time.valueOf(now.toLocalTime()));
-                        insertStmt.setTime(6, Time.valueOf(now.toLocalTime()));
-                        insertStmt.setTime(7, Time.valueOf(estimatedEnd.toLocalTime()));
-                        insertStmt.executeUpdate();
-
-                        // Mark parking spot as occupied and change reservation to active
-                        updateParkingSpotStatus(parkingSpotID, true);
-                        updateReservationStatus(reservationCode, "active");
-                        
-                        System.out.println("Reservation " + reservationCode + " activated (preorder → active)");
-                        return "Entry successful! Reservation activated. Parking code: " + parkingCode + ". Spot: " + parkingSpotID;
-                    }
+                    System.out.println("Reservation " + reservationCode + " activated (preorder → active)");
+                    return "Entry successful! Reservation activated. Parking code: " + parkingCode + ". Spot: " + parkingSpotID;
                 }
             }
         } catch (SQLException e) {
@@ -500,7 +650,7 @@ public class ParkingController {
         // Check if username already exists
         String checkQry = "SELECT COUNT(*) FROM users WHERE UserName = ?";
         
-        try (PreparedStatement checkStmt = conn.prepareStatement(checkQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement checkStmt = conn.prepareStatement(checkQry)) {
             checkStmt.setString(1, userName);
             try (ResultSet rs = checkStmt.executeQuery()) {
                 if (rs.next() && rs.getInt(1) > 0) {
@@ -515,7 +665,7 @@ public class ParkingController {
         // Insert new subscriber
         String insertQry = "INSERT INTO users (UserName, Name, Phone, Email, CarNum, UserTypeEnum) VALUES (?, ?, ?, ?, ?, 'sub')";
         
-        try (PreparedStatement stmt = conn.prepareStatement(insertQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(insertQry)) {
             stmt.setString(1, userName);
             stmt.setString(2, name);
             stmt.setString(3, phone);
@@ -525,6 +675,7 @@ public class ParkingController {
             int rowsInserted = stmt.executeUpdate();
             if (rowsInserted > 0) {
                 System.out.println("New subscriber registered: " + userName);
+                userCache.invalidate(userName);
                 
                 // 🆕 SEND EMAIL NOTIFICATIONS
                 EmailService.sendRegistrationConfirmation(email, name, userName);
@@ -570,51 +721,63 @@ public class ParkingController {
     public String exitParking(String parkingCodeStr) {
         try {
             int parkingCode = Integer.parseInt(parkingCodeStr);
-            String qry = "SELECT pi.*, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE pi.Code = ? AND pi.Actual_end_time IS NULL";
+            ParkingCodeAllocator.ActiveCode session = parkingCodes.find(parkingCode);
+            if (session == null) {
+                return "Invalid parking code or already exited";
+            }
+            int spotID = session.getSpotID();
+            int userID = session.getUserID();
             
-            try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-                stmt.setInt(1, parkingCode);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        int parkingInfoID = rs.getInt("ParkingInfo_ID");
-                        int spotID = rs.getInt("ParkingSpot_ID");
-                        Time estimatedEndTime = rs.getTime("Estimated_end_time");
-                        int userID = rs.getInt("User_ID");
-                        String orderType = rs.getString("IsOrderedEnum");
-                        
-                        LocalTime now = LocalTime.now();
-                        LocalTime estimatedEnd = estimatedEndTime.toLocalTime();
-                        
-                        // Check if parking exceeded estimated time
-                        boolean isLate = now.isAfter(estimatedEnd);
-                        
-                        // Update parking info with exit time
-                        String updateQry = "UPDATE ParkingInfo SET Actual_end_time = ?, IsLate = ? WHERE ParkingInfo_ID = ?";
-                        
-                        try (PreparedStatement updateStmt = conn.prepareStatement(updateQry)) {
-                            updateStmt.setTime(1, Time.valueOf(now));
-                            updateStmt.setBoolean(2, isLate);
-                            updateStmt.setInt(3, parkingInfoID);
-                            updateStmt.executeUpdate();
-                            
-                            // Free the parking spot
-                            updateParkingSpotStatus(spotID, false);
-                            
-                            // If this was from a reservation, finish the reservation
-                            if ("ordered".equals(orderType)) {
-                                finishReservationBySpotAndUser(spotID, userID);
-                            }
-                            
-                            if (isLate) {
-                                sendLateExitNotification(userID);
-                                return "Exit successful. You were late - please arrive on time for future reservations";
-                            }
-                            
-                            return "Exit successful. Thank you for using ParkB!";
-                        }
-                    }
+            LocalTime now = LocalTime.now();
+            
+            // Check if parking exceeded estimated time
+            boolean isLate = now.isAfter(session.getEstimatedEnd());
+            
+            // Close the session, free the spot and finish the reservation it came from, in one statement.
+            // Only an open session matches (an open session's code is unique), so a second exit changes nothing.
+            String exitQry = """
+                UPDATE ParkingInfo pi
+                JOIN ParkingSpot ps ON ps.ParkingSpot_ID = pi.ParkingSpot_ID
+                LEFT JOIN Reservations r ON pi.IsOrderedEnum = 'ordered' AND r.User_ID = pi.User_ID
+                    AND r.assigned_parking_spot_id = pi.ParkingSpot_ID AND r.statusEnum = 'active'
+                SET pi.Actual_end_time = ?, pi.IsLate = ?, ps.isOccupied = false, r.statusEnum = 'finished'
+                WHERE pi.Code = ? AND pi.Actual_end_time IS NULL
+                """;
+            
+            spots().pin(spotID);
+            try (Connection conn = dataSource.getConnection(); PreparedStatement exitStmt = conn.prepareStatement(exitQry)) {
+                exitStmt.setTime(1, Time.valueOf(now));
+                exitStmt.setBoolean(2, isLate);
+                exitStmt.setInt(3, parkingCode);
+                if (exitStmt.executeUpdate() == 0) {
+                    // Another gate exited it first
+                    return "Invalid parking code or already exited";
                 }
+                // Free the parking spot (its row was written above)
+                releaseParkingSpot(spotID);
+            } finally {
+                spots().unpin(spotID);
             }
+            parkingCodes.release(parkingCode);
+            reportAggregates.parkingEnded(parkingCode, LocalDateTime.of(LocalDate.now(), now), isLate);
+            sessionChanged(EventType.SESSION_ENDED, parkingCode, spotID, null);
+            
+            // If this was from a reservation, it no longer holds the spot
+            if ("ordered".equals(session.getOrderType())) {
+                System.out.println("Reservation finished for user " + userID + " at spot " + spotID);
+                try {
+                    reservations().reloadSpot(spotID); // The finished codes are not known here
+                } catch (SQLException e) {
+                    System.out.println("Error reloading reservations of spot " + spotID + ": " + e.getMessage());
+                }
+            }
+            
+            if (isLate) {
+                sendLateExitNotification(userID);
+                return "Exit successful. You were late - please arrive on time for future reservations";
+            }
+            
+            return "Exit successful. Thank you for using ParkB!";
         } catch (NumberFormatException e) {
             return "Invalid parking code format";
         } catch (SQLException e) {
@@ -634,39 +797,41 @@ public class ParkingController {
         try {
             int parkingCode = Integer.parseInt(parkingCodeStr);
             
+            ParkingCodeAllocator.ActiveCode session = parkingCodes.find(parkingCode);
+            if (session == null) {
+                return "Invalid parking code or parking session not active";
+            }
+            
             // 🔧 FIXED: Get user info for email notification
-            String getUserQry = "SELECT pi.*, u.Email, u.Name FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID WHERE pi.Code = ? AND pi.Actual_end_time IS NULL";
+            ParkingSubscriber user = findUser(session.getUserID());
+            String userEmail = user != null ? user.getEmail() : null;
+            String userName = user != null ? user.getFirstName() : null;
             
-            try (PreparedStatement stmt = conn.prepareStatement(getUserQry)) {
-                stmt.setInt(1, parkingCode);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        Time currentEstimatedEnd = rs.getTime("Estimated_end_time");
-                        String userEmail = rs.getString("Email");
-                        String userName = rs.getString("Name");
-                        
-                        LocalTime newEstimatedEnd = currentEstimatedEnd.toLocalTime().plusHours(additionalHours);
-                        
-                        String updateQry = "UPDATE ParkingInfo SET Estimated_end_time = ?, IsExtended = true WHERE Code = ?";
-                        
-                        try (PreparedStatement updateStmt = conn.prepareStatement(updateQry)) {
-                            updateStmt.setTime(1, Time.valueOf(newEstimatedEnd));
-                            updateStmt.setInt(2, parkingCode);
-                            updateStmt.executeUpdate();
-                            
-                            // 🆕 SEND EMAIL NOTIFICATION
-                            if (userEmail != null && userName != null) {
-                                EmailService.sendExtensionConfirmation(
-                                    userEmail, userName, parkingCodeStr, 
-                                    additionalHours, newEstimatedEnd.toString()
-                                );
-                            }
-                            
-                            return "Parking time extended by " + additionalHours + " hours until " + newEstimatedEnd;
-                        }
-                    }
+            LocalTime newEstimatedEnd = session.getEstimatedEnd().plusHours(additionalHours);
+            
+            String updateQry = "UPDATE ParkingInfo SET Estimated_end_time = ?, IsExtended = true WHERE Code = ? AND Actual_end_time IS NULL";
+            
+            try (Connection conn = dataSource.getConnection(); PreparedStatement updateStmt = conn.prepareStatement(updateQry)) {
+                updateStmt.setTime(1, Time.valueOf(newEstimatedEnd));
+                updateStmt.setInt(2, parkingCode);
+                if (updateStmt.executeUpdate() == 0) {
+                    return "Invalid parking code or parking session not active";
                 }
             }
+            parkingCodes.extend(parkingCode, newEstimatedEnd);
+            reportAggregates.parkingExtended(parkingCode);
+            sessionChanged(EventType.SESSION_EXTENDED, parkingCode, session.getSpotID(),
+                extendedOrder(parkingCode, newEstimatedEnd));
+            
+            // 🆕 SEND EMAIL NOTIFICATION
+            if (userEmail != null && userName != null) {
+                EmailService.sendExtensionConfirmation(
+                    userEmail, userName, parkingCodeStr, 
+                    additionalHours, newEstimatedEnd.toString()
+                );
+            }
+            
+            return "Parking time extended by " + additionalHours + " hours until " + newEstimatedEnd;
         } catch (NumberFormatException e) {
             return "Invalid parking code format";
         } catch (SQLException e) {
@@ -679,19 +844,20 @@ public class ParkingController {
      * Sends lost parking code to user - 🔧 FIXED COMPILATION ERRORS
      */
     public String sendLostParkingCode(String userName) {
-        String qry = "SELECT pi.Code, u.Email, u.Phone, u.Name FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID WHERE u.UserName = ? AND pi.Actual_end_time IS NULL";
+        ParkingSubscriber user = findUser(userName);
+        if (user == null) {
+            return "No active parking session found";
+        }
+        String qry = "SELECT Code FROM ParkingInfo WHERE User_ID = ? AND Actual_end_time IS NULL";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setString(1, userName);
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
+            stmt.setInt(1, user.getSubscriberID());
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     int parkingCode = rs.getInt("Code");
-                    String email = rs.getString("Email");
-                    String phone = rs.getString("Phone");
-                    String name = rs.getString("Name"); // 🔧 FIXED: Now getting name from query
                     
                     // 🆕 SEND EMAIL NOTIFICATION
-                    EmailService.sendParkingCodeRecovery(email, name, String.valueOf(parkingCode));
+                    EmailService.sendParkingCodeRecovery(user.getEmail(), user.getFirstName(), String.valueOf(parkingCode));
                     
                     return String.valueOf(parkingCode);
                 }
@@ -707,39 +873,13 @@ public class ParkingController {
      */
     public ArrayList<ParkingOrder> getParkingHistory(String userName) {
         ArrayList<ParkingOrder> history = new ArrayList<>();
-        String qry = "SELECT pi.*, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE u.UserName = ? ORDER BY pi.Date DESC, pi.Actual_start_time DESC";
+        String qry = "SELECT pi.*, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE u.UserName = ? ORDER BY pi.Date DESC, pi.Actual_start_time DESC, pi.ParkingInfo_ID DESC";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    ParkingOrder order = new ParkingOrder();
-                    order.setOrderID(rs.getInt("ParkingInfo_ID"));
-                    order.setParkingCode(String.valueOf(rs.getInt("Code")));
-                    order.setOrderType(rs.getString("IsOrderedEnum"));
-                    order.setSpotNumber("Spot " + rs.getInt("ParkingSpot_ID"));
-                    
-                    // Convert SQL Date and Time to LocalDateTime
-                    Date date = rs.getDate("Date");
-                    Time startTime = rs.getTime("Actual_start_time");
-                    Time endTime = rs.getTime("Actual_end_time");
-                    Time estimatedEnd = rs.getTime("Estimated_end_time");
-                    
-                    if (date != null && startTime != null) {
-                        order.setEntryTime(LocalDateTime.of(date.toLocalDate(), startTime.toLocalTime()));
-                    }
-                    if (date != null && endTime != null) {
-                        order.setExitTime(LocalDateTime.of(date.toLocalDate(), endTime.toLocalTime()));
-                    }
-                    if (date != null && estimatedEnd != null) {
-                        order.setExpectedExitTime(LocalDateTime.of(date.toLocalDate(), estimatedEnd.toLocalTime()));
-                    }
-                    
-                    order.setLate(rs.getBoolean("IsLate"));
-                    order.setExtended(rs.getBoolean("IsExtended"));
-                    order.setStatus(endTime != null ? "Completed" : "Active");
-                    
-                    history.add(order);
+                    history.add(readHistoryRow(rs));
                 }
             }
         } catch (SQLException e) {
@@ -747,46 +887,212 @@ public class ParkingController {
         }
         return history;
     }
+    
+    /**
+     * Gets one page of a user's parking history, newest first.
+     * Pages are cut by keyset (Date, Actual_start_time, ParkingInfo_ID) rather than OFFSET,
+     * so every page costs the same however deep into the history it is,
+     * and sessions added meanwhile do not shift the pages after the cursor.
+     * @param cursor nextCursor of the previous page, or null/empty for the first page
+     * @param limit Maximum number of sessions (1 to MAX_HISTORY_PAGE_SIZE)
+     * @return the page, or a failed page (see HistoryPage.failed) if the history could not be read
+     */
+    public HistoryPage getParkingHistoryPage(String userName, String cursor, int limit) {
+        limit = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+        Object[] after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            after = parseHistoryCursor(cursor);
+            if (after == null) {
+                System.out.println("Invalid parking history cursor: " + cursor);
+                return HistoryPage.failed("Invalid parking history cursor");
+            }
+        }
+        
+        String qry = "SELECT pi.*, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE u.UserName = ?"
+            + (after == null ? "" : " AND (pi.Date < ? OR (pi.Date = ? AND (pi.Actual_start_time < ? OR (pi.Actual_start_time = ? AND pi.ParkingInfo_ID < ?))))")
+            + " ORDER BY pi.Date DESC, pi.Actual_start_time DESC, pi.ParkingInfo_ID DESC LIMIT ?";
+        
+        ArrayList<ParkingOrder> orders = new ArrayList<>();
+        String nextCursor = null;
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
+            int i = 1;
+            stmt.setString(i++, userName);
+            if (after != null) {
+                stmt.setDate(i++, (Date) after[0]);
+                stmt.setDate(i++, (Date) after[0]);
+                stmt.setTime(i++, (Time) after[1]);
+                stmt.setTime(i++, (Time) after[1]);
+                stmt.setInt(i++, (Integer) after[2]);
+            }
+            stmt.setInt(i, limit + 1); // One more row tells whether another page follows
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                String lastKey = null;
+                while (rs.next()) {
+                    if (orders.size() == limit) {
+                        nextCursor = lastKey;
+                        break;
+                    }
+                    orders.add(readHistoryRow(rs));
+                    lastKey = rs.getDate("Date") + "|" + rs.getTime("Actual_start_time") + "|" + rs.getInt("ParkingInfo_ID");
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting parking history page: " + e.getMessage());
+            return HistoryPage.failed("Could not load the parking history, please try again");
+        }
+        return new HistoryPage(orders, nextCursor);
+    }
+    
+    /**
+     * Reads a user's whole parking history page by page, handing each page to the sink
+     * as soon as it is read; no connection is held while the sink sends it.
+     * If a page cannot be read the sink gets a failed page instead, which ends the stream.
+     * @param sink Receives the pages in order; returns false to stop early
+     */
+    public void streamParkingHistory(String userName, int pageSize, Predicate<HistoryPage> sink) {
+        String cursor = null;
+        HistoryPage page;
+        do {
+            page = getParkingHistoryPage(userName, cursor, pageSize);
+            if (!sink.test(page)) {
+                return;
+            }
+            cursor = page.getNextCursor();
+        } while (!page.isLast());
+    }
+    
+    /**
+     * @return {Date, Time, Integer} from a cursor made by getParkingHistoryPage, or null if malformed
+     */
+    private static Object[] parseHistoryCursor(String cursor) {
+        String[] parts = cursor.split("\\|");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return new Object[] { Date.valueOf(parts[0]), Time.valueOf(parts[1]), Integer.valueOf(parts[2]) };
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private ParkingOrder readHistoryRow(ResultSet rs) throws SQLException {
+        ParkingOrder order = new ParkingOrder();
+        order.setOrderID(rs.getInt("ParkingInfo_ID"));
+        order.setParkingCode(String.valueOf(rs.getInt("Code")));
+        order.setOrderType(rs.getString("IsOrderedEnum"));
+        order.setSpotNumber("Spot " + rs.getInt("ParkingSpot_ID"));
+        
+        // Convert SQL Date and Time to LocalDateTime
+        Date date = rs.getDate("Date");
+        Time startTime = rs.getTime("Actual_start_time");
+        Time endTime = rs.getTime("Actual_end_time");
+        Time estimatedEnd = rs.getTime("Estimated_end_time");
+        
+        if (date != null && startTime != null) {
+            order.setEntryTime(LocalDateTime.of(date.toLocalDate(), startTime.toLocalTime()));
+        }
+        if (date != null && endTime != null) {
+            order.setExitTime(LocalDateTime.of(date.toLocalDate(), endTime.toLocalTime()));
+        }
+        if (date != null && estimatedEnd != null) {
+            order.setExpectedExitTime(LocalDateTime.of(date.toLocalDate(), estimatedEnd.toLocalTime()));
+        }
+        
+        order.setLate(rs.getBoolean("IsLate"));
+        order.setExtended(rs.getBoolean("IsExtended"));
+        order.setStatus(endTime != null ? "Completed" : "Active");
+        return order;
+    }
 
     /**
      * Gets all active parking sessions (for attendant view)
      */
     public ArrayList<ParkingOrder> getActiveParkings() {
+        if (activeParkingLog.isLoaded()) {
+            return activeParkingLog.getActiveParkings();
+        }
+        try {
+            return queryActiveParkings();
+        } catch (SQLException e) {
+            System.out.println("Error getting active parkings: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Gets the active sessions inserted, updated or removed since a client's version
+     * @param sinceVersion Version from the client's last response or update, -1 for everything
+     */
+    public ActiveParkingChanges getActiveParkingChanges(long sinceVersion) {
+        if (activeParkingLog.isLoaded()) {
+            return activeParkingLog.changesSince(sinceVersion);
+        }
+        // No log: always a snapshot, and version 0 tells the client not to expect deltas
+        ActiveParkingChanges snapshot = new ActiveParkingChanges(0, true);
+        snapshot.setInserted(getActiveParkings());
+        return snapshot;
+    }
+
+    private ArrayList<ParkingOrder> queryActiveParkings() throws SQLException {
         ArrayList<ParkingOrder> activeParkings = new ArrayList<>();
         String qry = "SELECT pi.*, u.Name, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE pi.Actual_end_time IS NULL ORDER BY pi.Actual_start_time";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    ParkingOrder order = new ParkingOrder();
-                    order.setOrderID(rs.getInt("ParkingInfo_ID"));
-                    order.setParkingCode(String.valueOf(rs.getInt("Code")));
-                    order.setOrderType(rs.getString("IsOrderedEnum"));
-                    order.setSubscriberName(rs.getString("Name"));
-                    order.setSpotNumber("Spot " + rs.getInt("ParkingSpot_ID"));
-                    
-                    // Convert SQL Date and Time to LocalDateTime
-                    Date date = rs.getDate("Date");
-                    Time startTime = rs.getTime("Actual_start_time");
-                    Time estimatedEnd = rs.getTime("Estimated_end_time");
-                    
-                    if (date != null && startTime != null) {
-                        order.setEntryTime(LocalDateTime.of(date.toLocalDate(), startTime.toLocalTime()));
-                    }
-                    if (date != null && estimatedEnd != null) {
-                        order.setExpectedExitTime(LocalDateTime.of(date.toLocalDate(), estimatedEnd.toLocalTime()));
-                    }
-                    
-                    order.setStatus("Active");
-                    activeParkings.add(order);
+                    activeParkings.add(readActiveParking(rs));
                 }
             }
-        } catch (SQLException e) {
-            System.out.println("Error getting active parkings: " + e.getMessage());
         }
         return activeParkings;
     }
 
+    /**
+     * Gets one active parking session by its parking code
+     * @return the session, or null if there is no open session with that code
+     */
+    public ParkingOrder getActiveParking(int parkingCode) {
+        String qry = "SELECT pi.*, u.Name, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE pi.Code = ? AND pi.Actual_end_time IS NULL";
+        
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
+            stmt.setInt(1, parkingCode);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return readActiveParking(rs);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting active parking: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private ParkingOrder readActiveParking(ResultSet rs) throws SQLException {
+        ParkingOrder order = new ParkingOrder();
+        order.setOrderID(rs.getInt("ParkingInfo_ID"));
+        order.setParkingCode(String.valueOf(rs.getInt("Code")));
+        order.setOrderType(rs.getString("IsOrderedEnum"));
+        order.setSubscriberName(rs.getString("Name"));
+        order.setSpotNumber("Spot " + rs.getInt("ParkingSpot_ID"));
+        
+        // Convert SQL Date and Time to LocalDateTime
+        Date date = rs.getDate("Date");
+        Time startTime = rs.getTime("Actual_start_time");
+        Time estimatedEnd = rs.getTime("Estimated_end_time");
+        
+        if (date != null && startTime != null) {
+            order.setEntryTime(LocalDateTime.of(date.toLocalDate(), startTime.toLocalTime()));
+        }
+        if (date != null && estimatedEnd != null) {
+            order.setExpectedExitTime(LocalDateTime.of(date.toLocalDate(), estimatedEnd.toLocalTime()));
+        }
+        
+        order.setStatus("Active");
+        return order;
+    }
+
     /**
      * Updates subscriber information
      */
@@ -803,13 +1109,21 @@ public class ParkingController {
         
         String qry = "UPDATE users SET Phone = ?, Email = ? WHERE UserName = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, phone);
             stmt.setString(2, email);
             stmt.setString(3, userName);
             
             int rowsUpdated = stmt.executeUpdate();
             if (rowsUpdated > 0) {
+                userCache.invalidate(userName);
+                // Keep a logged-in user's session profile in step with the row
+                if (sessions.get(userName) != null) {
+                    ParkingSubscriber profile = findUser(userName);
+                    if (profile != null) {
+                        sessions.updateProfile(profile);
+                    }
+                }
                 return "Subscriber information updated successfully";
             }
         } catch (SQLException e) {
@@ -823,16 +1137,18 @@ public class ParkingController {
      */
     public String cancelReservation(int reservationCode) {
         // 🔧 FIXED: Get user info before cancelling for email notification
-        String getUserQry = "SELECT u.Email, u.Name FROM Reservations r JOIN users u ON r.User_ID = u.User_ID WHERE r.Reservation_code = ?";
+        String getUserQry = "SELECT u.Email, u.Name, r.Date_Of_Placing_Order FROM Reservations r JOIN users u ON r.User_ID = u.User_ID WHERE r.Reservation_code = ?";
         String userEmail = null;
         String userName = null;
+        Date placedOn = null;
         
-        try (PreparedStatement stmt = conn.prepareStatement(getUserQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(getUserQry)) {
             stmt.setInt(1, reservationCode);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     userEmail = rs.getString("Email");
                     userName = rs.getString("Name");
+                    placedOn = rs.getDate("Date_Of_Placing_Order");
                 }
             }
         } catch (SQLException e) {
@@ -841,11 +1157,15 @@ public class ParkingController {
         
         String qry = "UPDATE Reservations SET statusEnum = 'cancelled' WHERE Reservation_code = ? AND statusEnum IN ('preorder', 'active')";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setInt(1, reservationCode);
             int rowsUpdated = stmt.executeUpdate();
             
             if (rowsUpdated > 0) {
+                reservations().remove(reservationCode);
+                cancelLateTimer(reservationCode);
+                reportAggregates.reservationCancelled(placedOn != null ? placedOn.toLocalDate() : null);
+                
                 // Also free up the spot if it was assigned
                 freeSpotForReservation(reservationCode);
                 
@@ -876,7 +1196,7 @@ public class ParkingController {
         try {
             // Check if spots already exist
             String checkQry = "SELECT COUNT(*) FROM ParkingSpot";
-            try (PreparedStatement stmt = conn.prepareStatement(checkQry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(checkQry)) {
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next() && rs.getInt(1) == 0) {
                         // Initialize parking spots - AUTO_INCREMENT will handle ParkingSpot_ID
@@ -892,6 +1212,7 @@ public class ParkingController {
                     }
                 }
             }
+            spotOccupancy.loadFromDatabase();
         } catch (SQLException e) {
             System.out.println("Error initializing parking spots: " + e.getMessage());
         }
@@ -899,109 +1220,231 @@ public class ParkingController {
 
     // ========== HELPER METHODS ==========
     
+    /**
+     * Reserves a code no open session holds; startParkingSession activates it or releases it
+     */
     private int generateParkingCode() {
-        Random random = new Random();
-        return 100000 + random.nextInt(900000);
+        return parkingCodes.allocate();
     }
 
-    private int getUserID(String userName) {
-        String qry = "SELECT User_ID FROM users WHERE UserName = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setString(1, userName);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("User_ID");
+    /**
+     * Opens a parking session as one transaction: the ParkingInfo row, the spot's isOccupied flag
+     * and, for a reservation, its move from 'preorder' to 'active' onto the spot actually taken
+     * (another one if its assigned spot was occupied). The reservation UPDATE is conditional on
+     * 'preorder', so a reservation auto-cancelled in the meantime fails the entry.
+     * The spot must be claimed pinned and the code reserved; on failure nothing is written and
+     * both are given back.
+     * @param reservationCode Reservation being activated, or -1 for a walk-in
+     */
+    private void startParkingSession(Connection conn, int parkingCode, int spotID, int userID, LocalDateTime now,
+            LocalDateTime estimatedEnd, boolean ordered, boolean late, int reservationCode) throws SQLException {
+        String insertQry = """
+            INSERT INTO ParkingInfo
+            (ParkingSpot_ID, User_ID, Date, Code, Actual_start_time, Estimated_start_time,
+             Estimated_end_time, IsOrderedEnum, IsLate, IsExtended)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, false)
+            """;
+        String occupyQry = "UPDATE ParkingSpot SET isOccupied = true WHERE ParkingSpot_ID = ?";
+        String activateQry = "UPDATE Reservations SET statusEnum = 'active', assigned_parking_spot_id = ? WHERE Reservation_code = ? AND statusEnum = 'preorder'";
+        String orderType = ordered ? "ordered" : "not ordered";
+
+        boolean ownTransaction = conn.getAutoCommit(); // Otherwise join the caller's
+        int orderID = 0;
+        try (PreparedStatement insertStmt = conn.prepareStatement(insertQry, PreparedStatement.RETURN_GENERATED_KEYS);
+             PreparedStatement occupyStmt = conn.prepareStatement(occupyQry);
+             PreparedStatement activateStmt = conn.prepareStatement(activateQry)) {
+            if (ownTransaction) {
+                conn.setAutoCommit(false);
+            }
+            insertStmt.setInt(1, spotID);
+            insertStmt.setInt(2, userID);
+            insertStmt.setDate(3, Date.valueOf(now.toLocalDate()));
+            insertStmt.setInt(4, parkingCode);
+            insertStmt.setTime(5, Time.valueOf(now.toLocalTime()));
+            insertStmt.setTime(6, Time.valueOf(now.toLocalTime()));
+            insertStmt.setTime(7, Time.valueOf(estimatedEnd.toLocalTime()));
+            insertStmt.setString(8, orderType);
+            insertStmt.setBoolean(9, late);
+            insertStmt.executeUpdate();
+            try (ResultSet generatedKeys = insertStmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    orderID = generatedKeys.getInt(1);
+                }
+            }
+
+            occupyStmt.setInt(1, spotID);
+            occupyStmt.executeUpdate();
+
+            if (reservationCode != -1) {
+                activateStmt.setInt(1, spotID);
+                activateStmt.setInt(2, reservationCode);
+                if (activateStmt.executeUpdate() != 1) {
+                    // Cancelled (or activated by another gate) since it was read: admit nobody on it
+                    throw new SQLException("Reservation " + reservationCode + " is no longer a preorder");
                 }
             }
+
+            if (ownTransaction) {
+                conn.commit();
+            }
         } catch (SQLException e) {
-            System.out.println("Error getting user ID: " + e.getMessage());
+            if (ownTransaction) {
+                conn.rollback();
+            }
+            spots().unpin(spotID);
+            spots().release(spotID);
+            parkingCodes.release(parkingCode);
+            throw e;
+        } finally {
+            if (ownTransaction) {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        spots().unpin(spotID);
+        parkingCodes.activate(parkingCode, spotID, userID, orderType, estimatedEnd.toLocalTime());
+        reportAggregates.parkingStarted(parkingCode, userID, now, ordered, late);
+        sessionChanged(EventType.SESSION_STARTED, parkingCode, spotID,
+            activeOrder(orderID, parkingCode, spotID, userID, orderType, now, estimatedEnd));
+        if (reservationCode != -1) {
+            reservations().move(reservationCode, spotID); // In case it got a substitute spot
+            cancelLateTimer(reservationCode); // The customer arrived
         }
-        return -1;
     }
 
+    private int getUserID(String userName) {
+        SessionRegistry.UserSession session = sessions.get(userName);
+        if (session != null) {
+            return session.getUserID();
+        }
+        ParkingSubscriber user = findUser(userName);
+        return user != null ? user.getSubscriberID() : -1;
+    }
+
+    /**
+     * Suggests a free spot without claiming it (reservations for a later date)
+     */
     private int getAvailableParkingSpotID() {
-        String qry = "SELECT ParkingSpot_ID FROM ParkingSpot WHERE isOccupied = false LIMIT 1";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("ParkingSpot_ID");
+        return spots().peekFree();
+    }
+
+    /**
+     * Frees a spot in the occupancy bitmap; the ParkingSpot row is updated in the background
+     */
+    public void releaseParkingSpot(int spotID) {
+        spots().release(spotID);
+    }
+
+    /**
+     * Returns the occupancy bitmap, loading it from the database on first use
+     */
+    private SpotOccupancy spots() {
+        if (!spotOccupancy.isLoaded()) {
+            synchronized (spotOccupancy) {
+                if (!spotOccupancy.isLoaded()) {
+                    try {
+                        spotOccupancy.loadFromDatabase();
+                    } catch (SQLException e) {
+                        System.out.println("Error loading parking spots: " + e.getMessage());
+                    }
                 }
             }
-        } catch (SQLException e) {
-            System.out.println("Error getting available spot ID: " + e.getMessage());
         }
-        return -1;
+        return spotOccupancy;
     }
 
-    private boolean isParkingSpotAvailable(int spotID) {
-        String qry = "SELECT isOccupied FROM ParkingSpot WHERE ParkingSpot_ID = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setInt(1, spotID);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return !rs.getBoolean("isOccupied");
-                }
+    /**
+     * Records a session change in the active parking log and raises its event.
+     * An exit for the same code cannot overlap a start or extension, since the client only
+     * learns the code from the entry's answer.
+     * @param order The session's new state, built by the caller; null when it ended
+     */
+    private void sessionChanged(EventType type, int parkingCode, int spotId, ParkingOrder order) {
+        String code = String.valueOf(parkingCode);
+        if (type != EventType.SESSION_ENDED && order == null) {
+            return;
+        }
+        // Versions must reach subscribers in order, so the event is raised under the same lock
+        synchronized (activeParkingLog) {
+            long version = order != null ? activeParkingLog.upsert(order) : activeParkingLog.remove(code);
+            ParkingEventListener listener = eventListener;
+            if (listener != null) {
+                ParkingEvent event = ParkingEvent.session(type, code, spotId, order, spotOccupancy.getFreeCount());
+                event.setVersion(version);
+                listener.parkingEvent(event);
             }
-        } catch (SQLException e) {
-            System.out.println("Error checking spot availability: " + e.getMessage());
         }
-        return false;
     }
 
-    private void updateParkingSpotStatus(int spotID, boolean isOccupied) {
-        String qry = "UPDATE ParkingSpot SET isOccupied = ? WHERE ParkingSpot_ID = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setBoolean(1, isOccupied);
-            stmt.setInt(2, spotID);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            System.out.println("Error updating parking spot status: " + e.getMessage());
+    /**
+     * A just-started session as getActiveParking would read it back (times to the second, like the TIME columns)
+     */
+    private ParkingOrder activeOrder(int orderID, int parkingCode, int spotID, int userID, String orderType,
+            LocalDateTime entry, LocalDateTime estimatedEnd) {
+        ParkingSubscriber user = findUser(userID);
+        ParkingOrder order = new ParkingOrder(orderID, String.valueOf(parkingCode),
+            user != null ? user.getFirstName() : null, orderType, entry.truncatedTo(ChronoUnit.SECONDS),
+            LocalDateTime.of(entry.toLocalDate(), estimatedEnd.toLocalTime().truncatedTo(ChronoUnit.SECONDS)));
+        order.setSpotNumber("Spot " + spotID);
+        return order;
+    }
+
+    /**
+     * An open session with a new estimated end. Copied rather than changed in place, since the
+     * logged order may be in a snapshot being sent to a client.
+     * @return the session, or null if it is not open
+     */
+    private ParkingOrder extendedOrder(int parkingCode, LocalTime newEstimatedEnd) {
+        ParkingOrder current = activeParkingLog.get(String.valueOf(parkingCode));
+        if (current == null) {
+            return getActiveParking(parkingCode); // No log to copy from: read the row back
         }
+        ParkingOrder order = new ParkingOrder(current.getOrderID(), current.getParkingCode(),
+            current.getSubscriberName(), current.getOrderType(), current.getEntryTime(),
+            LocalDateTime.of(current.getEntryTime().toLocalDate(), newEstimatedEnd.truncatedTo(ChronoUnit.SECONDS)));
+        order.setSpotNumber(current.getSpotNumber());
+        return order;
     }
 
-    private void updateReservationStatus(int reservationCode, String status) {
-        String qry = "UPDATE Reservations SET statusEnum = ? WHERE Reservation_code = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setString(1, status);
-            stmt.setInt(2, reservationCode);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            System.out.println("Error updating reservation status: " + e.getMessage());
+    private void cancelLateTimer(int reservationCode) {
+        if (autoCancellationService != null) {
+            autoCancellationService.cancelTimer(reservationCode);
         }
     }
 
     /**
-     * Send late exit notification - 🔧 FIXED: Now uses EmailService
+     * Returns the reservation index, loading it from the database on first use
      */
-    private void sendLateExitNotification(int userID) {
-        String qry = "SELECT Email, Phone, Name FROM users WHERE User_ID = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setInt(1, userID);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String email = rs.getString("Email");
-                    String phone = rs.getString("Phone");
-                    String name = rs.getString("Name");
-                    
-                    // 🆕 SEND EMAIL NOTIFICATION
-                    EmailService.sendLatePickupNotification(email, name);
+    public ReservationIndex reservations() {
+        if (!reservationIndex.isLoaded()) {
+            synchronized (reservationIndex) {
+                if (!reservationIndex.isLoaded()) {
+                    try {
+                        reservationIndex.loadFromDatabase();
+                    } catch (SQLException e) {
+                        System.out.println("Error loading reservation index: " + e.getMessage());
+                    }
                 }
             }
-        } catch (SQLException e) {
-            System.out.println("Error sending late notification: " + e.getMessage());
+        }
+        return reservationIndex;
+    }
+
+    /**
+     * Send late exit notification - 🔧 FIXED: Now uses EmailService
+     */
+    private void sendLateExitNotification(int userID) {
+        ParkingSubscriber user = findUser(userID);
+        if (user != null) {
+            // 🆕 SEND EMAIL NOTIFICATION
+            EmailService.sendLatePickupNotification(user.getEmail(), user.getFirstName());
         }
     }
     
     private boolean isUsernameAvailable(String userName) {
         String checkQry = "SELECT COUNT(*) FROM users WHERE UserName = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(checkQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(checkQry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -1015,40 +1458,16 @@ public class ParkingController {
         return false;
     }
     
-    private void finishReservationBySpotAndUser(int spotID, int userID) {
-        String query = """
-            UPDATE Reservations 
-            SET statusEnum = 'finished'
-            WHERE User_ID = ? AND assigned_parking_spot_id = ? AND statusEnum = 'active'
-            """;
-        
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setInt(1, userID);
-            stmt.setInt(2, spotID);
-            int updated = stmt.executeUpdate();
-            
-            if (updated > 0) {
-                System.out.println("Reservation finished for user " + userID + " at spot " + spotID);
-            }
-        } catch (SQLException e) {
-            System.out.println("Error finishing reservation: " + e.getMessage());
-        }
-    }
-    
     private void freeSpotForReservation(int reservationCode) {
-        String query = """
-            UPDATE ParkingSpot ps
-            SET ps.isOccupied = FALSE
-            WHERE ps.ParkingSpot_ID = (
-                SELECT r.assigned_parking_spot_id 
-                FROM Reservations r 
-                WHERE r.Reservation_code = ?
-            )
-            """;
+        String query = "SELECT assigned_parking_spot_id FROM Reservations WHERE Reservation_code = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setInt(1, reservationCode);
-            stmt.executeUpdate();
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getObject("assigned_parking_spot_id") != null) {
+                    releaseParkingSpot(rs.getInt("assigned_parking_spot_id"));
+                }
+            }
         } catch (SQLException e) {
             System.out.println("Error freeing spot for reservation: " + e.getMessage());
         }
@@ -1060,15 +1479,15 @@ public class ParkingController {
         // Check if reservation exists and is in preorder status
         String checkQry = """
             SELECT r.*, u.UserName, r.assigned_parking_spot_id,
-                   TIMESTAMPDIFF(MINUTE, 
-                       CONCAT(r.reservation_Date, ' ', r.reservation_start_time), 
+                   TIMESTAMPDIFF(MINUTE,
+                       CONCAT(r.reservation_Date, ' ', r.reservation_start_time),
                        NOW()) as minutes_since_start
-            FROM Reservations r 
-            JOIN users u ON r.User_ID = u.User_ID 
+            FROM Reservations r
+            JOIN users u ON r.User_ID = u.User_ID
             WHERE r.Reservation_code = ? AND r.statusEnum = 'preorder'
             """;
         
-        try (PreparedStatement stmt = conn.prepareStatement(checkQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(checkQry)) {
             stmt.setInt(1, reservationCode);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -1083,44 +1502,30 @@ public class ParkingController {
                         return "Reservation cancelled due to late arrival (over 15 minutes). Please make a new reservation.";
                     }
                     
+                    // Claim the assigned spot, or another one if it is taken (the reservation moves with it)
+                    if (!spots().claimPinned(spotId)) {
+                        spotId = spots().allocatePinned();
+                        if (spotId == -1) {
+                            return "No available parking spots found";
+                        }
+                    }
+                    
                     // Generate parking code and create parking session
                     int parkingCode = generateParkingCode();
                     LocalDateTime now = LocalDateTime.now();
                     LocalDateTime estimatedEnd = now.plusHours(4); // Default 4 hours
                     
-                    // Create parking info record
-                    String insertQry = """
-                        INSERT INTO ParkingInfo 
-                        (ParkingSpot_ID, User_ID, Date, Code, Actual_start_time, Estimated_start_time, 
-                         Estimated_end_time, IsOrderedEnum, IsLate, IsExtended) 
-                        VALUES (?, ?, ?, ?, ?, ?, ?, 'ordered', ?, false)
-                        """;
+                    // Session, spot and reservation (preorder → active) in one transaction; late if any delay
+                    startParkingSession(conn, parkingCode, spotId, rs.getInt("User_ID"), now, estimatedEnd,
+                        true, minutesSinceStart > 0, reservationCode);
                     
-                    try (PreparedStatement insertStmt = conn.prepareStatement(insertQry)) {
-                        insertStmt.setInt(1, spotId);
-                        insertStmt.setInt(2, rs.getInt("User_ID"));
-                        insertStmt.setDate(3, Date.valueOf(now.toLocalDate()));
-                        insertStmt.setInt(4, parkingCode);
-                        insertStmt.setTime(5, Time.valueOf(now.toLocalTime()));
-                        insertStmt.setTime(6, Time.valueOf(now.toLocalTime()));
-                        insertStmt.setTime(7, Time.valueOf(estimatedEnd.toLocalTime()));
-                        insertStmt.setBoolean(8, minutesSinceStart > 0); // Mark as late if any delay
-                        insertStmt.executeUpdate();
-                        
-                        // Update reservation status to ACTIVE
-                        updateReservationStatus(reservationCode, "active");
-                        
-                        // Mark parking spot as occupied
-                        updateParkingSpotStatus(spotId, true);
-                        
-                        String lateMessage = minutesSinceStart > 0 ? 
-                            " (Note: " + minutesSinceStart + " minutes late)" : "";
-                        
-                        System.out.println("Reservation " + reservationCode + " activated (preorder → active)" + lateMessage);
-                        
-                        return "Reservation activated! Parking code: " + parkingCode + 
-                               ". Spot: " + spotId + lateMessage;
-                    }
+                    String lateMessage = minutesSinceStart > 0 ? 
+                        " (Note: " + minutesSinceStart + " minutes late)" : "";
+                    
+                    System.out.println("Reservation " + reservationCode + " activated (preorder → active)" + lateMessage);
+                    
+                    return "Reservation activated! Parking code: " + parkingCode + 
+                           ". Spot: " + spotId + lateMessage;
                 }
             }
         } catch (SQLException e) {
@@ -1144,9 +1549,9 @@ public class ParkingController {
     private String cancelReservationInternal(int reservationCode, String reason) {
         // Get reservation info first for email notification
         String getUserQry = """
-            SELECT u.Email, u.Name, r.statusEnum, r.assigned_parking_spot_id
-            FROM Reservations r 
-            JOIN users u ON r.User_ID = u.User_ID 
+            SELECT u.Email, u.Name, r.statusEnum, r.assigned_parking_spot_id, r.Date_Of_Placing_Order
+            FROM Reservations r
+            JOIN users u ON r.User_ID = u.User_ID
             WHERE r.Reservation_code = ?
             """;
         
@@ -1154,8 +1559,9 @@ public class ParkingController {
         String userName = null;
         String currentStatus = null;
         Integer spotId = null;
+        Date placedOn = null;
         
-        try (PreparedStatement stmt = conn.prepareStatement(getUserQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(getUserQry)) {
             stmt.setInt(1, reservationCode);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -1163,6 +1569,7 @@ public class ParkingController {
                     userName = rs.getString("Name");
                     currentStatus = rs.getString("statusEnum");
                     spotId = rs.getObject("assigned_parking_spot_id", Integer.class);
+                    placedOn = rs.getDate("Date_Of_Placing_Order");
                 }
             }
         } catch (SQLException e) {
@@ -1172,14 +1579,18 @@ public class ParkingController {
         // Update reservation status to cancelled
         String qry = "UPDATE Reservations SET statusEnum = 'cancelled' WHERE Reservation_code = ? AND statusEnum IN ('preorder', 'active')";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setInt(1, reservationCode);
             int rowsUpdated = stmt.executeUpdate();
             
             if (rowsUpdated > 0) {
+                reservations().remove(reservationCode);
+                cancelLateTimer(reservationCode);
+                reportAggregates.reservationCancelled(placedOn != null ? placedOn.toLocalDate() : null);
+                
                 // Free up the spot if it was assigned
                 if (spotId != null) {
-                    updateParkingSpotStatus(spotId, false);
+                    releaseParkingSpot(spotId);
                 }
                 
                 // Send email notification
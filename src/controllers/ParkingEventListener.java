@@ -0,0 +1,13 @@
+package controllers;
+
+import entities.ParkingEvent;
+
+/**
+ * Receives the occupancy and session changes made by ParkingController.
+ * Called on the thread that made the change (a gate request or the spot allocator),
+ * so implementations should hand the event off rather than do I/O in place.
+ */
+public interface ParkingEventListener {
+
+    void parkingEvent(ParkingEvent event);
+}
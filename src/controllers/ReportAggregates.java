@@ -0,0 +1,352 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import entities.ParkingReport;
+
+/**
+ * ReportAggregates - rolling per-day totals behind the manager's 30-day reports.
+ * The ParkingInfo rows of the window are read once at startup; after that ParkingController reports
+ * every entry, exit, extension and cancellation here, so a report is a merge of at most 31 day
+ * buckets plus the sessions still open, however large ParkingInfo grows.
+ *
+ * Each day bucket (keyed by ParkingInfo.Date, the entry date) holds the counters the reports need,
+ * the duration sum/min/max of finished sessions and the set of users who parked that day.
+ * Sessions still open are kept apart, because their duration runs until "now" at report time.
+ * One instance is shared by all controllers on the same DataSource.
+ */
+public class ReportAggregates {
+
+    public static final int WINDOW_DAYS = 30; // Same window as DATE_SUB(CURDATE(), INTERVAL 30 DAY)
+
+    private static final Map<DataSource, ReportAggregates> AGGREGATES = new IdentityHashMap<>();
+
+    private final DataSource dataSource;
+    private final TreeMap<LocalDate, DayBucket> days = new TreeMap<>();
+    private final Map<Integer, OpenSession> openSessions = new HashMap<>(); // By parking code
+    private volatile boolean loaded = false;
+
+    public ReportAggregates(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns the shared aggregates for a DataSource, creating them (not yet loaded) on first use
+     */
+    public static synchronized ReportAggregates forDataSource(DataSource dataSource) {
+        return AGGREGATES.computeIfAbsent(dataSource, ReportAggregates::new);
+    }
+
+    // Loading *********************************************************
+
+    /**
+     * Rebuilds the buckets from the last WINDOW_DAYS days of ParkingInfo and Reservations.
+     * Call before the server accepts clients; events reported before loading are ignored,
+     * since the rows they wrote are read here.
+     */
+    public void loadFromDatabase() throws SQLException {
+        LocalDate today = LocalDate.now();
+        LocalDate firstDay = today.minusDays(WINDOW_DAYS);
+        TreeMap<LocalDate, DayBucket> loadedDays = new TreeMap<>();
+        Map<Integer, OpenSession> loadedOpen = new HashMap<>();
+
+        String parkingQry = """
+            SELECT Code, User_ID, Date, Actual_start_time, Actual_end_time, IsLate, IsExtended, IsOrderedEnum
+            FROM ParkingInfo
+            WHERE Date >= ?
+            """;
+        String cancelledQry = """
+            SELECT DATE(Date_Of_Placing_Order) AS placed_on, COUNT(*) AS cancelled
+            FROM Reservations
+            WHERE statusEnum = 'cancelled' AND Date_Of_Placing_Order >= ?
+            GROUP BY DATE(Date_Of_Placing_Order)
+            """;
+
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(parkingQry)) {
+                stmt.setDate(1, Date.valueOf(firstDay));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        LocalDate date = rs.getDate("Date").toLocalDate();
+                        DayBucket day = loadedDays.computeIfAbsent(date, d -> new DayBucket());
+                        boolean late = rs.getBoolean("IsLate");
+                        boolean extended = rs.getBoolean("IsExtended");
+                        day.countEntry(rs.getInt("User_ID"), "ordered".equals(rs.getString("IsOrderedEnum")), late, extended);
+
+                        Time startTime = rs.getTime("Actual_start_time");
+                        Time endTime = rs.getTime("Actual_end_time");
+                        if (startTime == null) {
+                            continue;
+                        }
+                        LocalDateTime start = LocalDateTime.of(date, startTime.toLocalTime());
+                        if (endTime != null) {
+                            day.countFinished(minutesBetween(start, LocalDateTime.of(date, endTime.toLocalTime())));
+                        } else {
+                            loadedOpen.put(rs.getInt("Code"), new OpenSession(date, start, late, extended));
+                        }
+                    }
+                }
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(cancelledQry)) {
+                stmt.setDate(1, Date.valueOf(firstDay));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        LocalDate placedOn = rs.getDate("placed_on").toLocalDate();
+                        loadedDays.computeIfAbsent(placedOn, d -> new DayBucket()).cancelledReservations += rs.getInt("cancelled");
+                    }
+                }
+            }
+        }
+
+        synchronized (this) {
+            days.clear();
+            days.putAll(loadedDays);
+            openSessions.clear();
+            openSessions.putAll(loadedOpen);
+            loaded = true;
+        }
+        System.out.println("Report aggregates loaded: " + loadedDays.size() + " days, " + loadedOpen.size() + " open sessions");
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Events **********************************************************
+
+    /**
+     * A car entered (a ParkingInfo row was inserted)
+     */
+    public synchronized void parkingStarted(int parkingCode, int userId, LocalDateTime start, boolean ordered, boolean late) {
+        if (!loaded) {
+            return;
+        }
+        LocalDate date = start.toLocalDate();
+        day(date).countEntry(userId, ordered, late, false);
+        openSessions.put(parkingCode, new OpenSession(date, start, late, false));
+    }
+
+    /**
+     * A car left (Actual_end_time and IsLate were written)
+     */
+    public synchronized void parkingEnded(int parkingCode, LocalDateTime end, boolean late) {
+        OpenSession session = openSessions.remove(parkingCode);
+        if (!loaded || session == null) {
+            return; // Entered before the window, nothing of it is counted
+        }
+        DayBucket day = day(session.date);
+        if (late != session.late) {
+            day.lateExits += late ? 1 : -1; // Exit overwrites IsLate
+        }
+        day.countFinished(minutesBetween(session.start, end));
+    }
+
+    /**
+     * A session was extended (IsExtended set; counted once per session like SUM(IsExtended))
+     */
+    public synchronized void parkingExtended(int parkingCode) {
+        OpenSession session = openSessions.get(parkingCode);
+        if (!loaded || session == null || session.extended) {
+            return;
+        }
+        session.extended = true;
+        day(session.date).extensions++;
+    }
+
+    /**
+     * A reservation moved to 'cancelled'
+     * @param placedOn Date_Of_Placing_Order of the reservation (the report groups cancellations by it)
+     */
+    public synchronized void reservationCancelled(LocalDate placedOn) {
+        if (!loaded || placedOn == null) {
+            return;
+        }
+        day(placedOn).cancelledReservations++;
+    }
+
+    private DayBucket day(LocalDate date) {
+        return days.computeIfAbsent(date, d -> new DayBucket());
+    }
+
+    // Reports *********************************************************
+
+    /**
+     * Same figures as the PARKING_TIME query over the last WINDOW_DAYS days
+     */
+    public synchronized ParkingReport parkingTimeReport(LocalDate today) {
+        ParkingReport report = new ParkingReport("PARKING_TIME", today);
+        Totals totals = merge(today);
+        report.setTotalParkings(totals.parkings);
+        report.setAverageParkingTime(totals.averageMinutes());
+        report.setLateExits(totals.lateExits);
+        report.setExtensions(totals.extensions);
+        report.setMinParkingTime(totals.durations > 0 ? totals.minMinutes : 0);
+        report.setMaxParkingTime(totals.durations > 0 ? totals.maxMinutes : 0);
+        return report;
+    }
+
+    /**
+     * Same figures as the SUBSCRIBER_STATUS queries over the last WINDOW_DAYS days
+     */
+    public synchronized ParkingReport subscriberStatusReport(LocalDate today) {
+        ParkingReport report = new ParkingReport("SUBSCRIBER_STATUS", today);
+        Totals totals = merge(today);
+        report.setActiveSubscribers(totals.users.size());
+        report.setTotalOrders(totals.parkings);
+        report.setReservations(totals.ordered);
+        report.setImmediateEntries(totals.immediate);
+        report.setAverageSessionDuration(totals.averageMinutes());
+        report.setCancelledReservations(totals.cancelledReservations);
+        return report;
+    }
+
+    /**
+     * Adds up the buckets of the window and the durations of the sessions still open
+     */
+    private Totals merge(LocalDate today) {
+        LocalDate firstDay = today.minusDays(WINDOW_DAYS);
+        prune(firstDay);
+
+        Totals totals = new Totals();
+        for (DayBucket day : days.tailMap(firstDay, true).values()) {
+            totals.parkings += day.parkings;
+            totals.ordered += day.ordered;
+            totals.immediate += day.immediate;
+            totals.lateExits += day.lateExits;
+            totals.extensions += day.extensions;
+            totals.cancelledReservations += day.cancelledReservations;
+            totals.users.addAll(day.users);
+            if (day.finished > 0) {
+                totals.addDurations(day.finished, day.finishedMinutes, day.minMinutes, day.maxMinutes);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (OpenSession session : openSessions.values()) {
+            if (!session.date.isBefore(firstDay)) {
+                long minutes = minutesBetween(session.start, now);
+                totals.addDurations(1, minutes, minutes, minutes);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Drops days that fell out of the window, and sessions that entered before it
+     */
+    private void prune(LocalDate firstDay) {
+        days.headMap(firstDay, false).clear();
+        Iterator<OpenSession> sessions = openSessions.values().iterator();
+        while (sessions.hasNext()) {
+            if (sessions.next().date.isBefore(firstDay)) {
+                sessions.remove();
+            }
+        }
+    }
+
+    /**
+     * Whole minutes from start to end. Times are stored without a date, so an end before
+     * the start means the session ran past midnight.
+     */
+    private static long minutesBetween(LocalDateTime start, LocalDateTime end) {
+        long minutes = Duration.between(start, end).toMinutes();
+        return minutes < 0 ? minutes + 24 * 60 : minutes;
+    }
+
+    /**
+     * Counters for the sessions that entered on one day
+     */
+    private static class DayBucket {
+        int parkings;
+        int ordered;
+        int immediate;
+        int lateExits;
+        int extensions;
+        int cancelledReservations; // Reservations placed this day and cancelled since
+        int finished;
+        long finishedMinutes;
+        long minMinutes = Long.MAX_VALUE;
+        long maxMinutes = Long.MIN_VALUE;
+        final Set<Integer> users = new HashSet<>();
+
+        void countEntry(int userId, boolean isOrdered, boolean late, boolean extended) {
+            parkings++;
+            if (isOrdered) {
+                ordered++;
+            } else {
+                immediate++;
+            }
+            if (late) {
+                lateExits++;
+            }
+            if (extended) {
+                extensions++;
+            }
+            users.add(userId);
+        }
+
+        void countFinished(long minutes) {
+            finished++;
+            finishedMinutes += minutes;
+            minMinutes = Math.min(minMinutes, minutes);
+            maxMinutes = Math.max(maxMinutes, minutes);
+        }
+    }
+
+    private static class OpenSession {
+        final LocalDate date;
+        final LocalDateTime start;
+        final boolean late;
+        boolean extended;
+
+        OpenSession(LocalDate date, LocalDateTime start, boolean late, boolean extended) {
+            this.date = date;
+            this.start = start;
+            this.late = late;
+            this.extended = extended;
+        }
+    }
+
+    private static class Totals {
+        int parkings;
+        int ordered;
+        int immediate;
+        int lateExits;
+        int extensions;
+        int cancelledReservations;
+        final Set<Integer> users = new HashSet<>();
+        long durations;
+        long durationMinutes;
+        int minMinutes = Integer.MAX_VALUE;
+        int maxMinutes = Integer.MIN_VALUE;
+
+        void addDurations(long count, long sumMinutes, long min, long max) {
+            durations += count;
+            durationMinutes += sumMinutes;
+            minMinutes = (int) Math.min(minMinutes, min);
+            maxMinutes = (int) Math.max(maxMinutes, max);
+        }
+
+        double averageMinutes() {
+            return durations == 0 ? 0 : (double) durationMinutes / durations;
+        }
+    }
+}
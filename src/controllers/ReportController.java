@@ -1,7 +1,6 @@
 package controllers;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -10,23 +9,46 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 
+import javax.sql.DataSource;
+
 import entities.ParkingReport;
+import services.ConnectionPool;
 
 /**
  * ReportController handles report generation for the ParkB parking management system.
  * Generates parking time reports and subscriber status reports as specified in the requirements.
  */
 public class ReportController {
-    protected Connection conn;
+    protected DataSource dataSource;
     public int successFlag;
+    
+    // Rolling per-day totals kept up to date by ParkingController
+    private ReportAggregates reportAggregates;
 
     public ReportController(String dbname, String pass) {
         String connectPath = "jdbc:mysql://localhost/" + dbname + "?serverTimezone=IST";
         connectToDB(connectPath, pass);
+        reportAggregates = ReportAggregates.forDataSource(dataSource);
     }
 
-    public Connection getConnection() {
-        return conn;
+    /**
+     * Uses a pool that is already set up (e.g. an embedded database in the benchmarks)
+     */
+    public ReportController(DataSource dataSource) {
+        this.dataSource = dataSource;
+        successFlag = 1;
+        reportAggregates = ReportAggregates.forDataSource(dataSource);
+    }
+
+    /**
+     * Borrows a pooled connection; the caller must close it to return it to the pool
+     */
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
     }
 
     /**
@@ -40,8 +62,12 @@ public class ReportController {
             System.out.println("Driver definition failed");
         }
 
-        try {
-            conn = DriverManager.getConnection(path, "root", pass);
+        // All controllers on the same database share one pool
+        dataSource = ConnectionPool.forDatabase(path, "root", pass);
+        try (Connection conn = dataSource.getConnection()) {
+            if (!conn.isValid(5)) {
+                throw new SQLException("Connection is not valid");
+            }
             System.out.println("SQL connection succeed");
             successFlag = 1;
         } catch (SQLException ex) {
@@ -119,23 +145,28 @@ public class ReportController {
 
     /**
      * Generates a parking time report showing usage patterns, delays, and extensions
+     * Served from the report aggregates; queries ParkingInfo only if they could not be loaded
      */
     private ParkingReport generateParkingTimeReport() {
+        if (reportAggregates.isLoaded()) {
+            return reportAggregates.parkingTimeReport(LocalDate.now());
+        }
+        
         ParkingReport report = new ParkingReport("PARKING_TIME", LocalDate.now());
         
         String qry = """
-            SELECT 
+            SELECT
                 COUNT(*) as total_parkings,
                 AVG(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, NOW()))) as avg_duration,
                 SUM(IsLate) as late_exits,
                 SUM(IsExtended) as extensions,
                 MIN(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, NOW()))) as min_duration,
                 MAX(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, NOW()))) as max_duration
-            FROM ParkingInfo 
+            FROM ParkingInfo
             WHERE Date >= DATE_SUB(CURDATE(), INTERVAL 30 DAY)
             """;
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     report.setTotalParkings(rs.getInt("total_parkings"));
@@ -155,8 +186,13 @@ public class ReportController {
 
     /**
      * Generates a subscriber status report showing subscriber activity and usage patterns
+     * Served from the report aggregates; queries the database only if they could not be loaded
      */
     private ParkingReport generateSubscriberStatusReport() {
+        if (reportAggregates.isLoaded()) {
+            return reportAggregates.subscriberStatusReport(LocalDate.now());
+        }
+        
         ParkingReport report = new ParkingReport("SUBSCRIBER_STATUS", LocalDate.now());
         
         // Get active subscribers count
@@ -164,12 +200,12 @@ public class ReportController {
         
         // Get total orders, reservations, and immediate entries
         String ordersQry = """
-            SELECT 
+            SELECT
                 COUNT(*) as total_orders,
                 SUM(CASE WHEN IsOrderedEnum = 'ordered' THEN 1 ELSE 0 END) as reservations,
                 SUM(CASE WHEN IsOrderedEnum = 'not ordered' THEN 1 ELSE 0 END) as immediate_entries,
                 AVG(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, NOW()))) as avg_session_duration
-            FROM ParkingInfo 
+            FROM ParkingInfo
             WHERE Date >= DATE_SUB(CURDATE(), INTERVAL 30 DAY)
             """;
         
@@ -178,7 +214,7 @@ public class ReportController {
         
         try {
             // Get active subscribers
-            try (PreparedStatement stmt = conn.prepareStatement(activeSubQry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(activeSubQry)) {
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
                         report.setActiveSubscribers(rs.getInt("active_subscribers"));
@@ -187,7 +223,7 @@ public class ReportController {
             }
             
             // Get order statistics
-            try (PreparedStatement stmt = conn.prepareStatement(ordersQry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(ordersQry)) {
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
                         report.setTotalOrders(rs.getInt("total_orders"));
@@ -199,7 +235,7 @@ public class ReportController {
             }
             
             // Get cancelled reservations
-            try (PreparedStatement stmt = conn.prepareStatement(cancelledQry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(cancelledQry)) {
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
                         report.setCancelledReservations(rs.getInt("cancelled_reservations"));
@@ -221,18 +257,18 @@ public class ReportController {
         ParkingReport report = new ParkingReport("PARKING_TIME", reportDate);
         
         String qry = """
-            SELECT 
+            SELECT
                 COUNT(*) as total_parkings,
                 AVG(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, Estimated_end_time))) as avg_duration,
                 SUM(IsLate) as late_exits,
                 SUM(IsExtended) as extensions,
                 MIN(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, Estimated_end_time))) as min_duration,
                 MAX(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, Estimated_end_time))) as max_duration
-            FROM ParkingInfo 
+            FROM ParkingInfo
             WHERE YEAR(Date) = ? AND MONTH(Date) = ?
             """;
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setInt(1, reportDate.getYear());
             stmt.setInt(2, reportDate.getMonthValue());
             
@@ -266,12 +302,12 @@ public class ReportController {
         
         // Get monthly order statistics
         String ordersQry = """
-            SELECT 
+            SELECT
                 COUNT(*) as total_orders,
                 SUM(CASE WHEN IsOrderedEnum = 'ordered' THEN 1 ELSE 0 END) as reservations,
                 SUM(CASE WHEN IsOrderedEnum = 'not ordered' THEN 1 ELSE 0 END) as immediate_entries,
                 AVG(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, Estimated_end_time))) as avg_session_duration
-            FROM ParkingInfo 
+            FROM ParkingInfo
             WHERE YEAR(Date) = ? AND MONTH(Date) = ?
             """;
         
@@ -280,7 +316,7 @@ public class ReportController {
         
         try {
             // Get active subscribers
-            try (PreparedStatement stmt = conn.prepareStatement(activeSubQry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(activeSubQry)) {
                 stmt.setInt(1, reportDate.getYear());
                 stmt.setInt(2, reportDate.getMonthValue());
                 try (ResultSet rs = stmt.executeQuery()) {
@@ -291,7 +327,7 @@ public class ReportController {
             }
             
             // Get order statistics
-            try (PreparedStatement stmt = conn.prepareStatement(ordersQry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(ordersQry)) {
                 stmt.setInt(1, reportDate.getYear());
                 stmt.setInt(2, reportDate.getMonthValue());
                 try (ResultSet rs = stmt.executeQuery()) {
@@ -305,7 +341,7 @@ public class ReportController {
             }
             
             // Get cancelled reservations
-            try (PreparedStatement stmt = conn.prepareStatement(cancelledQry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(cancelledQry)) {
                 stmt.setInt(1, reportDate.getYear());
                 stmt.setInt(2, reportDate.getMonthValue());
                 try (ResultSet rs = stmt.executeQuery()) {
@@ -330,7 +366,7 @@ public class ReportController {
     private void storeMonthlyReports(ArrayList<ParkingReport> reports) {
         String qry = "INSERT INTO Reports (Report_Type, Generated_Date, Report_Data) VALUES (?, NOW(), ?)";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             for (ParkingReport report : reports) {
                 stmt.setString(1, report.getReportType());
                 stmt.setString(2, report.toString()); // Store as JSON or formatted string
@@ -350,7 +386,7 @@ public class ReportController {
         
         String qry = "SELECT * FROM Reports WHERE Report_Type = ? AND DATE(Generated_Date) BETWEEN ? AND ? ORDER BY Generated_Date DESC";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, reportType);
             stmt.setString(2, fromDate.toString());
             stmt.setString(3, toDate.toString());
@@ -379,17 +415,17 @@ public class ReportController {
         ArrayList<String> peakHours = new ArrayList<>();
         
         String qry = """
-            SELECT 
+            SELECT
                 HOUR(Actual_start_time) as entry_hour,
                 COUNT(*) as entry_count
-            FROM ParkingInfo 
+            FROM ParkingInfo
             WHERE Date >= DATE_SUB(CURDATE(), INTERVAL 30 DAY)
             GROUP BY HOUR(Actual_start_time)
             ORDER BY entry_count DESC
             LIMIT 5
             """;
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     int hour = rs.getInt("entry_hour");
@@ -411,18 +447,18 @@ public class ReportController {
         ArrayList<String> dailyStats = new ArrayList<>();
         
         String qry = """
-            SELECT 
+            SELECT
                 Date,
                 COUNT(*) as daily_entries,
                 SUM(IsLate) as daily_late_exits,
                 AVG(TIMESTAMPDIFF(MINUTE, Actual_start_time, COALESCE(Actual_end_time, NOW()))) as avg_daily_duration
-            FROM ParkingInfo 
+            FROM ParkingInfo
             WHERE YEAR(Date) = YEAR(CURDATE()) AND MONTH(Date) = MONTH(CURDATE())
             GROUP BY Date
             ORDER BY Date DESC
             """;
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     String date = rs.getDate("Date").toString();
@@ -0,0 +1,385 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.sql.DataSource;
+
+/**
+ * ReservationIndex - in-memory index of the reservations that still hold a spot
+ * (statusEnum 'preorder' or 'active' with an assigned_parking_spot_id), grouped by spot.
+ *
+ * Each spot keeps its reservations ordered by start time together with the longest reservation
+ * seen on that spot, so every interval that can overlap [start, end) lies in one sub-range of the
+ * ordered map. Availability for a window and the free-spot count of every slot of a day are
+ * answered from memory in a single pass instead of one query per spot or per slot.
+ *
+ * Controllers keep the index in sync when a reservation is created, cancelled or finished.
+ * One index is shared by all controllers on the same DataSource.
+ */
+public class ReservationIndex {
+
+    private static final Map<DataSource, ReservationIndex> INDEXES = new IdentityHashMap<>();
+
+    private final DataSource dataSource;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Interval> byCode = new HashMap<>();
+    private final Map<Integer, SpotSchedule> bySpot = new HashMap<>();
+    private volatile boolean loaded = false;
+
+    /**
+     * @param dataSource Where reservations are loaded from; null for an index filled only through add()
+     */
+    public ReservationIndex(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns the shared index for a DataSource, creating it (not yet loaded) on first use
+     */
+    public static synchronized ReservationIndex forDataSource(DataSource dataSource) {
+        return INDEXES.computeIfAbsent(dataSource, ReservationIndex::new);
+    }
+
+    // Loading *********************************************************
+
+    /**
+     * Reads every reservation that still holds a spot from the Reservations table
+     */
+    public void loadFromDatabase() throws SQLException {
+        List<Interval> rows = queryIntervals(null);
+        lock.writeLock().lock();
+        try {
+            byCode.clear();
+            bySpot.clear();
+            for (Interval interval : rows) {
+                insert(interval);
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-reads the reservations of one spot (used when the caller changed rows without knowing their codes)
+     */
+    public void reloadSpot(int spotId) throws SQLException {
+        List<Interval> rows = queryIntervals(spotId);
+        lock.writeLock().lock();
+        try {
+            SpotSchedule schedule = bySpot.remove(spotId);
+            if (schedule != null) {
+                for (List<Interval> sameStart : schedule.byStart.values()) {
+                    for (Interval interval : sameStart) {
+                        byCode.remove(interval.code);
+                    }
+                }
+            }
+            for (Interval interval : rows) {
+                insert(interval);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<Interval> queryIntervals(Integer spotId) throws SQLException {
+        String qry = """
+            SELECT Reservation_code, assigned_parking_spot_id, reservation_Date,
+                   reservation_start_time, reservation_end_time
+            FROM Reservations
+            WHERE statusEnum IN ('preorder', 'active') AND assigned_parking_spot_id IS NOT NULL
+            """ + (spotId != null ? " AND assigned_parking_spot_id = ?" : "");
+
+        List<Interval> rows = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
+            if (spotId != null) {
+                stmt.setInt(1, spotId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Date date = rs.getDate("reservation_Date");
+                    if (date == null) {
+                        continue;
+                    }
+                    LocalDateTime[] window = toWindow(date.toLocalDate(),
+                        rs.getTime("reservation_start_time"), rs.getTime("reservation_end_time"));
+                    rows.add(new Interval(rs.getInt("Reservation_code"), rs.getInt("assigned_parking_spot_id"),
+                        toMinutes(window[0]), toMinutes(window[1])));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Turns the stored DATE and TIME columns into a window.
+     * Old rows without times block the whole day; an end time before the start time means the next day.
+     */
+    private static LocalDateTime[] toWindow(LocalDate date, Time startTime, Time endTime) {
+        if (startTime == null) {
+            return new LocalDateTime[] { date.atStartOfDay(), date.plusDays(1).atStartOfDay() };
+        }
+        LocalDateTime start = LocalDateTime.of(date, startTime.toLocalTime());
+        if (endTime == null) {
+            return new LocalDateTime[] { start, date.plusDays(1).atStartOfDay() };
+        }
+        LocalDateTime end = LocalDateTime.of(date, endTime.toLocalTime());
+        if (!end.isAfter(start)) {
+            end = end.plusDays(1);
+        }
+        return new LocalDateTime[] { start, end };
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Changes *********************************************************
+
+    /**
+     * Records a reservation holding spotId during [start, end). Replaces any earlier entry with the same code.
+     */
+    public void add(int reservationCode, int spotId, LocalDateTime start, LocalDateTime end) {
+        Interval interval = new Interval(reservationCode, spotId, toMinutes(start), toMinutes(end));
+        lock.writeLock().lock();
+        try {
+            removeLocked(reservationCode);
+            insert(interval);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a reservation to another spot, keeping its times (no-op if it is not indexed)
+     */
+    public void move(int reservationCode, int spotId) {
+        lock.writeLock().lock();
+        try {
+            Interval interval = byCode.get(reservationCode);
+            if (interval != null && interval.spotId != spotId) {
+                removeLocked(reservationCode);
+                insert(new Interval(reservationCode, spotId, interval.start, interval.end));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops a reservation that was cancelled or finished
+     * @return true if the reservation was in the index
+     */
+    public boolean remove(int reservationCode) {
+        lock.writeLock().lock();
+        try {
+            return removeLocked(reservationCode);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(Interval interval) {
+        byCode.put(interval.code, interval);
+        SpotSchedule schedule = bySpot.computeIfAbsent(interval.spotId, id -> new SpotSchedule());
+        schedule.byStart.computeIfAbsent(interval.start, start -> new ArrayList<>(1)).add(interval);
+        schedule.longest = Math.max(schedule.longest, interval.end - interval.start);
+    }
+
+    private boolean removeLocked(int reservationCode) {
+        Interval interval = byCode.remove(reservationCode);
+        if (interval == null) {
+            return false;
+        }
+        SpotSchedule schedule = bySpot.get(interval.spotId);
+        List<Interval> sameStart = schedule.byStart.get(interval.start);
+        sameStart.remove(interval);
+        if (sameStart.isEmpty()) {
+            schedule.byStart.remove(interval.start);
+        }
+        if (schedule.byStart.isEmpty()) {
+            bySpot.remove(interval.spotId);
+        }
+        return true;
+    }
+
+    // Queries *********************************************************
+
+    /**
+     * @return true if no indexed reservation on the spot overlaps [start, end)
+     */
+    public boolean isFree(int spotId, LocalDateTime start, LocalDateTime end) {
+        long from = toMinutes(start);
+        long to = toMinutes(end);
+        lock.readLock().lock();
+        try {
+            SpotSchedule schedule = bySpot.get(spotId);
+            return schedule == null || !schedule.overlaps(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Filters candidate spots down to those with no reservation overlapping [start, end), keeping their order
+     */
+    public List<Integer> freeSpots(Collection<Integer> candidateSpots, LocalDateTime start, LocalDateTime end) {
+        long from = toMinutes(start);
+        long to = toMinutes(end);
+        List<Integer> free = new ArrayList<>(candidateSpots.size());
+        lock.readLock().lock();
+        try {
+            for (int spotId : candidateSpots) {
+                SpotSchedule schedule = bySpot.get(spotId);
+                if (schedule == null || !schedule.overlaps(from, to)) {
+                    free.add(spotId);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return free;
+    }
+
+    /**
+     * Counts, for consecutive booking windows, how many candidate spots are free for the whole window.
+     * Window i is [firstStart + i * slotMinutes, that + windowMinutes).
+     * Every reservation is visited once: it blocks a contiguous run of windows on its spot,
+     * marked in a per-spot difference array.
+     * @return free spot count per window, slotCount entries
+     */
+    public int[] freeCountPerSlot(Collection<Integer> candidateSpots, LocalDateTime firstStart,
+                                  int slotCount, int slotMinutes, int windowMinutes) {
+        int[] freeCounts = new int[slotCount];
+        if (slotCount <= 0) {
+            return freeCounts;
+        }
+        long first = toMinutes(firstStart);
+        long rangeEnd = first + (long) (slotCount - 1) * slotMinutes + windowMinutes;
+        int[] blocked = new int[slotCount + 1];
+
+        lock.readLock().lock();
+        try {
+            for (int spotId : candidateSpots) {
+                SpotSchedule schedule = bySpot.get(spotId);
+                if (schedule == null) {
+                    for (int i = 0; i < slotCount; i++) {
+                        freeCounts[i]++;
+                    }
+                    continue;
+                }
+
+                Arrays.fill(blocked, 0);
+                for (List<Interval> sameStart : schedule.candidates(first, rangeEnd).values()) {
+                    for (Interval interval : sameStart) {
+                        if (interval.end <= first) {
+                            continue;
+                        }
+                        // Window i overlaps the reservation when slotStart(i) < end and slotStart(i) + window > start
+                        int lo = (int) Math.max(0, Math.floorDiv(interval.start - windowMinutes - first, slotMinutes) + 1);
+                        int hi = (int) Math.min(slotCount - 1, ceilDiv(interval.end - first, slotMinutes) - 1);
+                        if (lo <= hi) {
+                            blocked[lo]++;
+                            blocked[hi + 1]--;
+                        }
+                    }
+                }
+
+                int running = 0;
+                for (int i = 0; i < slotCount; i++) {
+                    running += blocked[i];
+                    if (running == 0) {
+                        freeCounts[i]++;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return freeCounts;
+    }
+
+    /**
+     * @return number of reservations in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byCode.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    /**
+     * Minutes on the wall clock; reservations are stored as local DATE/TIME, so no zone conversion applies
+     */
+    private static long toMinutes(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    /**
+     * The reservations of one spot, ordered by start minute
+     */
+    private static class SpotSchedule {
+        final TreeMap<Long, List<Interval>> byStart = new TreeMap<>();
+        long longest = 0; // Never shrinks on remove, which only widens the candidate range
+
+        /**
+         * Reservations that may overlap [from, to): any such reservation starts before 'to'
+         * and, being at most 'longest' long, after from - longest
+         */
+        NavigableMap<Long, List<Interval>> candidates(long from, long to) {
+            return byStart.subMap(from - longest, false, to, false);
+        }
+
+        boolean overlaps(long from, long to) {
+            for (List<Interval> sameStart : candidates(from, to).values()) {
+                for (Interval interval : sameStart) {
+                    if (interval.end > from) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Interval {
+        final int code;
+        final int spotId;
+        final long start;
+        final long end;
+
+        Interval(int code, int spotId, long start, long end) {
+            this.code = code;
+            this.spotId = spotId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
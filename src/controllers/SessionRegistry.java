@@ -0,0 +1,123 @@
+package controllers;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import controllers.ParkingController.UserRole;
+import entities.ParkingSubscriber;
+
+/**
+ * SessionRegistry - the users logged in on each client connection, with the user ID, role
+ * and profile read at login. Role checks and ID lookups for a logged-in user are answered
+ * from here instead of the users table.
+ *
+ * A session opens on login and closes on logout or disconnect; a user logged in on several
+ * connections keeps one entry until the last of them closes. Profile changes are written
+ * through with {@link #updateProfile}.
+ * One registry is shared by all controllers on the same DataSource.
+ */
+public class SessionRegistry {
+
+    private static final Map<DataSource, SessionRegistry> REGISTRIES = new IdentityHashMap<>();
+
+    private final Map<Object, UserSession> byConnection = new ConcurrentHashMap<>();
+    private final Map<String, UserSession> byUserName = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the shared registry for a DataSource, creating it on first use
+     */
+    public static synchronized SessionRegistry forDataSource(DataSource dataSource) {
+        return REGISTRIES.computeIfAbsent(dataSource, ds -> new SessionRegistry());
+    }
+
+    /**
+     * Logs a user in on a connection, replacing whoever was logged in on it before
+     * @param connection Key identifying the client connection
+     * @param profile The user's row, as read at login
+     */
+    public synchronized UserSession open(Object connection, ParkingSubscriber profile) {
+        close(connection);
+        UserSession session = byUserName.get(profile.getSubscriberCode());
+        if (session == null) {
+            session = new UserSession(profile);
+            byUserName.put(profile.getSubscriberCode(), session);
+        } else {
+            session.profile = profile;
+        }
+        session.connections++;
+        byConnection.put(connection, session);
+        return session;
+    }
+
+    /**
+     * Logs out whoever is logged in on a connection (no-op if nobody is)
+     */
+    public synchronized void close(Object connection) {
+        UserSession session = byConnection.remove(connection);
+        if (session != null && --session.connections == 0) {
+            byUserName.remove(session.getUserName());
+        }
+    }
+
+    /**
+     * @return the session of a logged-in user, or null
+     */
+    public UserSession get(String userName) {
+        return userName == null ? null : byUserName.get(userName);
+    }
+
+    public UserSession getForConnection(Object connection) {
+        return byConnection.get(connection);
+    }
+
+    /**
+     * Write-through after the user's row changed; no-op if the user is not logged in
+     */
+    public synchronized void updateProfile(ParkingSubscriber profile) {
+        UserSession session = byUserName.get(profile.getSubscriberCode());
+        if (session != null) {
+            session.profile = profile;
+        }
+    }
+
+    public int size() {
+        return byUserName.size();
+    }
+
+    /**
+     * One logged-in user
+     */
+    public static class UserSession {
+        private final String userName;
+        private final int userID;
+        private final UserRole role;
+        private volatile ParkingSubscriber profile;
+        private int connections; // Guarded by the registry
+
+        UserSession(ParkingSubscriber profile) {
+            this.userName = profile.getSubscriberCode();
+            this.userID = profile.getSubscriberID();
+            this.role = UserRole.fromDbValue(profile.getUserType());
+            this.profile = profile;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public int getUserID() {
+            return userID;
+        }
+
+        public UserRole getRole() {
+            return role;
+        }
+
+        public ParkingSubscriber getProfile() {
+            return profile;
+        }
+    }
+}
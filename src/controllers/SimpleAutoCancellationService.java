@@ -1,38 +1,50 @@
 package controllers;
 
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import services.EmailService; // 🆕 ADD THIS IMPORT
+import services.TimerWheel;
 
 /**
  * Simplified Automatic Reservation Cancellation Service
  * 15-minute rule: If a customer with "preorder" status is late by more than 15 minutes,
  * their reservation is automatically cancelled and the spot becomes available.
  * NOW INCLUDES EMAIL NOTIFICATIONS
+ *
+ * Each preorder gets a deadline (start time + 15 minutes) on a timer wheel when it is created;
+ * activation or cancellation removes it. Deadlines are rebuilt from the database when the
+ * service starts, and reservations that expire in the same second are cancelled as one batch.
  */
 public class SimpleAutoCancellationService {
     
     private final ParkingController parkingController;
-    private final ScheduledExecutorService scheduler;
+    private final TimerWheel<Integer> lateTimers;
     private static final int LATE_THRESHOLD_MINUTES = 15;
+    private static final long TICK_MS = 1_000;
+    private static final int WHEEL_SIZE = 3_600; // One revolution per hour
+    private static final long RETRY_DELAY_MS = 30_000;
     private boolean isRunning = false;
     
     public SimpleAutoCancellationService(ParkingController parkingController) {
         this.parkingController = parkingController;
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        this.lateTimers = new TimerWheel<>("late-reservation-timer", TICK_MS, WHEEL_SIZE, this::cancelLatePreorders);
     }
     
     /**
      * Start the automatic cancellation service
-     * Runs every minute to check for late preorder reservations
+     * Loads the deadline of every open preorder and starts the timer
      */
     public void startService() {
         if (isRunning) {
@@ -42,16 +54,10 @@ public class SimpleAutoCancellationService {
         
         isRunning = true;
         System.out.println("Starting automatic reservation cancellation service...");
-        System.out.println("Checking for late preorder reservations every minute (15+ min late = auto-cancel)");
         
-        // Schedule to run every minute
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                checkAndCancelLatePreorders();
-            } catch (Exception e) {
-                System.err.println("Error in auto-cancellation service: " + e.getMessage());
-            }
-        }, 0, 1, TimeUnit.MINUTES);
+        int scheduled = rebuildFromDatabase();
+        lateTimers.start();
+        System.out.println("Tracking " + scheduled + " preorder reservations (15+ min late = auto-cancel)");
     }
     
     /**
@@ -63,121 +69,170 @@ public class SimpleAutoCancellationService {
         }
         
         isRunning = false;
-        scheduler.shutdown();
+        lateTimers.stop(); // startService rebuilds the deadlines
         System.out.println("Auto-cancellation service stopped");
     }
     
     /**
-     * Main method that checks for and cancels late preorder reservations
+     * Registers the late deadline of a new preorder reservation
+     */
+    public void scheduleCancellation(int reservationCode, LocalDateTime reservationStart) {
+        LocalDateTime deadline = reservationStart.plusMinutes(LATE_THRESHOLD_MINUTES);
+        lateTimers.schedule(reservationCode, deadline.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+    
+    /**
+     * @return number of preorders waiting for their late deadline
+     */
+    public int getPendingCount() {
+        return lateTimers.size();
+    }
+    
+    /**
+     * @return how late past their deadline late preorders are being cancelled, in milliseconds
+     */
+    public long getLagMillis() {
+        return lateTimers.getLagMillis();
+    }
+    
+    /**
+     * Drops the late deadline of a reservation that was activated or cancelled
+     */
+    public void cancelTimer(int reservationCode) {
+        lateTimers.cancel(reservationCode);
+    }
+    
+    /**
+     * Schedules a deadline for every preorder in the database; overdue ones fire on the first tick
+     * @return number of deadlines scheduled
+     */
+    private int rebuildFromDatabase() {
+        String query = """
+            SELECT Reservation_code, reservation_Date, reservation_start_time
+            FROM Reservations
+            WHERE statusEnum = 'preorder'
+            AND assigned_parking_spot_id IS NOT NULL
+            AND reservation_start_time IS NOT NULL
+            """;
+        
+        int scheduled = 0;
+        try (Connection conn = parkingController.getConnection(); PreparedStatement stmt = conn.prepareStatement(query);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                LocalDateTime start = LocalDateTime.of(rs.getDate("reservation_Date").toLocalDate(),
+                                                       rs.getTime("reservation_start_time").toLocalTime());
+                scheduleCancellation(rs.getInt("Reservation_code"), start);
+                scheduled++;
+            }
+        } catch (SQLException e) {
+            System.err.println("Database error loading preorder deadlines: " + e.getMessage());
+        }
+        return scheduled;
+    }
+    
+    /**
+     * Cancels a batch of reservations whose late deadline has passed
      * 🆕 NOW WITH EMAIL NOTIFICATIONS
      */
-    private void checkAndCancelLatePreorders() {
-    	String query = """
-    		    SELECT 
-    		        r.Reservation_code,
-    		        r.User_ID,
-    		        r.assigned_parking_spot_id,
-    		        u.UserName,
-    		        u.Email,
-    		        u.Name,
-    		        u.Phone,
-    		        TIMESTAMPDIFF(MINUTE, 
-    		            CONCAT(r.reservation_Date, ' ', r.reservation_start_time), 
-    		            NOW()) as minutes_late,
-    		        CONCAT(r.reservation_Date, ' ', r.reservation_start_time) as full_reservation_time
-    		    FROM Reservations r
-    		    JOIN users u ON r.User_ID = u.User_ID
-    		    WHERE r.statusEnum = 'preorder'
-    		    AND r.reservation_Date = CURDATE()
-    		    AND r.assigned_parking_spot_id IS NOT NULL
-    		    AND r.reservation_start_time IS NOT NULL
-    		    AND TIMESTAMPDIFF(MINUTE, 
-    		        CONCAT(r.reservation_Date, ' ', r.reservation_start_time), 
-    		        NOW()) >= ?
-    		    """;
+    private void cancelLatePreorders(List<Integer> reservationCodes) {
+        List<LateReservation> cancelled = cancelLateReservations(reservationCodes);
         
-        try (PreparedStatement stmt = parkingController.getConnection().prepareStatement(query)) {
-            stmt.setInt(1, LATE_THRESHOLD_MINUTES);
+        for (LateReservation late : cancelled) {
+            parkingController.reservations().remove(late.reservationCode);
+            parkingController.getReportAggregates().reservationCancelled(late.placedOn);
             
-            try (ResultSet rs = stmt.executeQuery()) {
-                int cancelledCount = 0;
-                
-                while (rs.next()) {
-                    int reservationCode = rs.getInt("Reservation_code");
-                    int spotId = rs.getInt("assigned_parking_spot_id");
-                    String userName = rs.getString("UserName");
-                    String userEmail = rs.getString("Email");
-                    String fullName = rs.getString("Name");
-                    int minutesLate = rs.getInt("minutes_late");
-                    
-                    if (cancelLateReservation(reservationCode, spotId)) {
-                        cancelledCount++;
-                        
-                        // 🆕 SEND EMAIL NOTIFICATION for auto-cancellation
-                        if (userEmail != null && fullName != null) {
-                            EmailService.sendReservationCancelled(userEmail, fullName, String.valueOf(reservationCode));
-                        }
-                        
-                        System.out.println(String.format(
-                            "✅ AUTO-CANCELLED: Reservation %d for %s (Spot %d) - %d minutes late - Email sent",
-                            reservationCode, userName, spotId, minutesLate
-                        ));
-                    }
-                }
-                
-                if (cancelledCount > 0) {
-                    System.out.println(String.format(
-                        "Auto-cancellation completed: %d preorder reservations cancelled, %d spots freed, %d emails sent",
-                        cancelledCount, cancelledCount, cancelledCount
-                    ));
-                }
+            // Free up the parking spot (written through to ParkingSpot by the occupancy bitmap)
+            parkingController.releaseParkingSpot(late.spotId);
+            
+            // 🆕 SEND EMAIL NOTIFICATION for auto-cancellation
+            if (late.userEmail != null && late.fullName != null) {
+                EmailService.sendReservationCancelled(late.userEmail, late.fullName, String.valueOf(late.reservationCode));
             }
-        } catch (SQLException e) {
-            System.err.println("Database error during auto-cancellation: " + e.getMessage());
+            
+            System.out.println(String.format(
+                "✅ AUTO-CANCELLED: Reservation %d for %s (Spot %d) - %d minutes late - Email sent",
+                late.reservationCode, late.userName, late.spotId, late.minutesLate
+            ));
+        }
+        
+        if (!cancelled.isEmpty()) {
+            System.out.println(String.format(
+                "Auto-cancellation completed: %d preorder reservations cancelled, %d spots freed, %d emails sent",
+                cancelled.size(), cancelled.size(), cancelled.size()
+            ));
         }
     }
     
     /**
-     * Cancel a specific late preorder reservation and free up the parking spot
+     * Moves the reservations that are still 'preorder' to 'cancelled' in one transaction.
+     * Rows are locked first, so a customer activating at the same moment either wins or is cancelled, never both.
+     * @return the reservations that were actually cancelled
      */
-    private boolean cancelLateReservation(int reservationCode, int spotId) {
-        Connection conn = parkingController.getConnection();
+    private List<LateReservation> cancelLateReservations(List<Integer> reservationCodes) {
+        List<LateReservation> cancelled = new ArrayList<>();
+        String placeholders = String.join(",", Collections.nCopies(reservationCodes.size(), "?"));
+        
+        Connection conn;
+        try {
+            conn = parkingController.getConnection();
+        } catch (SQLException e) {
+            System.err.println("No database connection available: " + e.getMessage());
+            retryLater(reservationCodes);
+            return cancelled;
+        }
         
         try {
             conn.setAutoCommit(false);
             
-            // 1. Cancel the reservation (change status from preorder to cancelled)
-            String cancelQuery = """
-                UPDATE Reservations 
-                SET statusEnum = 'cancelled'
-                WHERE Reservation_code = ? AND statusEnum = 'preorder'
-                """;
+            // 1. Lock the reservations that are still waiting for their customer
+            String lockQuery = """
+                SELECT r.Reservation_code, r.assigned_parking_spot_id, r.reservation_Date, r.reservation_start_time,
+                       r.Date_Of_Placing_Order, u.UserName, u.Email, u.Name
+                FROM Reservations r
+                JOIN users u ON r.User_ID = u.User_ID
+                WHERE r.statusEnum = 'preorder' AND r.Reservation_code IN (%s)
+                FOR UPDATE
+                """.formatted(placeholders);
             
-            int updatedReservations = 0;
-            try (PreparedStatement stmt = conn.prepareStatement(cancelQuery)) {
-                stmt.setInt(1, reservationCode);
-                updatedReservations = stmt.executeUpdate();
+            try (PreparedStatement stmt = conn.prepareStatement(lockQuery)) {
+                for (int i = 0; i < reservationCodes.size(); i++) {
+                    stmt.setInt(i + 1, reservationCodes.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    LocalDateTime now = LocalDateTime.now();
+                    while (rs.next()) {
+                        LocalDateTime start = LocalDateTime.of(rs.getDate("reservation_Date").toLocalDate(),
+                                                               rs.getTime("reservation_start_time").toLocalTime());
+                        Date placedOn = rs.getDate("Date_Of_Placing_Order");
+                        cancelled.add(new LateReservation(
+                            rs.getInt("Reservation_code"), rs.getInt("assigned_parking_spot_id"),
+                            rs.getString("UserName"), rs.getString("Email"), rs.getString("Name"),
+                            Duration.between(start, now).toMinutes(), placedOn != null ? placedOn.toLocalDate() : null));
+                    }
+                }
             }
             
-            if (updatedReservations == 0) {
+            if (cancelled.isEmpty()) {
                 conn.rollback();
-                return false; // Reservation was already cancelled or doesn't exist
+                return cancelled; // All of them were activated or cancelled in the meantime
             }
             
-            // 2. Free up the parking spot
-            String freeSpotQuery = """
-                UPDATE ParkingSpot 
-                SET isOccupied = FALSE 
-                WHERE ParkingSpot_ID = ?
-                """;
+            // 2. Cancel them (change status from preorder to cancelled)
+            String cancelQuery = """
+                UPDATE Reservations
+                SET statusEnum = 'cancelled'
+                WHERE statusEnum = 'preorder' AND Reservation_code IN (%s)
+                """.formatted(placeholders);
             
-            try (PreparedStatement stmt = conn.prepareStatement(freeSpotQuery)) {
-                stmt.setInt(1, spotId);
+            try (PreparedStatement stmt = conn.prepareStatement(cancelQuery)) {
+                for (int i = 0; i < reservationCodes.size(); i++) {
+                    stmt.setInt(i + 1, reservationCodes.get(i));
+                }
                 stmt.executeUpdate();
             }
             
             conn.commit();
-            return true;
+            return cancelled;
             
         } catch (SQLException e) {
             try {
@@ -185,14 +240,54 @@ public class SimpleAutoCancellationService {
             } catch (SQLException rollbackEx) {
                 System.err.println("Failed to rollback transaction: " + rollbackEx.getMessage());
             }
-            System.err.println("Failed to cancel reservation " + reservationCode + ": " + e.getMessage());
-            return false;
+            System.err.println("Failed to cancel late reservations " + reservationCodes + ": " + e.getMessage());
+            retryLater(reservationCodes);
+            return new ArrayList<>();
         } finally {
             try {
                 conn.setAutoCommit(true);
             } catch (SQLException e) {
                 System.err.println("Failed to reset auto-commit: " + e.getMessage());
             }
+            try {
+                conn.close(); // Back to the pool
+            } catch (SQLException e) {
+                System.err.println("Failed to return connection: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Puts a failed batch back on the wheel, so a database outage delays cancellations instead of losing them
+     */
+    private void retryLater(List<Integer> reservationCodes) {
+        long retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+        for (int reservationCode : reservationCodes) {
+            lateTimers.schedule(reservationCode, retryAt);
+        }
+    }
+    
+    /**
+     * A late reservation picked for cancellation, with what the notification needs
+     */
+    private static class LateReservation {
+        final int reservationCode;
+        final int spotId;
+        final String userName;
+        final String userEmail;
+        final String fullName;
+        final long minutesLate;
+        final LocalDate placedOn;
+        
+        LateReservation(int reservationCode, int spotId, String userName, String userEmail, String fullName,
+                        long minutesLate, LocalDate placedOn) {
+            this.reservationCode = reservationCode;
+            this.spotId = spotId;
+            this.userName = userName;
+            this.userEmail = userEmail;
+            this.fullName = fullName;
+            this.minutesLate = minutesLate;
+            this.placedOn = placedOn;
         }
     }
     
@@ -201,16 +296,17 @@ public class SimpleAutoCancellationService {
      */
     public boolean activateReservation(int reservationCode) {
         String query = """
-            UPDATE Reservations 
+            UPDATE Reservations
             SET statusEnum = 'active'
             WHERE Reservation_code = ? AND statusEnum = 'preorder'
             """;
         
-        try (PreparedStatement stmt = parkingController.getConnection().prepareStatement(query)) {
+        try (Connection conn = parkingController.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setInt(1, reservationCode);
             int updated = stmt.executeUpdate();
             
             if (updated > 0) {
+                lateTimers.cancel(reservationCode);
                 System.out.println("Reservation " + reservationCode + " activated (preorder → active)");
                 return true;
             }
@@ -226,14 +322,20 @@ public class SimpleAutoCancellationService {
      * Finish a reservation (change from active to finished when customer exits)
      */
     public boolean finishReservation(int reservationCode, int spotId) {
-        Connection conn = parkingController.getConnection();
+        Connection conn;
+        try {
+            conn = parkingController.getConnection();
+        } catch (SQLException e) {
+            System.err.println("No database connection available: " + e.getMessage());
+            return false;
+        }
         
         try {
             conn.setAutoCommit(false);
             
             // 1. Update reservation status to finished
             String finishQuery = """
-                UPDATE Reservations 
+                UPDATE Reservations
                 SET statusEnum = 'finished'
                 WHERE Reservation_code = ? AND statusEnum = 'active'
                 """;
@@ -249,19 +351,11 @@ public class SimpleAutoCancellationService {
                 return false;
             }
             
-            // 2. Free up the parking spot
-            String freeSpotQuery = """
-                UPDATE ParkingSpot 
-                SET isOccupied = FALSE 
-                WHERE ParkingSpot_ID = ?
-                """;
-            
-            try (PreparedStatement stmt = conn.prepareStatement(freeSpotQuery)) {
-                stmt.setInt(1, spotId);
-                stmt.executeUpdate();
-            }
-            
             conn.commit();
+            parkingController.reservations().remove(reservationCode);
+            
+            // 2. Free up the parking spot (written through to ParkingSpot by the occupancy bitmap)
+            parkingController.releaseParkingSpot(spotId);
             System.out.println("Reservation " + reservationCode + " finished and spot " + spotId + " freed");
             return true;
             
@@ -279,6 +373,11 @@ public class SimpleAutoCancellationService {
             } catch (SQLException e) {
                 System.err.println("Failed to reset auto-commit: " + e.getMessage());
             }
+            try {
+                conn.close(); // Back to the pool
+            } catch (SQLException e) {
+                System.err.println("Failed to return connection: " + e.getMessage());
+            }
         }
     }
     
@@ -301,13 +400,6 @@ public class SimpleAutoCancellationService {
      */
     public void shutdown() {
         stopService();
-        try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
+        lateTimers.shutdown();
     }
 }
\ No newline at end of file
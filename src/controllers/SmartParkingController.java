@@ -2,7 +2,6 @@ package controllers;
 
 import java.sql.Connection;
 import java.sql.Date;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -14,10 +13,12 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+
+import javax.sql.DataSource;
 
 import entities.ParkingOrder;
 import entities.ParkingSubscriber;
+import services.ConnectionPool;
 
 /**
  * Smart Parking Allocation System with enhanced algorithms
@@ -36,16 +37,46 @@ public class SmartParkingController {
     private static final int MINIMUM_EXTENSION_HOURS = 2;
     private static final int MAXIMUM_EXTENSION_HOURS = 4;
     
-    protected Connection conn;
+    protected DataSource dataSource;
     public int successFlag;
 
+    // In-memory index of reservations holding a spot, shared with ParkingController
+    private ReservationIndex reservationIndex;
+
+    // Parking codes of the open sessions, shared with ParkingController
+    private ParkingCodeAllocator parkingCodes;
+
+    // Spot occupancy bitmap, shared with ParkingController; it writes ParkingSpot.isOccupied
+    private SpotOccupancy spotOccupancy;
+
     public SmartParkingController(String dbname, String pass) {
         String connectPath = "jdbc:mysql://localhost/" + dbname + "?serverTimezone=IST";
         connectToDB(connectPath, pass);
+        reservationIndex = ReservationIndex.forDataSource(dataSource);
+        parkingCodes = ParkingCodeAllocator.forDataSource(dataSource);
+        spotOccupancy = SpotOccupancy.forDataSource(dataSource);
+    }
+
+    /**
+     * Uses a pool that is already set up (e.g. an embedded database in the benchmarks)
+     */
+    public SmartParkingController(DataSource dataSource) {
+        this.dataSource = dataSource;
+        successFlag = 1;
+        reservationIndex = ReservationIndex.forDataSource(dataSource);
+        parkingCodes = ParkingCodeAllocator.forDataSource(dataSource);
+        spotOccupancy = SpotOccupancy.forDataSource(dataSource);
     }
 
-    public Connection getConnection() {
-        return conn;
+    /**
+     * Borrows a pooled connection; the caller must close it to return it to the pool
+     */
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
     }
 
     public void connectToDB(String path, String pass) {
@@ -56,8 +87,12 @@ public class SmartParkingController {
             System.out.println("Driver definition failed");
         }
 
-        try {
-            conn = DriverManager.getConnection(path, "root", pass);
+        // All controllers on the same database share one pool
+        dataSource = ConnectionPool.forDatabase(path, "root", pass);
+        try (Connection conn = dataSource.getConnection()) {
+            if (!conn.isValid(5)) {
+                throw new SQLException("Connection is not valid");
+            }
             System.out.println("SQL connection succeed");
             successFlag = 1;
         } catch (SQLException ex) {
@@ -122,7 +157,7 @@ public class SmartParkingController {
     public String checkLogin(String userName, String password) {
         String qry = "SELECT UserTypeEnum FROM users WHERE UserName = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -138,7 +173,7 @@ public class SmartParkingController {
     public int getAvailableParkingSpots() {
         String qry = "SELECT COUNT(*) as available FROM ParkingSpot WHERE isOccupied = false";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getInt("available");
@@ -153,7 +188,7 @@ public class SmartParkingController {
     public ParkingSubscriber getUserInfo(String userName) {
         String qry = "SELECT * FROM users WHERE UserName = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -200,7 +235,7 @@ public class SmartParkingController {
 
             String qry = "INSERT INTO Reservations (User_ID, parking_ID, reservation_Date, Date_Of_Placing_Order, statusEnum) VALUES (?, ?, ?, ?, 'active')";
             
-            try (PreparedStatement stmt = conn.prepareStatement(qry, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry, PreparedStatement.RETURN_GENERATED_KEYS)) {
                 stmt.setInt(1, userID);
                 stmt.setInt(2, parkingSpotID);
                 stmt.setDate(3, reservationDate);
@@ -244,7 +279,7 @@ public class SmartParkingController {
 
         String qry = "INSERT INTO ParkingInfo (ParkingSpot_ID, User_ID, Date, Code, Actual_start_time, Estimated_start_time, Estimated_end_time, IsOrderedEnum, IsLate, IsExtended) VALUES (?, ?, ?, ?, ?, ?, ?, 'not ordered', false, false)";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setInt(1, spotID);
             stmt.setInt(2, userID);
             stmt.setDate(3, Date.valueOf(now.toLocalDate()));
@@ -253,12 +288,14 @@ public class SmartParkingController {
             stmt.setTime(6, Time.valueOf(now.toLocalTime()));
             stmt.setTime(7, Time.valueOf(estimatedEnd.toLocalTime()));
             stmt.executeUpdate();
+            parkingCodes.activate(parkingCode, spotID, userID, "not ordered", estimatedEnd.toLocalTime());
 
             updateParkingSpotStatus(spotID, true);
             
             return "Entry successful. Parking code: " + parkingCode + ". Spot: " + spotID;
         } catch (SQLException e) {
             System.out.println("Error handling entry: " + e.getMessage());
+            parkingCodes.release(parkingCode);
             return "Entry failed";
         }
     }
@@ -266,7 +303,7 @@ public class SmartParkingController {
     public String enterParkingWithReservation(int reservationCode) {
         String checkQry = "SELECT r.*, u.User_ID FROM Reservations r JOIN users u ON r.User_ID = u.User_ID WHERE r.Reservation_code = ? AND r.statusEnum = 'active'";
         
-        try (PreparedStatement stmt = conn.prepareStatement(checkQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(checkQry)) {
             stmt.setInt(1, reservationCode);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -305,7 +342,13 @@ public class SmartParkingController {
                         insertStmt.setTime(5, Time.valueOf(now.toLocalTime()));
                         insertStmt.setTime(6, Time.valueOf(now.toLocalTime()));
                         insertStmt.setTime(7, Time.valueOf(estimatedEnd.toLocalTime()));
-                        insertStmt.executeUpdate();
+                        try {
+                            insertStmt.executeUpdate();
+                        } catch (SQLException e) {
+                            parkingCodes.release(parkingCode);
+                            throw e;
+                        }
+                        parkingCodes.activate(parkingCode, parkingSpotID, userID, "ordered", estimatedEnd.toLocalTime());
 
                         updateParkingSpotStatus(parkingSpotID, true);
                         updateReservationStatus(reservationCode, "expire");
@@ -336,7 +379,7 @@ public class SmartParkingController {
         
         String checkQry = "SELECT COUNT(*) FROM users WHERE UserName = ?";
         
-        try (PreparedStatement checkStmt = conn.prepareStatement(checkQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement checkStmt = conn.prepareStatement(checkQry)) {
             checkStmt.setString(1, userName);
             try (ResultSet rs = checkStmt.executeQuery()) {
                 if (rs.next() && rs.getInt(1) > 0) {
@@ -350,7 +393,7 @@ public class SmartParkingController {
         
         String insertQry = "INSERT INTO users (UserName, Name, Phone, Email, CarNum, UserTypeEnum) VALUES (?, ?, ?, ?, ?, 'sub')";
         
-        try (PreparedStatement stmt = conn.prepareStatement(insertQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(insertQry)) {
             stmt.setString(1, userName);
             stmt.setString(2, name);
             stmt.setString(3, phone);
@@ -392,7 +435,7 @@ public class SmartParkingController {
             int parkingCode = Integer.parseInt(parkingCodeStr);
             String qry = "SELECT pi.*, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE pi.Code = ? AND pi.Actual_end_time IS NULL";
             
-            try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
                 stmt.setInt(1, parkingCode);
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
@@ -413,6 +456,7 @@ public class SmartParkingController {
                             updateStmt.setBoolean(2, isLate);
                             updateStmt.setInt(3, parkingInfoID);
                             updateStmt.executeUpdate();
+                            parkingCodes.release(parkingCode);
                             
                             updateParkingSpotStatus(spotID, false);
                             
@@ -443,7 +487,7 @@ public class SmartParkingController {
             int parkingCode = Integer.parseInt(parkingCodeStr);
             String qry = "SELECT pi.* FROM ParkingInfo pi WHERE pi.Code = ? AND pi.Actual_end_time IS NULL";
             
-            try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
                 stmt.setInt(1, parkingCode);
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
@@ -456,6 +500,7 @@ public class SmartParkingController {
                             updateStmt.setTime(1, Time.valueOf(newEstimatedEnd));
                             updateStmt.setInt(2, parkingCode);
                             updateStmt.executeUpdate();
+                            parkingCodes.extend(parkingCode, newEstimatedEnd);
                             
                             return "Parking time extended by " + additionalHours + " hours until " + newEstimatedEnd;
                         }
@@ -473,7 +518,7 @@ public class SmartParkingController {
     public String sendLostParkingCode(String userName) {
         String qry = "SELECT pi.Code, u.Email, u.Phone FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID WHERE u.UserName = ? AND pi.Actual_end_time IS NULL";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -496,7 +541,7 @@ public class SmartParkingController {
         ArrayList<ParkingOrder> history = new ArrayList<>();
         String qry = "SELECT pi.*, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE u.UserName = ? ORDER BY pi.Date DESC, pi.Actual_start_time DESC";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -538,7 +583,7 @@ public class SmartParkingController {
         ArrayList<ParkingOrder> activeParkings = new ArrayList<>();
         String qry = "SELECT pi.*, u.Name, ps.ParkingSpot_ID FROM ParkingInfo pi JOIN users u ON pi.User_ID = u.User_ID JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID WHERE pi.Actual_end_time IS NULL ORDER BY pi.Actual_start_time";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     ParkingOrder order = new ParkingOrder();
@@ -581,7 +626,7 @@ public class SmartParkingController {
         
         String qry = "UPDATE users SET Phone = ?, Email = ? WHERE UserName = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, phone);
             stmt.setString(2, email);
             stmt.setString(3, userName);
@@ -599,11 +644,12 @@ public class SmartParkingController {
     public String cancelReservation(int reservationCode) {
         String qry = "UPDATE Reservations SET statusEnum = 'cancelled' WHERE Reservation_code = ? AND statusEnum = 'active'";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setInt(1, reservationCode);
             int rowsUpdated = stmt.executeUpdate();
             
             if (rowsUpdated > 0) {
+                reservations().remove(reservationCode);
                 return "Reservation cancelled successfully";
             }
         } catch (SQLException e) {
@@ -619,7 +665,7 @@ public class SmartParkingController {
     public void initializeParkingSpots() {
         try {
             String checkQry = "SELECT COUNT(*) FROM ParkingSpot";
-            try (PreparedStatement stmt = conn.prepareStatement(checkQry)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(checkQry)) {
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next() && rs.getInt(1) == 0) {
                         String insertQry = "INSERT INTO ParkingSpot (isOccupied) VALUES (false)";
@@ -629,6 +675,9 @@ public class SmartParkingController {
                             }
                         }
                         System.out.println("Successfully initialized " + TOTAL_PARKING_SPOTS + " parking spots");
+                        if (spotOccupancy.isLoaded()) {
+                            spotOccupancy.loadFromDatabase(); // Pick up the new spots
+                        }
                     } else {
                         System.out.println("Parking spots already exist: " + rs.getInt(1) + " spots found");
                     }
@@ -654,23 +703,22 @@ public class SmartParkingController {
             
             LocalDateTime preferredDateTime = LocalDateTime.of(date, preferredTime);
             LocalDateTime startRange = preferredDateTime.minusHours(DISPLAY_WINDOW_HOURS);
-            LocalDateTime endRange = preferredDateTime.plusHours(DISPLAY_WINDOW_HOURS);
+            int slotCount = 2 * DISPLAY_WINDOW_HOURS * 60 / TIME_SLOT_MINUTES + 1;
+            
+            // One pass over the reservation index for every slot shown
+            int[] availableCounts = countAvailableSpotsPerSlot(startRange, slotCount);
             
-            LocalDateTime currentSlot = startRange;
-            while (!currentSlot.isAfter(endRange)) {
-                LocalDateTime bookingEnd = currentSlot.plusHours(STANDARD_BOOKING_HOURS);
-                boolean hasValidWindow = hasValidFourHourWindow(currentSlot, bookingEnd);
-                int availableSpots = countAvailableSpotsForWindow(currentSlot, bookingEnd);
+            for (int i = 0; i < slotCount; i++) {
+                LocalDateTime currentSlot = startRange.plusMinutes((long) i * TIME_SLOT_MINUTES);
+                int availableSpots = availableCounts[i];
                 boolean meetsFortyPercent = availableSpots >= (TOTAL_PARKING_SPOTS * AVAILABILITY_THRESHOLD);
                 
                 timeSlots.add(new TimeSlot(
                     currentSlot, 
-                    hasValidWindow && meetsFortyPercent, 
+                    meetsFortyPercent, 
                     availableSpots,
                     meetsFortyPercent
                 ));
-                
-                currentSlot = currentSlot.plusMinutes(TIME_SLOT_MINUTES);
             }
             
         } catch (Exception e) {
@@ -743,13 +791,13 @@ public class SmartParkingController {
             LocalDateTime sessionEnd = now.plusHours(allocation.allocatedHours);
             
             String insertQuery = """
-                INSERT INTO ParkingInfo 
-                (ParkingSpot_ID, User_ID, Date, Code, Actual_start_time, Estimated_start_time, 
-                 Estimated_end_time, IsOrderedEnum, IsLate, IsExtended) 
+                INSERT INTO ParkingInfo
+                (ParkingSpot_ID, User_ID, Date, Code, Actual_start_time, Estimated_start_time,
+                 Estimated_end_time, IsOrderedEnum, IsLate, IsExtended)
                 VALUES (?, ?, ?, ?, ?, ?, ?, 'not ordered', false, false)
                 """;
             
-            try (PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
                 stmt.setInt(1, allocation.spotId);
                 stmt.setInt(2, userID);
                 stmt.setDate(3, Date.valueOf(now.toLocalDate()));
@@ -757,7 +805,13 @@ public class SmartParkingController {
                 stmt.setTime(5, Time.valueOf(now.toLocalTime()));
                 stmt.setTime(6, Time.valueOf(now.toLocalTime()));
                 stmt.setTime(7, Time.valueOf(sessionEnd.toLocalTime()));
-                stmt.executeUpdate();
+                try {
+                    stmt.executeUpdate();
+                } catch (SQLException e) {
+                    parkingCodes.release(parkingCode);
+                    throw e;
+                }
+                parkingCodes.activate(parkingCode, allocation.spotId, userID, "not ordered", sessionEnd.toLocalTime());
                 
                 updateSpotOccupancy(allocation.spotId, true);
                 
@@ -780,13 +834,13 @@ public class SmartParkingController {
             int parkingCode = Integer.parseInt(parkingCodeStr);
             
             String sessionQuery = """
-                SELECT pi.*, ps.ParkingSpot_ID 
-                FROM ParkingInfo pi 
-                JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID 
+                SELECT pi.*, ps.ParkingSpot_ID
+                FROM ParkingInfo pi
+                JOIN ParkingSpot ps ON pi.ParkingSpot_ID = ps.ParkingSpot_ID
                 WHERE pi.Code = ? AND pi.Actual_end_time IS NULL
                 """;
             
-            try (PreparedStatement stmt = conn.prepareStatement(sessionQuery)) {
+            try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(sessionQuery)) {
                 stmt.setInt(1, parkingCode);
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
@@ -813,8 +867,8 @@ public class SmartParkingController {
                         LocalDateTime newEndTime = currentEndTime.plusHours(maxExtensionHours);
                         
                         String updateQuery = """
-                            UPDATE ParkingInfo 
-                            SET Estimated_end_time = ?, IsExtended = true 
+                            UPDATE ParkingInfo
+                            SET Estimated_end_time = ?, IsExtended = true
                             WHERE Code = ?
                             """;
                         
@@ -875,14 +929,13 @@ public class SmartParkingController {
         try {
             LocalDateTime dayStart = LocalDateTime.of(date, LocalTime.of(0, 0));
             LocalDateTime dayEnd = LocalDateTime.of(date, LocalTime.of(23, 45));
+            long lastStartMinutes = Duration.between(dayStart, dayEnd.minusHours(STANDARD_BOOKING_HOURS)).toMinutes();
+            int slotCount = (int) (lastStartMinutes / TIME_SLOT_MINUTES) + 1;
             
-            LocalDateTime currentTime = dayStart;
-            while (!currentTime.isAfter(dayEnd.minusHours(STANDARD_BOOKING_HOURS))) {
-                LocalDateTime windowEnd = currentTime.plusHours(STANDARD_BOOKING_HOURS);
-                if (hasValidFourHourWindow(currentTime, windowEnd)) {
+            for (int availableSpots : countAvailableSpotsPerSlot(dayStart, slotCount)) {
+                if (availableSpots >= (TOTAL_PARKING_SPOTS * AVAILABILITY_THRESHOLD)) {
                     return true;
                 }
-                currentTime = currentTime.plusMinutes(TIME_SLOT_MINUTES);
             }
         } catch (Exception e) {
             System.out.println("Error checking date validity: " + e.getMessage());
@@ -902,15 +955,27 @@ public class SmartParkingController {
     
     private int countAvailableSpotsForWindow(LocalDateTime startTime, LocalDateTime endTime) {
         try {
-            int occupiedSpots = getCurrentlyOccupiedSpots();
-            int reservedSpots = countReservationOverlaps(startTime, endTime);
-            return Math.max(0, TOTAL_PARKING_SPOTS - occupiedSpots - reservedSpots);
+            return getAllAvailableSpots(startTime, endTime).size();
         } catch (Exception e) {
             System.out.println("Error counting available spots: " + e.getMessage());
             return 0;
         }
     }
     
+    /**
+     * Free spots for each standard booking window starting at firstSlot, firstSlot + 15 min, ...
+     * A spot counts when it is not occupied now and no reservation on it overlaps the window.
+     */
+    private int[] countAvailableSpotsPerSlot(LocalDateTime firstSlot, int slotCount) {
+        try {
+            return reservations().freeCountPerSlot(getUnoccupiedSpotIds(), firstSlot, slotCount,
+                                                   TIME_SLOT_MINUTES, STANDARD_BOOKING_HOURS * 60);
+        } catch (Exception e) {
+            System.out.println("Error counting available spots: " + e.getMessage());
+            return new int[slotCount];
+        }
+    }
+    
     private int findOptimalSpotForPreBooking(LocalDateTime bookingStart, LocalDateTime bookingEnd) {
         try {
             List<Integer> availableSpots = getAllAvailableSpots(bookingStart, bookingEnd);
@@ -948,45 +1013,27 @@ public class SmartParkingController {
     }
     
     private List<Integer> getAllAvailableSpots(LocalDateTime startTime, LocalDateTime endTime) throws SQLException {
-        List<Integer> availableSpots = new ArrayList<>();
+        return reservations().freeSpots(getUnoccupiedSpotIds(), startTime, endTime);
+    }
+    
+    private List<Integer> getUnoccupiedSpotIds() throws SQLException {
+        List<Integer> spotIds = new ArrayList<>();
         
         String spotsQuery = "SELECT ParkingSpot_ID FROM ParkingSpot WHERE isOccupied = false ORDER BY ParkingSpot_ID";
         
-        try (PreparedStatement stmt = conn.prepareStatement(spotsQuery)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(spotsQuery)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    int spotId = rs.getInt("ParkingSpot_ID");
-                    if (isSpotAvailableForPeriod(spotId, startTime, endTime)) {
-                        availableSpots.add(spotId);
-                    }
+                    spotIds.add(rs.getInt("ParkingSpot_ID"));
                 }
             }
         }
         
-        return availableSpots;
+        return spotIds;
     }
     
-    private boolean isSpotAvailableForPeriod(int spotId, LocalDateTime startTime, LocalDateTime endTime) throws SQLException {
-        String conflictQuery = """
-            SELECT COUNT(*) FROM Reservations 
-            WHERE assigned_parking_spot_id = ? 
-            AND statusEnum = 'active'
-            AND NOT (reservation_Date < ? OR reservation_Date > ?)
-            """;
-        
-        try (PreparedStatement stmt = conn.prepareStatement(conflictQuery)) {
-            stmt.setInt(1, spotId);
-            stmt.setDate(2, Date.valueOf(endTime.toLocalDate()));
-            stmt.setDate(3, Date.valueOf(startTime.toLocalDate()));
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) == 0;
-                }
-            }
-        }
-        
-        return false;
+    private boolean isSpotAvailableForPeriod(int spotId, LocalDateTime startTime, LocalDateTime endTime) {
+        return reservations().isFree(spotId, startTime, endTime);
     }
     
     private int findMaximumExtension(int spotId, LocalDateTime currentEndTime) {
@@ -1019,21 +1066,25 @@ public class SmartParkingController {
     
     private String createReservationWithDateTime(int userID, int spotId, LocalDateTime startTime, LocalDateTime endTime, String type) throws SQLException {
         String insertQuery = """
-            INSERT INTO Reservations 
-            (User_ID, parking_ID, reservation_Date, Date_Of_Placing_Order, statusEnum, assigned_parking_spot_id) 
-            VALUES (?, ?, ?, NOW(), 'active', ?)
+            INSERT INTO Reservations
+            (User_ID, parking_ID, reservation_Date, reservation_start_time, reservation_end_time,
+             Date_Of_Placing_Order, statusEnum, assigned_parking_spot_id)
+            VALUES (?, ?, ?, ?, ?, NOW(), 'active', ?)
             """;
         
-        try (PreparedStatement stmt = conn.prepareStatement(insertQuery, PreparedStatement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(insertQuery, PreparedStatement.RETURN_GENERATED_KEYS)) {
             stmt.setInt(1, userID);
             stmt.setInt(2, spotId);
             stmt.setDate(3, Date.valueOf(startTime.toLocalDate()));
-            stmt.setInt(4, spotId);
+            stmt.setTime(4, Time.valueOf(startTime.toLocalTime()));
+            stmt.setTime(5, Time.valueOf(endTime.toLocalTime()));
+            stmt.setInt(6, spotId);
             stmt.executeUpdate();
             
             try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
                     int reservationCode = generatedKeys.getInt(1);
+                    reservations().add(reservationCode, spotId, startTime, endTime);
                     
                     DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
                     return String.format("%s successful! Code: %d, Spot: %d, Time: %s to %s",
@@ -1047,52 +1098,48 @@ public class SmartParkingController {
         return "Reservation creation failed";
     }
     
-    private int countReservationOverlaps(LocalDateTime startTime, LocalDateTime endTime) throws SQLException {
-        String query = """
-            SELECT COUNT(DISTINCT assigned_parking_spot_id) 
-            FROM Reservations 
-            WHERE assigned_parking_spot_id IS NOT NULL 
-            AND statusEnum = 'active'
-            AND reservation_Date >= ? 
-            AND reservation_Date <= ?
-            """;
+    private int getCurrentlyOccupiedSpots() throws SQLException {
+        String query = "SELECT COUNT(*) FROM ParkingSpot WHERE isOccupied = true";
         
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setDate(1, Date.valueOf(startTime.toLocalDate()));
-            stmt.setDate(2, Date.valueOf(endTime.toLocalDate()));
-            
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getInt(1);
                 }
             }
         }
-        
         return 0;
     }
     
-    private int getCurrentlyOccupiedSpots() throws SQLException {
-        String query = "SELECT COUNT(*) FROM ParkingSpot WHERE isOccupied = true";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
+    /**
+     * The reservation index, loaded from the database on first use
+     */
+    private ReservationIndex reservations() {
+        if (!reservationIndex.isLoaded()) {
+            synchronized (reservationIndex) {
+                if (!reservationIndex.isLoaded()) {
+                    try {
+                        reservationIndex.loadFromDatabase();
+                    } catch (SQLException e) {
+                        System.out.println("Error loading reservation index: " + e.getMessage());
+                    }
                 }
             }
         }
-        return 0;
+        return reservationIndex;
     }
     
+    /**
+     * Reserves a code no open session holds; the caller activates it after the insert or releases it
+     */
     private int generateParkingCode() {
-        Random random = new Random();
-        return 100000 + random.nextInt(900000);
+        return parkingCodes.allocate();
     }
     
     private int getUserID(String userName) {
         String qry = "SELECT User_ID FROM users WHERE UserName = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -1113,7 +1160,7 @@ public class SmartParkingController {
     private int getAvailableParkingSpotID() {
         String qry = "SELECT ParkingSpot_ID FROM ParkingSpot WHERE isOccupied = false LIMIT 1";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getInt("ParkingSpot_ID");
@@ -1128,7 +1175,7 @@ public class SmartParkingController {
     private boolean isParkingSpotAvailable(int spotID) {
         String qry = "SELECT isOccupied FROM ParkingSpot WHERE ParkingSpot_ID = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setInt(1, spotID);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -1141,29 +1188,49 @@ public class SmartParkingController {
         return false;
     }
     
+    /**
+     * Goes through the shared occupancy bitmap, which writes the row and tells ParkingController's listener
+     */
     private void updateParkingSpotStatus(int spotID, boolean isOccupied) {
-        String qry = "UPDATE ParkingSpot SET isOccupied = ? WHERE ParkingSpot_ID = ?";
-        
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
-            stmt.setBoolean(1, isOccupied);
-            stmt.setInt(2, spotID);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            System.out.println("Error updating parking spot status: " + e.getMessage());
+        boolean changed = isOccupied ? spots().claim(spotID) : spots().release(spotID);
+        if (!changed) {
+            System.out.println("Parking spot " + spotID + " was already " + (isOccupied ? "occupied" : "free"));
         }
     }
     
-    private void updateSpotOccupancy(int spotId, boolean isOccupied) throws SQLException {
+    private void updateSpotOccupancy(int spotId, boolean isOccupied) {
         updateParkingSpotStatus(spotId, isOccupied);
     }
     
+    /**
+     * Returns the occupancy bitmap, loading it from the database on first use
+     */
+    private SpotOccupancy spots() {
+        if (!spotOccupancy.isLoaded()) {
+            synchronized (spotOccupancy) {
+                if (!spotOccupancy.isLoaded()) {
+                    try {
+                        spotOccupancy.loadFromDatabase();
+                    } catch (SQLException e) {
+                        System.out.println("Error loading parking spots: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return spotOccupancy;
+    }
+    
     private void updateReservationStatus(int reservationCode, String status) {
         String qry = "UPDATE Reservations SET statusEnum = ? WHERE Reservation_code = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setString(1, status);
             stmt.setInt(2, reservationCode);
             stmt.executeUpdate();
+            
+            if (!"preorder".equals(status) && !"active".equals(status)) {
+                reservations().remove(reservationCode);
+            }
         } catch (SQLException e) {
             System.out.println("Error updating reservation status: " + e.getMessage());
         }
@@ -1172,7 +1239,7 @@ public class SmartParkingController {
     private void sendLateExitNotification(int userID) {
         String qry = "SELECT Email, Phone, Name FROM users WHERE User_ID = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(qry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
             stmt.setInt(1, userID);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -1192,7 +1259,7 @@ public class SmartParkingController {
     private boolean isUsernameAvailable(String userName) {
         String checkQry = "SELECT COUNT(*) FROM users WHERE UserName = ?";
         
-        try (PreparedStatement stmt = conn.prepareStatement(checkQry)) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(checkQry)) {
             stmt.setString(1, userName);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
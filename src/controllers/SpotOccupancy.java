@@ -0,0 +1,407 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+/**
+ * SpotOccupancy - authoritative in-memory occupancy of the ParkingSpot table.
+ * One bit per ParkingSpot_ID (set = free). Spots are claimed and released with CAS on the
+ * containing 64-bit word, so two gates can never get the same spot, and the number of free
+ * spots is kept in a counter for O(1) availability checks.
+ *
+ * Changes are written through to ParkingSpot.isOccupied in the background. Several changes to
+ * the same spot before a flush collapse into one UPDATE carrying the latest state.
+ * A pinned spot's row is written by the caller in the same transaction as the session that
+ * caused the change; the background writer leaves it alone until every pin on it is released.
+ *
+ * ParkingController and SmartParkingController share one instance per DataSource (forDataSource),
+ * so every ParkingSpot.isOccupied write goes through the same bitmap.
+ */
+public class SpotOccupancy {
+
+    private static final long RETRY_DELAY_MS = 1_000;
+
+    private static final Map<DataSource, SpotOccupancy> INSTANCES = new IdentityHashMap<>();
+
+    private final DataSource dataSource;
+    private final ScheduledExecutorService writer;
+    private final Set<Integer> dirtySpots = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, Integer> pins = new ConcurrentHashMap<>(); // Spot ID -> number of pins held
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private volatile int spotCount = 0;
+    private final AtomicInteger nextWord = new AtomicInteger(); // Rotating start for allocation scans
+
+    private volatile AtomicLongArray freeBits = new AtomicLongArray(0);
+    private volatile boolean[] knownSpots = new boolean[0];
+    private volatile boolean loaded = false;
+    private volatile ChangeListener changeListener;
+
+    /**
+     * Returns the shared occupancy for a DataSource, creating it (not yet loaded) on first use
+     */
+    public static synchronized SpotOccupancy forDataSource(DataSource dataSource) {
+        return INSTANCES.computeIfAbsent(dataSource, SpotOccupancy::new);
+    }
+
+    /**
+     * @param dataSource Where changes are written through; null keeps the bitmap in memory only
+     */
+    public SpotOccupancy(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "spot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Loading *********************************************************
+
+    /**
+     * Reads every spot and its state from the ParkingSpot table
+     */
+    public synchronized void loadFromDatabase() throws SQLException {
+        flush(); // Do not let a reload overwrite changes that have not reached the table yet
+        List<int[]> rows = new ArrayList<>();
+        String qry = "SELECT ParkingSpot_ID, isOccupied FROM ParkingSpot";
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new int[] { rs.getInt("ParkingSpot_ID"), rs.getBoolean("isOccupied") ? 1 : 0 });
+            }
+        }
+
+        int[] spotIds = new int[rows.size()];
+        boolean[] occupied = new boolean[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            spotIds[i] = rows.get(i)[0];
+            occupied[i] = rows.get(i)[1] == 1;
+        }
+        load(spotIds, occupied);
+    }
+
+    /**
+     * Replaces the bitmap contents
+     * @param spotIds Existing ParkingSpot_ID values
+     * @param occupied Occupancy of each spot, same order as spotIds
+     */
+    public synchronized void load(int[] spotIds, boolean[] occupied) {
+        int maxId = 0;
+        for (int id : spotIds) {
+            maxId = Math.max(maxId, id);
+        }
+
+        AtomicLongArray bits = new AtomicLongArray((maxId >> 6) + 1);
+        boolean[] known = new boolean[maxId + 1];
+        int free = 0;
+        int count = 0;
+        for (int i = 0; i < spotIds.length; i++) {
+            int id = spotIds[i];
+            if (id <= 0) {
+                continue;
+            }
+            if (!known[id]) {
+                count++;
+            }
+            known[id] = true;
+            if (!occupied[i]) {
+                bits.set(id >> 6, bits.get(id >> 6) | (1L << id));
+                free++;
+            }
+        }
+
+        freeBits = bits;
+        knownSpots = known;
+        spotCount = count;
+        freeCount.set(free);
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Queries *********************************************************
+
+    /**
+     * @return number of free spots, O(1)
+     */
+    public int getFreeCount() {
+        return freeCount.get();
+    }
+
+    /**
+     * @return number of spots loaded, O(1)
+     */
+    public int getSpotCount() {
+        return spotCount;
+    }
+
+    /**
+     * @return true if the spot exists and is free right now
+     */
+    public boolean isFree(int spotId) {
+        AtomicLongArray bits = freeBits;
+        return isKnown(spotId) && (bits.get(spotId >> 6) & (1L << spotId)) != 0;
+    }
+
+    /**
+     * Finds a free spot without claiming it (used to suggest a spot for a future reservation)
+     * @return a free spot ID, or -1 if the lot is full
+     */
+    public int peekFree() {
+        AtomicLongArray bits = freeBits;
+        for (int word = 0; word < bits.length(); word++) {
+            long value = bits.get(word);
+            if (value != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(value);
+            }
+        }
+        return -1;
+    }
+
+    // Changes *********************************************************
+
+    /**
+     * Claims any free spot
+     * @return the claimed spot ID, or -1 if the lot is full
+     */
+    public int allocate() {
+        return allocate(false);
+    }
+
+    /**
+     * Claims any free spot and pins it; the caller writes its row and then calls {@link #unpin}
+     * @return the claimed spot ID, or -1 if the lot is full
+     */
+    public int allocatePinned() {
+        return allocate(true);
+    }
+
+    private int allocate(boolean pin) {
+        AtomicLongArray bits = freeBits;
+        int words = bits.length();
+        if (words == 0) {
+            return -1;
+        }
+        // Start each scan at a different word so concurrent gates do not all fight over the first free bit
+        int start = Math.floorMod(nextWord.getAndIncrement(), words);
+        for (int i = 0; i < words; i++) {
+            int word = (start + i) % words;
+            long value;
+            while ((value = bits.get(word)) != 0) {
+                long lowest = value & -value;
+                if (bits.compareAndSet(word, value, value & ~lowest)) {
+                    int spotId = (word << 6) + Long.numberOfTrailingZeros(lowest);
+                    if (pin) {
+                        pin(spotId);
+                    }
+                    int free = freeCount.decrementAndGet();
+                    markDirty(spotId);
+                    notifyChange(spotId, true, free);
+                    return spotId;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Claims a specific spot
+     * @return true if the spot was free and now belongs to the caller
+     */
+    public boolean claim(int spotId) {
+        if (!isKnown(spotId)) {
+            return false;
+        }
+        AtomicLongArray bits = freeBits;
+        int word = spotId >> 6;
+        long mask = 1L << spotId;
+        long value;
+        while (((value = bits.get(word)) & mask) != 0) {
+            if (bits.compareAndSet(word, value, value & ~mask)) {
+                int free = freeCount.decrementAndGet();
+                markDirty(spotId);
+                notifyChange(spotId, true, free);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Claims a specific spot and pins it; the caller writes its row and then calls {@link #unpin}
+     * @return true if the spot was free and now belongs to the caller (false takes no pin)
+     */
+    public boolean claimPinned(int spotId) {
+        pin(spotId);
+        if (claim(spotId)) {
+            return true;
+        }
+        unpin(spotId);
+        return false;
+    }
+
+    /**
+     * Marks a spot free again
+     * @return true if the spot was occupied before the call
+     */
+    public boolean release(int spotId) {
+        if (!isKnown(spotId)) {
+            return false;
+        }
+        AtomicLongArray bits = freeBits;
+        int word = spotId >> 6;
+        long mask = 1L << spotId;
+        long value;
+        while (((value = bits.get(word)) & mask) == 0) {
+            if (bits.compareAndSet(word, value, value | mask)) {
+                int free = freeCount.incrementAndGet();
+                markDirty(spotId);
+                notifyChange(spotId, false, free);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers the listener told about every successful allocate, claim and release (null removes it)
+     */
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    private void notifyChange(int spotId, boolean occupied, int freeSpots) {
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.spotChanged(spotId, occupied, freeSpots);
+        }
+    }
+
+    /**
+     * Keeps the background writer off a spot's row while the caller's transaction writes it.
+     * Pins are counted: each pin needs its own {@link #unpin}.
+     */
+    public void pin(int spotId) {
+        pins.merge(spotId, 1, Integer::sum);
+    }
+
+    /**
+     * Ends a pin; once the last one ends, a change queued meanwhile is written with the spot's latest state
+     */
+    public void unpin(int spotId) {
+        pins.computeIfPresent(spotId, (id, count) -> count > 1 ? count - 1 : null);
+        if (!isPinned(spotId) && dirtySpots.contains(spotId)) {
+            scheduleFlush(0);
+        }
+    }
+
+    private boolean isPinned(int spotId) {
+        return pins.containsKey(spotId);
+    }
+
+    private boolean isKnown(int spotId) {
+        boolean[] known = knownSpots;
+        return spotId > 0 && spotId < known.length && known[spotId];
+    }
+
+    // Write-through ***************************************************
+
+    private void markDirty(int spotId) {
+        if (dataSource == null || isPinned(spotId)) {
+            return;
+        }
+        dirtySpots.add(spotId);
+        scheduleFlush(0);
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                writer.schedule(this::backgroundFlush, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false); // Shut down
+            }
+        }
+    }
+
+    private void backgroundFlush() {
+        flushScheduled.set(false);
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.out.println("Error writing parking spot status: " + e.getMessage());
+            scheduleFlush(RETRY_DELAY_MS);
+        }
+    }
+
+    /**
+     * Writes the current state of every changed spot to the ParkingSpot table
+     */
+    public synchronized void flush() throws SQLException {
+        if (dataSource == null || dirtySpots.isEmpty()) {
+            return;
+        }
+        List<Integer> batch = new ArrayList<>(dirtySpots);
+        batch.removeIf(this::isPinned); // Written by their transaction; flushed after unpin if still dirty
+        if (batch.isEmpty()) {
+            return;
+        }
+        dirtySpots.removeAll(batch);
+
+        String qry = "UPDATE ParkingSpot SET isOccupied = ? WHERE ParkingSpot_ID = ?";
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(qry)) {
+            for (int spotId : batch) {
+                // Read the bit now, so the row always ends up with the latest state
+                stmt.setBoolean(1, !isFree(spotId));
+                stmt.setInt(2, spotId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            dirtySpots.addAll(batch);
+            throw e;
+        }
+    }
+
+    /**
+     * Flushes outstanding changes and stops the writer thread; forDataSource then creates a new instance
+     */
+    public void shutdown() {
+        synchronized (SpotOccupancy.class) {
+            INSTANCES.remove(dataSource, this);
+        }
+        writer.shutdown();
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.out.println("Error writing parking spot status on shutdown: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Receives occupancy changes on the thread that made them, so it must not block
+     */
+    public interface ChangeListener {
+        void spotChanged(int spotId, boolean occupied, int freeSpots);
+    }
+}
@@ -12,8 +12,11 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
 
 import client.BParkClientApp;
+import client.ClientMessageHandler;
+import entities.HistoryPage;
 import entities.Message;
 import entities.Message.MessageType;
 import entities.ParkingOrder;
@@ -56,6 +59,7 @@ public class SubscriberController implements Initializable {
     @FXML private VBox mainContent;
     
     private ObservableList<ParkingOrder> parkingHistory = FXCollections.observableArrayList();
+    private final Consumer<HistoryPage> historyChunkListener = this::appendHistoryChunk;
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -182,10 +186,26 @@ public class SubscriberController implements Initializable {
     
     @FXML
     private void handleViewHistory() {
-        Message msg = new Message(MessageType.GET_PARKING_HISTORY, BParkClientApp.getCurrentUser());
+        // The history arrives in chunks that are appended as they come, newest first
+        parkingHistory.clear();
+        ClientMessageHandler.removeHistoryChunkListener(historyChunkListener);
+        ClientMessageHandler.addHistoryChunkListener(historyChunkListener);
+        Message msg = new Message(MessageType.STREAM_PARKING_HISTORY, BParkClientApp.getCurrentUser());
         BParkClientApp.sendMessage(msg);
     }
     
+    private void appendHistoryChunk(HistoryPage chunk) {
+        if (chunk.isFailed()) {
+            ClientMessageHandler.removeHistoryChunkListener(historyChunkListener);
+            showAlert("Error", chunk.getError());
+            return;
+        }
+        parkingHistory.addAll(chunk.getOrders());
+        if (chunk.isLast()) {
+            ClientMessageHandler.removeHistoryChunkListener(historyChunkListener);
+        }
+    }
+    
     @FXML
     private void handleLostCode() {
         Message msg = new Message(MessageType.REQUEST_LOST_CODE, BParkClientApp.getCurrentUser());
@@ -0,0 +1,140 @@
+package controllers;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import entities.ParkingSubscriber;
+
+/**
+ * UserCache - the most recently used rows of the users table, found by UserName or by User_ID.
+ * Holds at most a fixed number of users and drops the least recently used one beyond that.
+ *
+ * Only rows that exist are cached. Controllers invalidate a user whenever they write the row.
+ * A read races with such a write, so puts carry the generation taken before the SELECT and are
+ * dropped if any user was invalidated since (the row read may predate the write).
+ * Every operation is O(1) under the cache's lock.
+ * One cache is shared by all controllers on the same DataSource.
+ */
+public class UserCache {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Map<DataSource, UserCache> CACHES = new IdentityHashMap<>();
+
+    private final int capacity;
+    private final LinkedHashMap<String, ParkingSubscriber> byUserName; // Access order: eldest is least recently used
+    private final Map<Integer, ParkingSubscriber> byUserID = new HashMap<>();
+    private long generation = 0; // Bumped by every invalidate
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Returns the shared cache for a DataSource, creating it on first use
+     */
+    public static synchronized UserCache forDataSource(DataSource dataSource) {
+        return CACHES.computeIfAbsent(dataSource, ds -> new UserCache(DEFAULT_CAPACITY));
+    }
+
+    public UserCache(int capacity) {
+        this.capacity = capacity;
+        this.byUserName = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return the cached user, or null on a miss
+     */
+    public synchronized ParkingSubscriber get(String userName) {
+        ParkingSubscriber user = byUserName.get(userName);
+        if (user == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return user;
+    }
+
+    /**
+     * @return the cached user, or null on a miss
+     */
+    public synchronized ParkingSubscriber get(int userID) {
+        ParkingSubscriber user = byUserID.get(userID);
+        if (user == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        byUserName.get(user.getSubscriberCode()); // Mark as recently used
+        hits.incrementAndGet();
+        return user;
+    }
+
+    /**
+     * @return the current generation; take it before reading a row to put
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a user row just read from the database, unless a user was invalidated since the read began
+     * @param readGeneration generation() from before the row was read
+     */
+    public synchronized void put(ParkingSubscriber user, long readGeneration) {
+        if (readGeneration != generation) {
+            return;
+        }
+        ParkingSubscriber previous = byUserName.put(user.getSubscriberCode(), user);
+        if (previous != null && previous.getSubscriberID() != user.getSubscriberID()) {
+            byUserID.remove(previous.getSubscriberID());
+        }
+        byUserID.put(user.getSubscriberID(), user);
+
+        if (byUserName.size() > capacity) {
+            Iterator<ParkingSubscriber> eldest = byUserName.values().iterator();
+            byUserID.remove(eldest.next().getSubscriberID());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Forgets a user whose row was written
+     */
+    public synchronized void invalidate(String userName) {
+        generation++;
+        ParkingSubscriber user = byUserName.remove(userName);
+        if (user != null) {
+            byUserID.remove(user.getSubscriberID());
+        }
+    }
+
+    public synchronized int size() {
+        return byUserName.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public String getStatistics() {
+        long lookups = hits.get() + misses.get();
+        return String.format("UserCache{size=%d/%d hits=%d misses=%d hitRate=%.1f%% evictions=%d}",
+            size(), capacity, hits.get(), misses.get(),
+            lookups == 0 ? 0.0 : 100.0 * hits.get() / lookups, evictions.get());
+    }
+}
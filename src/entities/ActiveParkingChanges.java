@@ -0,0 +1,79 @@
+package entities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Changes to the active parking sessions between a client's version cursor and the server's
+ * current version (answer to GET_ACTIVE_PARKING_CHANGES).
+ * When the cursor is too old for the server's change log, snapshot is true and
+ * inserted holds every active session; the client replaces its list with it.
+ */
+public class ActiveParkingChanges implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long version; // Cursor to send with the next request
+    private boolean snapshot;
+    private ArrayList<ParkingOrder> inserted = new ArrayList<>();
+    private ArrayList<ParkingOrder> updated = new ArrayList<>();
+    private ArrayList<String> removed = new ArrayList<>(); // Parking codes
+
+    // Constructors
+    public ActiveParkingChanges() {}
+
+    public ActiveParkingChanges(long version, boolean snapshot) {
+        this.version = version;
+        this.snapshot = snapshot;
+    }
+
+    // Getters and Setters
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public ArrayList<ParkingOrder> getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(ArrayList<ParkingOrder> inserted) {
+        this.inserted = inserted;
+    }
+
+    public ArrayList<ParkingOrder> getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(ArrayList<ParkingOrder> updated) {
+        this.updated = updated;
+    }
+
+    public ArrayList<String> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(ArrayList<String> removed) {
+        this.removed = removed;
+    }
+
+    public boolean isEmpty() {
+        return !snapshot && inserted.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ActiveParkingChanges{version=" + version + (snapshot ? " snapshot" : "")
+            + " +" + inserted.size() + " ~" + updated.size() + " -" + removed.size() + "}";
+    }
+}
@@ -0,0 +1,80 @@
+package entities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * One page of a subscriber's parking history, newest first
+ * (answer to GET_PARKING_HISTORY_PAGE, and each chunk of STREAM_PARKING_HISTORY).
+ * nextCursor marks where the page ended; send it back to get the following page.
+ * It is null on the last page.
+ * A page with an error means the history could not be read; it holds no orders and is the last page.
+ */
+public class HistoryPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private ArrayList<ParkingOrder> orders = new ArrayList<>();
+    private String nextCursor;
+    private String error;
+
+    // Constructors
+    public HistoryPage() {}
+
+    public HistoryPage(ArrayList<ParkingOrder> orders, String nextCursor) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+    }
+
+    public HistoryPage(ArrayList<ParkingOrder> orders, String nextCursor, String error) {
+        this(orders, nextCursor);
+        this.error = error;
+    }
+
+    /**
+     * A page telling the client that its history could not be read
+     */
+    public static HistoryPage failed(String error) {
+        return new HistoryPage(new ArrayList<>(), null, error);
+    }
+
+    // Getters and Setters
+    public ArrayList<ParkingOrder> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(ArrayList<ParkingOrder> orders) {
+        this.orders = orders;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    public boolean isLast() {
+        return nextCursor == null;
+    }
+
+    @Override
+    public String toString() {
+        if (isFailed()) {
+            return "HistoryPage{failed: " + error + "}";
+        }
+        return "HistoryPage{" + orders.size() + " orders" + (isLast() ? ", last" : ", next=" + nextCursor) + "}";
+    }
+}
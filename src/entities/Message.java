@@ -23,6 +23,12 @@ public class Message implements Serializable {
      */
     private Serializable content;
 
+    /**
+     * Identifies a request and its response, so a client can have several requests
+     * outstanding at once (0 = not correlated)
+     */
+    private int correlationId;
+
     /**
      * The message type enumeration for parking system operations.
      */
@@ -206,7 +212,67 @@ public class Message implements Serializable {
         /**
          * Cancellation response  
          */
-        CANCELLATION_RESPONSE
+        CANCELLATION_RESPONSE,
+        /**
+         * Start receiving PARKING_UPDATE pushes (answered with a SNAPSHOT update)
+         */
+        SUBSCRIBE_PARKING_UPDATES,
+        /**
+         * Stop receiving PARKING_UPDATE pushes
+         */
+        UNSUBSCRIBE_PARKING_UPDATES,
+        /**
+         * Pushed by the server on every occupancy or session change (content is a ParkingEvent)
+         */
+        PARKING_UPDATE,
+        /**
+         * Get active parkings changed since a version (content is the version, "" for everything)
+         */
+        GET_ACTIVE_PARKING_CHANGES,
+        /**
+         * Active parking changes response (content is an ActiveParkingChanges)
+         */
+        ACTIVE_PARKING_CHANGES_RESPONSE,
+        /**
+         * Server hint that cached replies are stale, sent before the reply to the request that
+         * changed them (content is an ArrayList<String> of cache keys: the request type name,
+         * followed by ':' and the request content when it has one)
+         */
+        CACHE_INVALIDATE,
+        /**
+         * Get one page of parking history (content is "userName" for the first page,
+         * or "userName,cursor" with the previous page's nextCursor)
+         */
+        GET_PARKING_HISTORY_PAGE,
+        /**
+         * Parking history page response (content is a HistoryPage)
+         */
+        PARKING_HISTORY_PAGE_RESPONSE,
+        /**
+         * Stream a user's whole parking history (content is the userName);
+         * answered by PARKING_HISTORY_CHUNK messages until one has no nextCursor
+         */
+        STREAM_PARKING_HISTORY,
+        /**
+         * One chunk of a streamed parking history (content is a HistoryPage)
+         */
+        PARKING_HISTORY_CHUNK,
+        /**
+         * Get the server's request counts and latencies per operation (no content; managers only)
+         */
+        GET_SERVER_METRICS,
+        /**
+         * Server metrics response (content is a String in the Prometheus text format)
+         */
+        SERVER_METRICS_RESPONSE,
+        /**
+         * Get the SQL statement statistics and slow-query log (no content; managers only)
+         */
+        GET_QUERY_STATS,
+        /**
+         * SQL statement statistics response (content is a readable report String)
+         */
+        QUERY_STATS_RESPONSE
     }
 
     // Constructors ******************************************************
@@ -258,4 +324,22 @@ public class Message implements Serializable {
     public void setContent(Serializable content) {
         this.content = content;
     }
+
+    /**
+     * Returns the correlation ID of the message.
+     * 
+     * @return the ID shared by a request and its response, or 0 if there is none
+     */
+    public int getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * Sets the correlation ID of the message.
+     * 
+     * @param correlationId the ID shared by a request and its response
+     */
+    public void setCorrelationId(int correlationId) {
+        this.correlationId = correlationId;
+    }
 }
\ No newline at end of file
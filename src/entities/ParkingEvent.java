@@ -0,0 +1,126 @@
+package entities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * A change in the parking lot pushed by the server to clients that subscribed
+ * with SUBSCRIBE_PARKING_UPDATES. Every event carries the number of free spots
+ * after the change, so occupancy displays never need to ask for it.
+ */
+public class ParkingEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum EventType {
+        /**
+         * Full state sent once right after subscribing; later events apply on top of it
+         */
+        SNAPSHOT,
+        SPOT_OCCUPIED,
+        SPOT_FREED,
+        SESSION_STARTED,
+        SESSION_ENDED,
+        SESSION_EXTENDED
+    }
+
+    private EventType type;
+    private int spotId; // 0 when the event is not about one spot
+    private String parkingCode;
+    private ParkingOrder order; // The session as it is now (SESSION_STARTED, SESSION_EXTENDED)
+    private ArrayList<ParkingOrder> activeParkings; // SNAPSHOT only
+    private int availableSpots;
+    private long version; // Active parking log version after a session change or SNAPSHOT, 0 otherwise
+
+    // Constructors
+    public ParkingEvent() {}
+
+    public ParkingEvent(EventType type, int availableSpots) {
+        this.type = type;
+        this.availableSpots = availableSpots;
+    }
+
+    public static ParkingEvent spotChanged(int spotId, boolean occupied, int availableSpots) {
+        ParkingEvent event = new ParkingEvent(occupied ? EventType.SPOT_OCCUPIED : EventType.SPOT_FREED, availableSpots);
+        event.setSpotId(spotId);
+        return event;
+    }
+
+    public static ParkingEvent session(EventType type, String parkingCode, int spotId, ParkingOrder order, int availableSpots) {
+        ParkingEvent event = new ParkingEvent(type, availableSpots);
+        event.setParkingCode(parkingCode);
+        event.setSpotId(spotId);
+        event.setOrder(order);
+        return event;
+    }
+
+    public static ParkingEvent snapshot(ArrayList<ParkingOrder> activeParkings, long version, int availableSpots) {
+        ParkingEvent event = new ParkingEvent(EventType.SNAPSHOT, availableSpots);
+        event.setActiveParkings(activeParkings);
+        event.setVersion(version);
+        return event;
+    }
+
+    // Getters and Setters
+    public EventType getType() {
+        return type;
+    }
+
+    public void setType(EventType type) {
+        this.type = type;
+    }
+
+    public int getSpotId() {
+        return spotId;
+    }
+
+    public void setSpotId(int spotId) {
+        this.spotId = spotId;
+    }
+
+    public String getParkingCode() {
+        return parkingCode;
+    }
+
+    public void setParkingCode(String parkingCode) {
+        this.parkingCode = parkingCode;
+    }
+
+    public ParkingOrder getOrder() {
+        return order;
+    }
+
+    public void setOrder(ParkingOrder order) {
+        this.order = order;
+    }
+
+    public ArrayList<ParkingOrder> getActiveParkings() {
+        return activeParkings;
+    }
+
+    public void setActiveParkings(ArrayList<ParkingOrder> activeParkings) {
+        this.activeParkings = activeParkings;
+    }
+
+    public int getAvailableSpots() {
+        return availableSpots;
+    }
+
+    public void setAvailableSpots(int availableSpots) {
+        this.availableSpots = availableSpots;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return "ParkingEvent{" + type + (parkingCode != null ? " code=" + parkingCode : "")
+            + (spotId > 0 ? " spot=" + spotId : "") + " free=" + availableSpots
+            + (version != 0 ? " v" + version : "") + "}";
+    }
+}
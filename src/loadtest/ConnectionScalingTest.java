@@ -0,0 +1,246 @@
+package loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import common.FrameCodec;
+import server.ParkingServer;
+import server.ServerMode;
+
+/**
+ * ConnectionScalingTest - compares the platform-thread, virtual-thread and NIO server modes.
+ * For each mode and connection count it starts a ParkingServer in this JVM, opens N idle clients,
+ * and reports memory, live OS threads and ping round-trip latency (p50/p99).
+ *
+ * Usage: ConnectionScalingTest [counts=100,1000,5000] [modes=platform,virtual,nio] [samples=5000]
+ * Client sockets live in the same process, so compare the deltas between modes, not absolute numbers.
+ * Large counts need a raised open-file limit (ulimit -n).
+ */
+public class ConnectionScalingTest {
+
+    private static final int PINGER_THREADS = 16;
+
+    public static void main(String[] args) throws Exception {
+        int[] counts = Arrays.stream((args.length > 0 ? args[0] : "100,1000,5000").split(","))
+            .mapToInt(c -> Integer.parseInt(c.trim())).toArray();
+        String[] modes = (args.length > 1 ? args[1] : "platform,virtual,nio").split(",");
+        int samples = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+
+        System.out.println(String.format("%-9s %8s %10s %10s %10s %10s %10s",
+            "mode", "clients", "heap MB", "rss MB", "threads", "p50 us", "p99 us"));
+
+        for (String modeOption : modes) {
+            ServerMode mode = ServerMode.fromOption(modeOption);
+            for (int count : counts) {
+                System.out.println(runScenario(mode, count, samples));
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Runs one mode/connection-count combination and returns the result row
+     */
+    private static String runScenario(ServerMode mode, int connections, int samples) throws Exception {
+        int port = findFreePort();
+        ParkingServer server = new ParkingServer(port, mode);
+        server.start();
+
+        settle();
+        long heapBefore = usedHeap();
+        long rssBefore = residentSetSize();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        List<PingClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                clients.add(mode == ServerMode.NIO ? new FramedPingClient(port) : new ObjectStreamPingClient(port));
+            }
+
+            settle();
+            long heapDelta = usedHeap() - heapBefore;
+            long rssDelta = residentSetSize() - rssBefore;
+            int threadDelta = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+
+            long[] latencies = measurePings(clients, samples);
+            Arrays.sort(latencies);
+
+            return String.format("%-9s %8d %10.1f %10.1f %10d %10d %10d",
+                mode.getOptionName(), connections,
+                heapDelta / 1048576.0, rssDelta / 1048576.0, threadDelta,
+                Latencies.percentile(latencies, 0.50) / 1000, Latencies.percentile(latencies, 0.99) / 1000);
+        } catch (IOException e) {
+            return String.format("%-9s %8d failed after %d connections: %s",
+                mode.getOptionName(), connections, clients.size(), e.getMessage());
+        } finally {
+            for (PingClient client : clients) {
+                client.close();
+            }
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Sends ping requests from several threads at once, each thread using its own subset of clients
+     */
+    private static long[] measurePings(List<PingClient> clients, int samples) throws Exception {
+        int pingers = Math.min(PINGER_THREADS, clients.size());
+        int perPinger = Math.max(1, samples / pingers);
+        ExecutorService pool = Executors.newFixedThreadPool(pingers);
+        List<Future<long[]>> results = new ArrayList<>();
+
+        for (int p = 0; p < pingers; p++) {
+            // Pinger p owns clients p, p + pingers, p + 2 * pingers, ...
+            List<PingClient> owned = new ArrayList<>();
+            for (int i = p; i < clients.size(); i += pingers) {
+                owned.add(clients.get(i));
+            }
+            results.add(pool.submit(() -> {
+                long[] times = new long[perPinger];
+                for (int i = 0; i < perPinger; i++) {
+                    times[i] = owned.get(i % owned.size()).ping();
+                }
+                return times;
+            }));
+        }
+
+        long[] all = new long[perPinger * pingers];
+        int position = 0;
+        for (Future<long[]> result : results) {
+            long[] times = result.get();
+            System.arraycopy(times, 0, all, position, times.length);
+            position += times.length;
+        }
+        pool.shutdown();
+        return all;
+    }
+
+    private static void settle() throws InterruptedException {
+        Thread.sleep(500);
+        System.gc();
+        Thread.sleep(200);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Resident set size of this process (Linux only, 0 elsewhere)
+     */
+    private static long residentSetSize() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not available on this platform
+        }
+        return 0;
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Client that only sends "ping" and waits for "pong"
+     */
+    private interface PingClient {
+        /**
+         * @return round-trip time in nanoseconds
+         */
+        long ping() throws IOException, ClassNotFoundException;
+
+        void close();
+    }
+
+    /**
+     * Minimal OCSF-compatible client speaking the object-stream protocol
+     */
+    private static class ObjectStreamPingClient implements PingClient {
+        private final Socket socket;
+        private final ObjectOutputStream output;
+        private final ObjectInputStream input;
+
+        ObjectStreamPingClient(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            output = new ObjectOutputStream(socket.getOutputStream());
+            output.flush();
+            input = new ObjectInputStream(socket.getInputStream());
+        }
+
+        @Override
+        public synchronized long ping() throws IOException, ClassNotFoundException {
+            long start = System.nanoTime();
+            output.writeObject("ping");
+            output.flush();
+            output.reset();
+            input.readObject();
+            return System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Client speaking the length-prefixed frame protocol of the NIO transport
+     */
+    private static class FramedPingClient implements PingClient {
+        private final Socket socket;
+        private final DataOutputStream output;
+        private final DataInputStream input;
+
+        FramedPingClient(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        @Override
+        public synchronized long ping() throws IOException, ClassNotFoundException {
+            long start = System.nanoTime();
+            FrameCodec.writeFrame(output, "ping");
+            FrameCodec.readFrame(input);
+            return System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package loadtest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import services.EmailService;
+import services.LocalSmtpServer;
+
+/**
+ * EmailPipelineTest - sends notifications through EmailService to an in-process LocalSmtpServer.
+ * Measures how long callers are blocked (queueing only) and how long delivery takes, and checks
+ * that every email arrives, that failed sends are retried, and that sender connections are reused.
+ * Runs offline; needs javax.mail on the classpath.
+ *
+ * Usage: EmailPipelineTest [emails=200] [injectedFailures=3]
+ * Exits with status 1 if an email was lost.
+ */
+public class EmailPipelineTest {
+
+    public static void main(String[] args) throws Exception {
+        int emails = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int failures = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        // Must be set before EmailService is first used
+        Path outbox = Files.createTempDirectory("bpark-outbox");
+        System.setProperty("bpark.mail.outbox", outbox.toString());
+
+        LocalSmtpServer smtp = new LocalSmtpServer(0);
+        smtp.failNextMessages(failures);
+        EmailService.useSmtpServer("localhost", smtp.getPort(), false);
+
+        long worstEnqueueNanos = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < emails; i++) {
+            long before = System.nanoTime();
+            boolean queued = EmailService.sendReservationCancelled("driver" + i + "@example.com", "Driver " + i, String.valueOf(1000 + i));
+            worstEnqueueNanos = Math.max(worstEnqueueNanos, System.nanoTime() - before);
+            if (!queued) {
+                System.out.println("Email " + i + " was not queued");
+            }
+        }
+        long enqueueNanos = System.nanoTime() - start;
+
+        int delivered = 0;
+        while (delivered < emails && smtp.poll(30, TimeUnit.SECONDS) != null) {
+            delivered++;
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("emails=%d injected-failures=%d", emails, failures));
+        System.out.println(String.format("caller time: total %.1f ms, avg %.3f ms, worst %.3f ms",
+            enqueueNanos / 1e6, enqueueNanos / 1e6 / emails, worstEnqueueNanos / 1e6));
+        System.out.println(String.format("delivered=%d in %.1f ms over %d SMTP connections, still pending=%d",
+            delivered, totalNanos / 1e6, smtp.getConnectionCount(), EmailService.getPendingCount()));
+
+        EmailService.shutdown();
+        smtp.close();
+
+        boolean ok = delivered == emails;
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,469 @@
+package loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import common.FrameCodec;
+import common.MessageCodec;
+import entities.Message;
+import entities.Message.MessageType;
+
+/**
+ * GateTrafficLoadTest - closed-loop load generator for a running ParkingServer.
+ * Opens N gate, subscriber and attendant connections; each sends one request, waits for its reply,
+ * thinks for an exponentially distributed time and sends the next, so the offered load follows
+ * the server: raising the connection count until latency climbs gives the capacity of one server.
+ *
+ * - Gates: enterParking for a random subscriber, then for a car already inside either
+ *   extendParking or exitParking; entries take the given share of gate events while the gate has
+ *   cars inside, and a gate never holds more than 8.
+ * - Subscribers: SUBSCRIBER_LOGIN once, then RESERVE_PARKING two days ahead, ACTIVATE_RESERVATION
+ *   of that reservation and exitParking of the session it opened, with CHECK_PARKING_AVAILABILITY
+ *   in between.
+ * - Attendants: GET_ACTIVE_PARKINGS and CHECK_PARKING_AVAILABILITY.
+ *
+ * Reports, per MessageType or string command, the replies counted after warm-up, how many the server
+ * rejected (an error text instead of a result), throughput and latency percentiles.
+ * Creates real sessions and reservations, so point it at a test database; subscribers must exist.
+ *
+ * Usage: GateTrafficLoadTest users=sub1,sub2,... [host=localhost] [port=5555] [transport=object|framed]
+ *        [gates=20] [subscribers=10] [attendants=2] [thinkMs=100] [entryShare=0.5] [extendShare=0.2]
+ *        [warmup=10] [seconds=60]
+ * transport=framed is for a server started in NIO mode. Exits with status 1 if a connection failed.
+ */
+public class GateTrafficLoadTest {
+
+    private static final int MAX_CARS_PER_GATE = 8;
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final DateTimeFormatter RESERVATION_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        if (!options.containsKey("users")) {
+            System.out.println("Usage: GateTrafficLoadTest users=sub1,sub2,... [host=localhost] [port=5555] [transport=object|framed]");
+            System.out.println("       [gates=20] [subscribers=10] [attendants=2] [thinkMs=100] [entryShare=0.5] [extendShare=0.2]");
+            System.out.println("       [warmup=10] [seconds=60]");
+            System.exit(2);
+        }
+
+        Config config = new Config(options);
+        long start = System.nanoTime();
+        config.measureFrom = start + config.warmupSeconds * 1_000_000_000L;
+        config.measureUntil = config.measureFrom + config.seconds * 1_000_000_000L;
+
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < config.gates; i++) {
+            workers.add(new Worker(config, Role.GATE, i));
+        }
+        for (int i = 0; i < config.subscribers; i++) {
+            workers.add(new Worker(config, Role.SUBSCRIBER, i));
+        }
+        for (int i = 0; i < config.attendants; i++) {
+            workers.add(new Worker(config, Role.ATTENDANT, i));
+        }
+
+        System.out.println("Running " + workers.size() + " connections against " + config.host + ":" + config.port
+            + " (" + config.warmupSeconds + "s warm-up, " + config.seconds + "s measured)");
+        List<Thread> threads = new ArrayList<>();
+        for (Worker worker : workers) {
+            Thread thread = new Thread(worker, worker.name);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        report(workers, config.seconds);
+        boolean failed = workers.stream().anyMatch(w -> w.failure != null);
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static void report(List<Worker> workers, int seconds) {
+        Map<String, Stats> merged = new TreeMap<>();
+        for (Worker worker : workers) {
+            if (worker.failure != null) {
+                System.out.println(worker.name + " failed: " + worker.failure);
+            }
+            worker.stats.forEach((operation, stats) -> merged.computeIfAbsent(operation, o -> new Stats()).addAll(stats));
+        }
+
+        System.out.println(String.format("%-28s %9s %9s %10s %9s %9s %9s %9s",
+            "operation", "replies", "rejected", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        long total = 0;
+        long gateEvents = 0;
+        for (Map.Entry<String, Stats> entry : merged.entrySet()) {
+            Stats stats = entry.getValue();
+            long[] sorted = stats.sorted();
+            total += sorted.length;
+            if (entry.getKey().equals("enterParking") || entry.getKey().equals("exitParking")
+                    || entry.getKey().equals("extendParking")) {
+                gateEvents += sorted.length;
+            }
+            System.out.println(String.format("%-28s %9d %9d %10.1f %9.2f %9.2f %9.2f %9.2f",
+                entry.getKey(), sorted.length, stats.rejected, (double) sorted.length / seconds,
+                Latencies.percentile(sorted, 0.50) / 1e6, Latencies.percentile(sorted, 0.90) / 1e6,
+                Latencies.percentile(sorted, 0.99) / 1e6, Latencies.percentile(sorted, 1.0) / 1e6));
+        }
+        System.out.println(String.format("Total %.1f requests/s, %.1f gate events/s", (double) total / seconds,
+            (double) gateEvents / seconds));
+    }
+
+    private enum Role {
+        GATE, SUBSCRIBER, ATTENDANT
+    }
+
+    private static class Config {
+        final String[] users;
+        final String host;
+        final int port;
+        final boolean framed;
+        final int gates;
+        final int subscribers;
+        final int attendants;
+        final double thinkMs;
+        final double entryShare;
+        final double extendShare;
+        final int warmupSeconds;
+        final int seconds;
+        long measureFrom;
+        long measureUntil;
+
+        Config(Map<String, String> options) {
+            users = options.get("users").split(",");
+            host = options.getOrDefault("host", "localhost");
+            port = Integer.parseInt(options.getOrDefault("port", "5555"));
+            framed = options.getOrDefault("transport", "object").equals("framed");
+            gates = Integer.parseInt(options.getOrDefault("gates", "20"));
+            subscribers = Integer.parseInt(options.getOrDefault("subscribers", "10"));
+            attendants = Integer.parseInt(options.getOrDefault("attendants", "2"));
+            thinkMs = Double.parseDouble(options.getOrDefault("thinkMs", "100"));
+            entryShare = Double.parseDouble(options.getOrDefault("entryShare", "0.5"));
+            extendShare = Double.parseDouble(options.getOrDefault("extendShare", "0.2"));
+            warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+            seconds = Integer.parseInt(options.getOrDefault("seconds", "60"));
+        }
+    }
+
+    /**
+     * Latencies of one operation on one connection
+     */
+    private static class Stats {
+        long[] samples = new long[256];
+        int count;
+        long rejected;
+
+        void add(long nanos, boolean wasRejected) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+            if (wasRejected) {
+                rejected++;
+            }
+        }
+
+        void addAll(Stats other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.samples[i], false);
+            }
+            rejected += other.rejected;
+        }
+
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(samples, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * One simulated terminal with its own connection and thread
+     */
+    private static class Worker implements Runnable {
+        final Config config;
+        final Role role;
+        final String name;
+        final String user;
+        final Map<String, Stats> stats = new HashMap<>();
+        final List<String> carsInside = new ArrayList<>();
+        volatile String failure;
+
+        private Connection connection;
+        private int lastCorrelationId;
+
+        Worker(Config config, Role role, int index) {
+            this.config = config;
+            this.role = role;
+            this.name = role.name().toLowerCase() + "-" + index;
+            this.user = config.users[index % config.users.length];
+        }
+
+        @Override
+        public void run() {
+            try {
+                connection = config.framed ? new FramedConnection(config) : new ObjectStreamConnection(config);
+                connection.send(MessageCodec.hello());
+                connection.receive(); // Codec answer
+                if (role == Role.SUBSCRIBER) {
+                    request(MessageType.SUBSCRIBER_LOGIN, user);
+                }
+                while (System.nanoTime() < config.measureUntil) {
+                    switch (role) {
+                    case GATE:
+                        gateEvent();
+                        break;
+                    case SUBSCRIBER:
+                        subscriberVisit();
+                        break;
+                    case ATTENDANT:
+                        request(MessageType.GET_ACTIVE_PARKINGS, null);
+                        think();
+                        request(MessageType.CHECK_PARKING_AVAILABILITY, null);
+                        break;
+                    }
+                    think();
+                }
+                // Drive the cars still inside out, so repeated runs start from the same lot
+                for (String code : carsInside) {
+                    command("exitParking", "exitParking " + code);
+                }
+            } catch (Exception e) {
+                failure = e.toString();
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+
+        private void gateEvent() throws Exception {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            boolean enter = carsInside.isEmpty()
+                || (carsInside.size() < MAX_CARS_PER_GATE && random.nextDouble() < config.entryShare);
+            if (enter) {
+                String reply = command("enterParking", "enterParking " + config.users[random.nextInt(config.users.length)]);
+                String code = field(reply, "Parking code: ");
+                if (code != null) {
+                    carsInside.add(code);
+                }
+                return;
+            }
+            int car = random.nextInt(carsInside.size());
+            if (random.nextDouble() < config.extendShare) {
+                command("extendParking", "extendParking " + carsInside.get(car) + " 1");
+            } else {
+                command("exitParking", "exitParking " + carsInside.remove(car));
+            }
+        }
+
+        private void subscriberVisit() throws Exception {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            LocalDateTime when = LocalDateTime.now().plusDays(2).withMinute(0).withSecond(0).withNano(0)
+                .withHour(8 + random.nextInt(10));
+            Message reserved = request(MessageType.RESERVE_PARKING, user + "," + when.format(RESERVATION_TIME));
+            String reservationCode = field(String.valueOf(reserved.getContent()), "Confirmation code: ");
+            think();
+            request(MessageType.CHECK_PARKING_AVAILABILITY, null);
+            if (reservationCode == null) {
+                return;
+            }
+            think();
+            Message activated = request(MessageType.ACTIVATE_RESERVATION, user + "," + reservationCode);
+            String parkingCode = field(String.valueOf(activated.getContent()), "Parking code: ");
+            if (parkingCode != null) {
+                think();
+                command("exitParking", "exitParking " + parkingCode);
+            }
+        }
+
+        private void think() throws InterruptedException {
+            if (config.thinkMs > 0) {
+                double pause = -config.thinkMs * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+                Thread.sleep((long) pause);
+            }
+        }
+
+        /**
+         * Sends a Message request and waits for the reply carrying its correlation ID
+         */
+        private Message request(MessageType type, Serializable content) throws Exception {
+            Message msg = new Message(type, content);
+            msg.setCorrelationId(++lastCorrelationId);
+            long start = System.nanoTime();
+            connection.send(MessageCodec.encode(msg));
+            while (true) {
+                Object reply = decode(connection.receive());
+                if (reply instanceof Message && ((Message) reply).getCorrelationId() == msg.getCorrelationId()) {
+                    record(type.name(), start, isRejected(((Message) reply).getContent()));
+                    return (Message) reply;
+                }
+                // Cache hints and pushes are not replies
+            }
+        }
+
+        /**
+         * Sends a string command and waits for the next string reply
+         */
+        private String command(String operation, String command) throws Exception {
+            long start = System.nanoTime();
+            connection.send(command);
+            while (true) {
+                Object reply = decode(connection.receive());
+                if (reply instanceof String) {
+                    record(operation, start, isRejected(reply));
+                    return (String) reply;
+                }
+            }
+        }
+
+        private void record(String operation, long start, boolean rejected) {
+            long end = System.nanoTime();
+            if (start >= config.measureFrom && end <= config.measureUntil) {
+                stats.computeIfAbsent(operation, o -> new Stats()).add(end - start, rejected);
+            }
+        }
+
+        private static Object decode(Object received) throws Exception {
+            if (received instanceof byte[]) {
+                byte[] bytes = (byte[]) received;
+                if (MessageCodec.isBinary(bytes)) {
+                    return MessageCodec.decode(bytes);
+                }
+                return FrameCodec.decodePayload(bytes);
+            }
+            return received;
+        }
+
+        private static boolean isRejected(Object content) {
+            if (!(content instanceof String)) {
+                return content == null;
+            }
+            String text = ((String) content).toLowerCase();
+            return text.contains("fail") || text.contains("invalid") || text.contains("error")
+                || text.contains("no parking") || text.contains("no available") || text.contains("not ");
+        }
+
+        /**
+         * @return the number following a label in a reply text, or null
+         */
+        private static String field(String text, String label) {
+            int start = text == null ? -1 : text.indexOf(label);
+            if (start == -1) {
+                return null;
+            }
+            start += label.length();
+            int end = start;
+            while (end < text.length() && Character.isDigit(text.charAt(end))) {
+                end++;
+            }
+            return end > start ? text.substring(start, end) : null;
+        }
+    }
+
+    /**
+     * A client socket speaking one of the server's transports
+     */
+    private interface Connection {
+        void send(Object msg) throws IOException;
+
+        Object receive() throws IOException, ClassNotFoundException;
+
+        void close();
+    }
+
+    /**
+     * OCSF-compatible client: one object stream in each direction
+     */
+    private static class ObjectStreamConnection implements Connection {
+        private final Socket socket;
+        private final ObjectOutputStream output;
+        private final ObjectInputStream input;
+
+        ObjectStreamConnection(Config config) throws IOException {
+            socket = new Socket(config.host, config.port);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            output = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.flush();
+            input = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        @Override
+        public void send(Object msg) throws IOException {
+            output.writeObject(msg);
+            output.flush();
+            output.reset();
+        }
+
+        @Override
+        public Object receive() throws IOException, ClassNotFoundException {
+            return input.readObject();
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Client for the NIO transport's length-prefixed frames
+     */
+    private static class FramedConnection implements Connection {
+        private final Socket socket;
+        private final DataOutputStream output;
+        private final DataInputStream input;
+
+        FramedConnection(Config config) throws IOException {
+            socket = new Socket(config.host, config.port);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        @Override
+        public void send(Object msg) throws IOException {
+            FrameCodec.writeFrame(output, msg);
+        }
+
+        @Override
+        public Object receive() throws IOException, ClassNotFoundException {
+            return FrameCodec.readFrame(input);
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
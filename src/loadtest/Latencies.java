@@ -0,0 +1,23 @@
+package loadtest;
+
+/**
+ * Latencies - helpers shared by the load tests for reporting measured times
+ */
+final class Latencies {
+
+    private Latencies() {
+    }
+
+    /**
+     * Nearest-rank percentile of an ascending array of times
+     * @param fraction 0.5 for the median, 0.99 for p99, 1.0 for the maximum
+     * @return the time at that rank, or 0 when nothing was measured
+     */
+    static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
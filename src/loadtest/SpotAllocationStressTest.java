@@ -0,0 +1,109 @@
+package loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import controllers.SpotOccupancy;
+
+/**
+ * SpotAllocationStressTest - hammers SpotOccupancy from many gate threads at once and checks
+ * that no spot is ever handed to two cars and that the free-spot counter stays exact.
+ * Runs in memory only (no database writes).
+ *
+ * Usage: SpotAllocationStressTest [gates=32] [spots=100] [seconds=10]
+ * Exits with status 1 if any violation was seen.
+ */
+public class SpotAllocationStressTest {
+
+    public static void main(String[] args) throws Exception {
+        int gates = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int spotCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        int[] spotIds = new int[spotCount];
+        boolean[] occupied = new boolean[spotCount];
+        for (int i = 0; i < spotCount; i++) {
+            spotIds[i] = i + 1; // ParkingSpot_ID starts at 1 (AUTO_INCREMENT)
+        }
+        SpotOccupancy spots = new SpotOccupancy(null);
+        spots.load(spotIds, occupied);
+
+        // owner[spot] = number of the gate whose car holds the spot, 0 while free
+        AtomicIntegerArray owner = new AtomicIntegerArray(spotCount + 1);
+        AtomicLong operations = new AtomicLong();
+        AtomicLong fullLot = new AtomicLong();
+        AtomicLong violations = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int g = 0; g < gates; g++) {
+            int gate = g + 1;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Integer> parked = new ArrayList<>();
+                while (System.nanoTime() < deadline) {
+                    boolean enter = parked.isEmpty() || (parked.size() < 8 && random.nextBoolean());
+                    if (enter) {
+                        // Mix of walk-in entries (any spot) and reservation entries (assigned spot, else any)
+                        int spot;
+                        if (random.nextInt(4) == 0) {
+                            int assigned = random.nextInt(1, spotCount + 1);
+                            spot = spots.claim(assigned) ? assigned : spots.allocate();
+                        } else {
+                            spot = spots.allocate();
+                        }
+                        if (spot == -1) {
+                            fullLot.incrementAndGet();
+                            continue;
+                        }
+                        if (!owner.compareAndSet(spot, 0, gate)) {
+                            violations.incrementAndGet();
+                            System.out.println("Spot " + spot + " given to gate " + gate + " while held by gate " + owner.get(spot));
+                        }
+                        parked.add(spot);
+                    } else {
+                        int spot = parked.remove(random.nextInt(parked.size()));
+                        owner.set(spot, 0);
+                        if (!spots.release(spot)) {
+                            violations.incrementAndGet();
+                            System.out.println("Spot " + spot + " was already free when gate " + gate + " released it");
+                        }
+                    }
+                    operations.incrementAndGet();
+                }
+                for (int spot : parked) {
+                    owner.set(spot, 0);
+                    spots.release(spot);
+                }
+            }, "gate-" + gate);
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int leftOver = 0;
+        for (int id = 1; id <= spotCount; id++) {
+            if (!spots.isFree(id)) {
+                leftOver++;
+            }
+        }
+
+        System.out.println(String.format("gates=%d spots=%d seconds=%d operations=%d (%.0f/s) lot-full=%d",
+            gates, spotCount, seconds, operations.get(), operations.get() / (double) seconds, fullLot.get()));
+        System.out.println("violations=" + violations.get()
+            + " free-count=" + spots.getFreeCount() + "/" + spotCount
+            + " spots-still-occupied=" + leftOver);
+
+        boolean ok = violations.get() == 0 && spots.getFreeCount() == spotCount && leftOver == 0;
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,41 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * ClientEndpoint - one connected client as seen by ParkingServer,
+ * independent of the transport (OCSF threads, virtual threads, ...) that carries it.
+ */
+public interface ClientEndpoint {
+
+    /**
+     * Sends an object (String or serialized Message bytes) to the client
+     */
+    void sendToClient(Object msg) throws IOException;
+
+    /**
+     * @return the address of the connected client
+     */
+    InetAddress getInetAddress();
+
+    /**
+     * @return true while the connection is open
+     */
+    boolean isAlive();
+
+    /**
+     * Closes the connection to the client
+     */
+    void close() throws IOException;
+
+    /**
+     * @return per-connection information previously stored with setInfo, or null
+     */
+    Object getInfo(String infoType);
+
+    /**
+     * Stores per-connection information (null removes it)
+     */
+    void setInfo(String infoType, Object info);
+}
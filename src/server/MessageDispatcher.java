@@ -0,0 +1,203 @@
+package server;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MessageDispatcher - runs client requests on a bounded worker pool
+ * (or on virtual threads when the server runs in virtual-thread mode).
+ * Requests from the same connection are executed one at a time in arrival order,
+ * while requests from different connections run in parallel.
+ * A request the client matches by correlation ID may instead leave its connection's
+ * queue through {@link #dispatchUnordered}, so the next request need not wait for it.
+ */
+public class MessageDispatcher {
+
+    private static final int WORKER_THREADS = 8;
+    private static final int MAX_PENDING_CONNECTIONS = 1000;
+    private static final int MAX_TASKS_PER_TURN = 16; // Yield the worker after this many tasks
+    private static final int MAX_IN_FLIGHT_PER_CONNECTION = 8; // Unordered requests one connection may run at once
+
+    private final ExecutorService workers;
+    private final Map<Object, ConnectionQueue> queues = new ConcurrentHashMap<>();
+
+    public MessageDispatcher() {
+        this(ServerMode.PLATFORM_THREADS);
+    }
+
+    public MessageDispatcher(ServerMode mode) {
+        if (mode == ServerMode.VIRTUAL_THREADS) {
+            this.workers = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("parking-worker-", 1).factory());
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "parking-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        // When the backlog is full the reader thread runs the work itself,
+        // which slows down only the connection that is flooding the server
+        this.workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_CONNECTIONS),
+                factory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Queue a request for the given connection
+     * @param connection Key identifying the client connection
+     * @param task The request handling work
+     */
+    public void dispatch(Object connection, Runnable task) {
+        queues.computeIfAbsent(connection, ConnectionQueue::new).submit(task);
+    }
+
+    /**
+     * Run a request in parallel with the connection's other requests.
+     * Call it from a task dispatched for the same connection; once that connection already has
+     * MAX_IN_FLIGHT_PER_CONNECTION such requests running, the task runs in place (in order) instead.
+     * @param connection Key identifying the client connection
+     * @param task Request handling work that does not depend on the connection's earlier requests
+     */
+    public void dispatchUnordered(Object connection, Runnable task) {
+        ConnectionQueue queue = queues.get(connection);
+        if (queue == null || !queue.startUnordered()) {
+            task.run();
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    queue.unorderedDone();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queue.unorderedDone();
+            task.run();
+        }
+    }
+
+    /**
+     * Forget a connection once it has disconnected.
+     * Requests it already queued still run; the queue is dropped once they are done.
+     */
+    public void release(Object connection) {
+        ConnectionQueue queue = queues.get(connection);
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    /**
+     * Stop accepting work and wait briefly for running requests to finish
+     */
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Per-connection FIFO. At most one worker drains it at any time,
+     * which keeps each client's requests in order.
+     */
+    private class ConnectionQueue implements Runnable {
+        private final Object connection;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final AtomicInteger unordered = new AtomicInteger();
+        private volatile boolean closed;
+
+        ConnectionQueue(Object connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * The connection is gone: remove the queue now if it is idle, else when it drains
+         */
+        void close() {
+            closed = true;
+            removeIfDrained();
+        }
+
+        private void removeIfDrained() {
+            if (closed && !scheduled.get() && tasks.isEmpty()) {
+                queues.remove(connection, this);
+            }
+        }
+
+        boolean startUnordered() {
+            int running;
+            do {
+                running = unordered.get();
+                if (running >= MAX_IN_FLIGHT_PER_CONNECTION) {
+                    return false;
+                }
+            } while (!unordered.compareAndSet(running, running + 1));
+            return true;
+        }
+
+        void unorderedDone() {
+            unordered.decrementAndGet();
+        }
+
+        void submit(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                int processed = 0;
+                while (processed < MAX_TASKS_PER_TURN && (task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                    processed++;
+                }
+            } finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    schedule();
+                } else {
+                    removeIfDrained();
+                }
+            }
+        }
+    }
+}
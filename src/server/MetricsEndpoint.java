@@ -0,0 +1,109 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * MetricsEndpoint - serves ServerMetrics at http://127.0.0.1:PORT/metrics in the Prometheus
+ * text format, and any plain-text pages added with addPage. Bound to the loopback interface
+ * only; scrape it from the server machine or through a local agent.
+ *
+ * The port comes from the bpark.metrics.port system property (default 9464, 0 for any free
+ * port, negative to disable the endpoint).
+ */
+public class MetricsEndpoint {
+
+    public static final int DEFAULT_PORT = 9464;
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ServerMetrics metrics;
+    private final Map<String, Supplier<String>> pages = new LinkedHashMap<>();
+    private HttpServer http;
+    private ExecutorService executor;
+
+    public MetricsEndpoint(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the configured port, or -1 if the endpoint is disabled
+     */
+    public static int configuredPort() {
+        try {
+            int port = Integer.parseInt(System.getProperty("bpark.metrics.port", String.valueOf(DEFAULT_PORT)));
+            return port < 0 ? -1 : port;
+        } catch (NumberFormatException e) {
+            return DEFAULT_PORT;
+        }
+    }
+
+    /**
+     * Serves a plain-text page, rendered on each request; takes effect on the next start
+     * @param path e.g. "/queries"
+     */
+    public synchronized void addPage(String path, Supplier<String> body) {
+        pages.put(path, body);
+    }
+
+    /**
+     * Starts serving on a loopback port
+     */
+    public synchronized void start(int port) throws IOException {
+        if (http != null) {
+            return;
+        }
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", exchange -> handle(exchange, metrics::toPrometheusText));
+        pages.forEach((path, body) -> http.createContext(path, exchange -> handle(exchange, body)));
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        http.setExecutor(executor);
+        http.start();
+    }
+
+    /**
+     * @return the port actually listened on, or -1 when not started
+     */
+    public synchronized int getPort() {
+        return http == null ? -1 : http.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (http != null) {
+            http.stop(0);
+            executor.shutdown();
+            http = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange, Supplier<String> page) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = page.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import common.FrameCodec;
+
+/**
+ * NioServer - non-blocking transport built on java.nio Selectors.
+ * A small, fixed set of I/O threads multiplexes every connection; messages are
+ * length-prefixed frames (see common.FrameCodec). The I/O threads only cut the frames; each payload
+ * goes to ParkingServer.handleClientFrame and is deserialized on a dispatcher worker.
+ * Connections that stay silent longer than the idle timeout can be closed, so half-open
+ * sockets from gates on flaky Wi-Fi do not linger until the OS gives up on them. The clients
+ * do not heartbeat yet, so this is off unless the bpark.server.idleTimeoutSeconds system
+ * property is set to a positive number of seconds.
+ */
+public class NioServer implements ServerTransport {
+
+    private static final int IO_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final long MAX_PENDING_WRITE_BYTES = 4L * 1024 * 1024; // Slow consumer limit
+    private static final String IDLE_TIMEOUT_PROPERTY = "bpark.server.idleTimeoutSeconds";
+    private static final long SELECT_TIMEOUT_MS = 1_000;
+
+    private final ParkingServer server;
+    private final int port;
+    private final Set<NioClientEndpoint> connections = ConcurrentHashMap.newKeySet();
+    private final IoLoop[] loops = new IoLoop[IO_THREADS];
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final long idleTimeoutMs = configuredIdleTimeoutMs();
+
+    private ServerSocketChannel serverChannel;
+    private volatile boolean listening = false;
+
+    public NioServer(ParkingServer server, int port) {
+        this.server = server;
+        this.port = port;
+    }
+
+    /**
+     * @return the idle timeout from the system property, or 0 when idle connections are kept
+     */
+    private static long configuredIdleTimeoutMs() {
+        try {
+            long seconds = Long.parseLong(System.getProperty(IDLE_TIMEOUT_PROPERTY, "0"));
+            return Math.max(0, seconds) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Binds the server channel and starts the acceptor and I/O threads
+     */
+    @Override
+    public void listen() throws IOException {
+        if (listening) {
+            return;
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        listening = true;
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop(Selector.open());
+            Thread thread = new Thread(loops[i], "nio-io-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread acceptor = new Thread(this::acceptLoop, "nio-accept-" + port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        server.serverStarted();
+    }
+
+    /**
+     * Accepts in blocking mode and hands each channel to an I/O loop round-robin
+     */
+    private void acceptLoop() {
+        while (listening) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+
+                IoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                NioClientEndpoint endpoint = new NioClientEndpoint(channel, loop);
+                connections.add(endpoint);
+                server.endpointConnected(endpoint);
+                loop.register(endpoint);
+            } catch (IOException e) {
+                if (listening) {
+                    System.out.println("Error accepting client connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of currently connected clients
+     */
+    @Override
+    public int getNumberOfClients() {
+        return connections.size();
+    }
+
+    /**
+     * Stops accepting clients and closes all open connections
+     */
+    @Override
+    public void close() {
+        if (!listening) {
+            return;
+        }
+        listening = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (NioClientEndpoint endpoint : connections) {
+            endpoint.close();
+        }
+        for (IoLoop loop : loops) {
+            if (loop != null) {
+                loop.stop();
+            }
+        }
+        server.serverStopped();
+    }
+
+    /**
+     * One selector thread serving a share of the connections
+     */
+    private class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<NioClientEndpoint> registrations = new ConcurrentLinkedQueue<>();
+        private final Queue<NioClientEndpoint> writeRequests = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        IoLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(NioClientEndpoint endpoint) {
+            registrations.add(endpoint);
+            selector.wakeup();
+        }
+
+        void requestWrite(NioClientEndpoint endpoint) {
+            writeRequests.add(endpoint);
+            selector.wakeup();
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastIdleCheck = System.currentTimeMillis();
+            while (running) {
+                try {
+                    selector.select(SELECT_TIMEOUT_MS);
+                    processRegistrations();
+                    processWriteRequests();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioClientEndpoint endpoint = (NioClientEndpoint) key.attachment();
+                        if (!key.isValid()) {
+                            endpoint.close();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            endpoint.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            endpoint.onWritable();
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (idleTimeoutMs > 0 && now - lastIdleCheck >= SELECT_TIMEOUT_MS) {
+                        closeIdleConnections(now);
+                        lastIdleCheck = now;
+                    }
+                } catch (IOException e) {
+                    System.out.println("NIO selector error: " + e.getMessage());
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Nothing left to clean up
+            }
+        }
+
+        private void processRegistrations() {
+            NioClientEndpoint endpoint;
+            while ((endpoint = registrations.poll()) != null) {
+                try {
+                    endpoint.key = endpoint.channel.register(selector, SelectionKey.OP_READ, endpoint);
+                    if (!endpoint.outbound.isEmpty()) {
+                        endpoint.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                } catch (ClosedChannelException e) {
+                    endpoint.close();
+                }
+            }
+        }
+
+        private void processWriteRequests() {
+            NioClientEndpoint endpoint;
+            while ((endpoint = writeRequests.poll()) != null) {
+                SelectionKey key = endpoint.key;
+                if (key != null && key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+
+        private void closeIdleConnections(long now) {
+            for (SelectionKey key : selector.keys()) {
+                NioClientEndpoint endpoint = (NioClientEndpoint) key.attachment();
+                if (endpoint != null && now - endpoint.lastActivity > idleTimeoutMs) {
+                    System.out.println("Closing idle connection " + endpoint);
+                    endpoint.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Client connection on a non-blocking channel.
+     * Reads happen only on the owning I/O thread; writes may be queued from any thread.
+     */
+    private class NioClientEndpoint implements ClientEndpoint {
+        private final SocketChannel channel;
+        private final IoLoop loop;
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private final String description;
+        private final Map<String, Object> info = new ConcurrentHashMap<>();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        private volatile SelectionKey key;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        NioClientEndpoint(SocketChannel channel, IoLoop loop) throws IOException {
+            this.channel = channel;
+            this.loop = loop;
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            this.description = remote.getAddress().getHostAddress() + ":" + remote.getPort();
+        }
+
+        /**
+         * Reads what is available and dispatches every complete frame
+         */
+        void onReadable() {
+            try {
+                int read = channel.read(readBuffer);
+                if (read < 0) {
+                    close();
+                    return;
+                }
+                lastActivity = System.currentTimeMillis();
+
+                readBuffer.flip();
+                while (readBuffer.remaining() >= FrameCodec.HEADER_BYTES) {
+                    int length = FrameCodec.checkLength(readBuffer.getInt(readBuffer.position()));
+                    if (readBuffer.remaining() < FrameCodec.HEADER_BYTES + length) {
+                        break;
+                    }
+                    readBuffer.position(readBuffer.position() + FrameCodec.HEADER_BYTES);
+                    byte[] payload = new byte[length];
+                    readBuffer.get(payload);
+                    server.handleClientFrame(payload, this);
+                }
+                readBuffer.compact();
+                ensureCapacityForNextFrame();
+            } catch (IOException e) {
+                System.out.println("Error reading from client " + this + ": " + e.getMessage());
+                close();
+            }
+        }
+
+        /**
+         * Grows the read buffer when a partially received frame will not fit,
+         * and drops a grown buffer again once it is empty
+         */
+        private void ensureCapacityForNextFrame() throws IOException {
+            if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_READ_BUFFER) {
+                readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+                return;
+            }
+            if (readBuffer.position() < FrameCodec.HEADER_BYTES) {
+                return;
+            }
+            int needed = FrameCodec.HEADER_BYTES + FrameCodec.checkLength(readBuffer.getInt(0));
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, readBuffer.capacity() * 2));
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        /**
+         * Flushes as much of the outbound queue as the socket accepts
+         */
+        void onWritable() {
+            try {
+                ByteBuffer frame;
+                while ((frame = outbound.peek()) != null) {
+                    channel.write(frame);
+                    if (frame.hasRemaining()) {
+                        return; // Socket buffer full, wait for the next OP_WRITE
+                    }
+                    outbound.poll();
+                    pendingBytes.addAndGet(-frame.limit());
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                // A sender may have queued a frame after the loop above saw an empty queue
+                if (!outbound.isEmpty()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        @Override
+        public void sendToClient(Object msg) throws IOException {
+            if (closed.get()) {
+                throw new IOException("Connection closed: " + this);
+            }
+            ByteBuffer frame = FrameCodec.encode(msg);
+            if (pendingBytes.addAndGet(frame.limit()) > MAX_PENDING_WRITE_BYTES) {
+                System.out.println("Closing slow client " + this + " (" + pendingBytes.get() + " bytes pending)");
+                close();
+                throw new IOException("Client is not reading its responses: " + this);
+            }
+            outbound.add(frame);
+            loop.requestWrite(this);
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return channel.socket().getInetAddress();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !closed.get() && channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            SelectionKey currentKey = key;
+            if (currentKey != null) {
+                currentKey.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            outbound.clear();
+            connections.remove(this);
+            server.endpointDisconnected(this);
+        }
+
+        @Override
+        public Object getInfo(String infoType) {
+            return info.get(infoType);
+        }
+
+        @Override
+        public void setInfo(String infoType, Object value) {
+            if (value == null) {
+                info.remove(infoType);
+            } else {
+                info.put(infoType, value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
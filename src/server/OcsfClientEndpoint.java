@@ -0,0 +1,77 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import ocsf.server.ConnectionToClient;
+
+/**
+ * ClientEndpoint backed by a classic OCSF ConnectionToClient (one platform thread per client)
+ */
+public class OcsfClientEndpoint implements ClientEndpoint {
+
+    private static final String ENDPOINT_INFO = "parkingEndpoint";
+
+    private final ConnectionToClient connection;
+    private final InetAddress address; // OCSF forgets the socket on close, before clientDisconnected runs
+
+    private OcsfClientEndpoint(ConnectionToClient connection) {
+        this.connection = connection;
+        this.address = connection.getInetAddress();
+    }
+
+    /**
+     * Returns the endpoint attached to an OCSF connection, creating it on first use
+     * (clientConnected, while the socket is still open).
+     * The same instance is returned for the lifetime of the connection.
+     */
+    public static ClientEndpoint of(ConnectionToClient connection) {
+        synchronized (connection) {
+            Object endpoint = connection.getInfo(ENDPOINT_INFO);
+            if (endpoint == null) {
+                endpoint = new OcsfClientEndpoint(connection);
+                connection.setInfo(ENDPOINT_INFO, endpoint);
+            }
+            return (ClientEndpoint) endpoint;
+        }
+    }
+
+    /**
+     * OCSF writes to the socket stream unsynchronized; replies to pipelined requests,
+     * pushed updates and the dispatcher may send on the same connection at once
+     */
+    @Override
+    public synchronized void sendToClient(Object msg) throws IOException {
+        connection.sendToClient(msg);
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return address;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return connection.isAlive();
+    }
+
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+
+    @Override
+    public Object getInfo(String infoType) {
+        return connection.getInfo(infoType);
+    }
+
+    @Override
+    public void setInfo(String infoType, Object info) {
+        connection.setInfo(infoType, info);
+    }
+
+    @Override
+    public String toString() {
+        return address == null ? "closed connection" : address.getHostAddress();
+    }
+}
@@ -7,14 +7,19 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import common.FrameCodec;
+import common.MessageCodec;
 import controllers.ParkingController;
 import controllers.ReportController;
+import entities.ActiveParkingChanges;
+import entities.HistoryPage;
 import entities.Message;
 import entities.Message.MessageType;
 import entities.ParkingOrder;
@@ -23,6 +28,8 @@ import entities.ParkingSubscriber;
 import ocsf.server.AbstractServer;
 import ocsf.server.ConnectionToClient;
 import serverGUI.ServerPortFrame;
+import services.ConnectionPool;
+import services.EmailService;
 
 /**
  * ParkingServer - Main server for the ParkB automatic parking management system
@@ -42,9 +49,30 @@ public class ParkingServer extends AbstractServer {
     public static ServerPortFrame spf;
     
     // Connection management
-    public Map<ConnectionToClient, String> clientsMap = new HashMap<>();
+    public Map<ClientEndpoint, String> clientsMap = new HashMap<>();
     public static String serverIp;
     
+    // How client connections are served (OCSF platform threads, virtual threads or NIO selectors)
+    private final ServerMode mode;
+    private ServerTransport transport;
+    
+    // Request dispatch - per-connection ordering, parallel across connections
+    private final MessageDispatcher dispatcher;
+    private final ResourceLocks resourceLocks = new ResourceLocks();
+    
+    // Per-connection key holding the negotiated binary codec version
+    private static final String CODEC_INFO = "codecVersion";
+    
+    // Logs every request received (-Dbpark.server.logMessages=true); off by default, it costs on the hot path
+    private static final boolean LOG_MESSAGES = Boolean.getBoolean("bpark.server.logMessages");
+    
+    // Pushes occupancy and session changes to subscribed portals (created when the server starts)
+    private UpdatePublisher updatePublisher;
+    
+    // Per-operation request counts and latencies, served over HTTP while the server listens
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final MetricsEndpoint metricsEndpoint = new MetricsEndpoint(metrics);
+    
     // Connection pool with timer for cleanup
     private ScheduledExecutorService connectionPoolTimer;
     private final int POOL_SIZE = 5;
@@ -57,13 +85,56 @@ public class ParkingServer extends AbstractServer {
      * @param port The port number to connect on.
      */
     public ParkingServer(int port) {
+        this(port, ServerMode.PLATFORM_THREADS);
+    }
+    
+    /**
+     * Constructs an instance of the parking server.
+     * @param port The port number to connect on.
+     * @param mode How client connections are served.
+     */
+    public ParkingServer(int port, ServerMode mode) {
         super(port);
+        this.mode = mode;
+        this.dispatcher = new MessageDispatcher(mode);
         try {
             serverIp = InetAddress.getLocalHost().getHostAddress() + ":" + port; // IP:PORT
         } catch (Exception e) {
             e.printStackTrace();
         }
         initializeConnectionPool();
+        registerGauges();
+        metrics.registerCollector(() -> {
+            ConnectionPool pool = getConnectionPool();
+            return pool != null ? pool.getStatementTracer().toPrometheusText() : "";
+        });
+        metricsEndpoint.addPage("/queries", this::getQueryReport);
+    }
+    
+    /**
+     * In-process values reported next to the request metrics (none of them query the database)
+     */
+    private void registerGauges() {
+        metrics.registerGauge("parkb_connected_clients", "Clients currently connected", this::getConnectedClientCount);
+        metrics.registerGauge("parkb_db_pool_active", "Pooled database connections in use", () -> {
+            ConnectionPool pool = getConnectionPool();
+            return pool != null ? pool.getActiveCount() : 0;
+        });
+        metrics.registerGauge("parkb_db_pool_waiting", "Threads waiting for a pooled database connection", () -> {
+            ConnectionPool pool = getConnectionPool();
+            return pool != null ? pool.getWaitingCount() : 0;
+        });
+        metrics.registerGauge("parkb_db_pool_max", "Maximum pooled database connections", () -> {
+            ConnectionPool pool = getConnectionPool();
+            return pool != null ? pool.getMaxSize() : 0;
+        });
+        metrics.registerGauge("parkb_email_queue_depth", "Emails queued and not yet delivered", EmailService::getPendingCount);
+        metrics.registerGauge("parkb_auto_cancellation_lag_milliseconds", "How late past their deadline late preorders are cancelled",
+            () -> parkingController != null ? parkingController.getAutoCancellationLagMillis() : 0);
+        metrics.registerGauge("parkb_parking_spots_occupied", "Occupied parking spots",
+            () -> parkingController != null ? parkingController.getOccupiedParkingSpots() : 0);
+        metrics.registerGauge("parkb_parking_spots_total", "Parking spots",
+            () -> parkingController != null ? parkingController.getTotalParkingSpots() : 0);
     }
     
     /**
@@ -86,20 +157,67 @@ public class ParkingServer extends AbstractServer {
      */
     private synchronized void cleanupInactiveConnections() {
         clientsMap.entrySet().removeIf(entry -> {
-            ConnectionToClient client = entry.getKey();
-            return !client.isAlive();
+            ClientEndpoint client = entry.getKey();
+            if (!client.isAlive()) {
+                dispatcher.release(client);
+                if (parkingController != null) {
+                    parkingController.closeSession(client);
+                }
+                return true;
+            }
+            return false;
         });
     }
 
     // Instance methods ************************************************
 
     /**
-     * This method handles any messages received from the client.
-     * Following your exact handleMessageFromClient pattern
+     * This method handles any messages received from an OCSF client.
+     */
+    public void handleMessageFromClient(Object msg, ConnectionToClient client) {
+        handleClientMessage(msg, OcsfClientEndpoint.of(client));
+    }
+    
+    /**
+     * Entry point for messages from any transport.
+     * The request is queued on the dispatcher so a slow operation only delays
+     * the connection that sent it, not every gate terminal.
      */
-    public synchronized void handleMessageFromClient(Object msg, ConnectionToClient client) {
-        System.out.println("Message received: " + msg + " from " + client);
+    public void handleClientMessage(Object msg, ClientEndpoint client) {
+        dispatcher.dispatch(client, () -> processMessage(msg, client));
+    }
+    
+    /**
+     * Entry point for a raw frame payload (NIO transport): it is decoded on the dispatcher worker,
+     * so the selector thread only cuts frames and never runs deserialization
+     */
+    public void handleClientFrame(byte[] payload, ClientEndpoint client) {
+        dispatcher.dispatch(client, () -> {
+            Object msg;
+            try {
+                msg = FrameCodec.decodePayload(payload);
+            } catch (IOException | ClassNotFoundException e) {
+                System.out.println("Error decoding frame from client " + client + ": " + e.getMessage());
+                try {
+                    client.close();
+                } catch (IOException closeError) {
+                    // Already closed
+                }
+                return;
+            }
+            processMessage(msg, client);
+        });
+    }
+    
+    /**
+     * Decode and handle a single client message (runs on a dispatcher worker)
+     */
+    private void processMessage(Object msg, ClientEndpoint client) {
+        if (LOG_MESSAGES) {
+            System.out.println("Message received: " + msg + " from " + client);
+        }
         
+        long decodeStart = System.nanoTime();
         try {
             // Check if the message is in byte array form (following your pattern)
             if (msg instanceof byte[]) {
@@ -108,37 +226,88 @@ public class ParkingServer extends AbstractServer {
         } catch (Exception ex) {
             ex.printStackTrace();
         }
+        long decodeNanos = System.nanoTime() - decodeStart;
         
         // Handle Message objects (following your pattern)
         if (msg instanceof Message) {
-            handleMessageObject((Message) msg, client);
+            Message message = (Message) msg;
+            String operation = message.getType().name();
+            if (message.getCorrelationId() != 0 && isIndependentRead(message.getType())) {
+                // The client matches the reply by ID, so its next requests need not wait for this one
+                dispatcher.dispatchUnordered(client,
+                    () -> metrics.record(operation, decodeNanos, () -> handleMessageObject(message, client)));
+            } else {
+                metrics.record(operation, decodeNanos, () -> handleMessageObject(message, client));
+            }
+        } else if (msg instanceof String) {
+            // Handle String messages (following your pattern)
+            String command = (String) msg;
+            if (MessageCodec.isHello(command)) {
+                negotiateCodec(command, client);
+            } else {
+                metrics.record(ServerMetrics.commandOperation(command), decodeNanos,
+                    () -> handleStringMessage(command, client));
+            }
+        } else {
+            metrics.recordUndecodable(decodeNanos);
         }
-        
-        // Handle String messages (following your pattern)
-        if (msg instanceof String) {
-            handleStringMessage((String) msg, client);
+    }
+    
+    /**
+     * Answers a client's codec offer and remembers the agreed version for this connection.
+     * Clients that never send an offer keep receiving Java-serialized messages.
+     */
+    private void negotiateCodec(String hello, ClientEndpoint client) {
+        int version = MessageCodec.negotiate(hello);
+        client.setInfo(CODEC_INFO, version > 0 ? version : null);
+        try {
+            client.sendToClient(MessageCodec.HELLO_PREFIX + version);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Sends the response to a request, tagged with the request's correlation ID
+     */
+    private void reply(ClientEndpoint client, Message request, Message response) throws IOException {
+        // Tell the client which of its cached replies this request made stale, before it sees the result
+        sendCacheInvalidation(client, cacheKeysChangedBy(request));
+        response.setCorrelationId(request.getCorrelationId());
+        client.sendToClient(serialize(response, client));
+    }
+    
+    /**
+     * Sends a CACHE_INVALIDATE hint naming stale client cache keys.
+     * Only clients that negotiated the codec have a cache; older clients would not know the message.
+     */
+    private void sendCacheInvalidation(ClientEndpoint client, String[] staleKeys) throws IOException {
+        if (staleKeys.length > 0 && client.getInfo(CODEC_INFO) != null) {
+            Message hint = new Message(MessageType.CACHE_INVALIDATE, new ArrayList<>(Arrays.asList(staleKeys)));
+            client.sendToClient(serialize(hint, client));
         }
     }
     
     /**
      * Handle Message objects (following your Message handling pattern)
      */
-    private synchronized void handleMessageObject(Message message, ConnectionToClient client) {
+    private void handleMessageObject(Message message, ClientEndpoint client) {
         Message ret;
+        int[] locks = resourceLocks.acquire(lockKeysFor(message));
         
         try {
             switch (message.getType()) {
             case SUBSCRIBER_LOGIN:
                 String subscriberCode = (String) message.getContent();
-                ParkingSubscriber subscriber = parkingController.getUserInfo(subscriberCode);
+                ParkingSubscriber subscriber = parkingController.openSession(client, subscriberCode);
                 ret = new Message(MessageType.SUBSCRIBER_LOGIN_RESPONSE, subscriber);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
                 break;
                 
             case CHECK_PARKING_AVAILABILITY:
                 int availableSpots = parkingController.getAvailableParkingSpots();
                 ret = new Message(MessageType.PARKING_AVAILABILITY_RESPONSE, availableSpots);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
                 break;
                 
             case RESERVE_PARKING:
@@ -147,7 +316,7 @@ public class ParkingServer extends AbstractServer {
                 String reservationDate = reservationData[1];
                 String reservationResult = parkingController.makeReservation(reservationUserName, reservationDate);
                 ret = new Message(MessageType.RESERVATION_RESPONSE, reservationResult);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
                 break;
 
             case REGISTER_SUBSCRIBER:
@@ -169,47 +338,83 @@ public class ParkingServer extends AbstractServer {
                 } else {
                     ret = new Message(MessageType.REGISTRATION_RESPONSE, "ERROR: Invalid registration data format");
                 }
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
                 break;
 
             case REQUEST_LOST_CODE:
                 String lostCodeUserName = (String) message.getContent(); // ← RENAMED
                 String lostCodeResult = parkingController.sendLostParkingCode(lostCodeUserName);
                 ret = new Message(MessageType.LOST_CODE_RESPONSE, lostCodeResult);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
                 break;
                 
             case GET_PARKING_HISTORY:
                 String historyUserName = (String) message.getContent(); // ← RENAMED
                 ArrayList<ParkingOrder> history = parkingController.getParkingHistory(historyUserName);
                 ret = new Message(MessageType.PARKING_HISTORY_RESPONSE, history);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
+                break;
+                
+            case GET_PARKING_HISTORY_PAGE:
+                // Expected format: "userName" or "userName,cursor"
+                String[] pageRequest = ((String) message.getContent()).split(",", 2);
+                HistoryPage page = parkingController.getParkingHistoryPage(pageRequest[0].trim(),
+                    pageRequest.length > 1 ? pageRequest[1].trim() : null, ParkingController.HISTORY_PAGE_SIZE);
+                ret = new Message(MessageType.PARKING_HISTORY_PAGE_RESPONSE, page);
+                reply(client, message, ret);
+                break;
+                
+            case STREAM_PARKING_HISTORY:
+                // Each page goes out as soon as it is read, so the client fills its table progressively
+                String streamUserName = (String) message.getContent();
+                parkingController.streamParkingHistory(streamUserName, ParkingController.HISTORY_PAGE_SIZE, chunk -> {
+                    try {
+                        client.sendToClient(serialize(new Message(MessageType.PARKING_HISTORY_CHUNK, chunk), client));
+                        return true;
+                    } catch (IOException e) {
+                        System.out.println("History stream to " + client + " stopped: " + e.getMessage());
+                        return false;
+                    }
+                });
                 break;
                 
             case MANAGER_GET_REPORTS:
                 String reportType = (String) message.getContent();
                 ArrayList<ParkingReport> reports = reportController.getParkingReports(reportType);
                 ret = new Message(MessageType.MANAGER_SEND_REPORTS, reports);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
                 break;
                 
             case GET_ACTIVE_PARKINGS:
                 ArrayList<ParkingOrder> activeParkings = parkingController.getActiveParkings();
                 ret = new Message(MessageType.ACTIVE_PARKINGS_RESPONSE, activeParkings);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
+                break;
+                
+            case GET_ACTIVE_PARKING_CHANGES:
+                String sinceVersion = message.getContent() instanceof String ? ((String) message.getContent()).trim() : "";
+                long since;
+                try {
+                    since = sinceVersion.isEmpty() ? -1 : Long.parseLong(sinceVersion);
+                } catch (NumberFormatException e) {
+                    since = -1; // Unknown cursor, send everything
+                }
+                ActiveParkingChanges changes = parkingController.getActiveParkingChanges(since);
+                ret = new Message(MessageType.ACTIVE_PARKING_CHANGES_RESPONSE, changes);
+                reply(client, message, ret);
                 break;
                 
             case UPDATE_SUBSCRIBER_INFO:
                 String updateResult = parkingController.updateSubscriberInfo((String) message.getContent());
                 ret = new Message(MessageType.UPDATE_SUBSCRIBER_RESPONSE, updateResult);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
                 break;
                 
             case GENERATE_MONTHLY_REPORTS:
                 String monthYear = (String) message.getContent();
                 ArrayList<ParkingReport> monthlyReports = reportController.generateMonthlyReports(monthYear);
                 ret = new Message(MessageType.MONTHLY_REPORTS_RESPONSE, monthlyReports);
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
                 break;
                 
             case ACTIVATE_RESERVATION:
@@ -227,7 +432,20 @@ public class ParkingServer extends AbstractServer {
                         ret = new Message(MessageType.ACTIVATION_RESPONSE, "ERROR: Invalid reservation code format");
                     }
                 }
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
+                break;
+                
+            case SUBSCRIBE_PARKING_UPDATES:
+                // Answered with a SNAPSHOT update, then one PARKING_UPDATE per change
+                if (updatePublisher != null) {
+                    updatePublisher.subscribe(client);
+                }
+                break;
+                
+            case UNSUBSCRIBE_PARKING_UPDATES:
+                if (updatePublisher != null) {
+                    updatePublisher.unsubscribe(client);
+                }
                 break;
                 
             case CANCEL_RESERVATION:
@@ -245,23 +463,46 @@ public class ParkingServer extends AbstractServer {
                         ret = new Message(MessageType.CANCELLATION_RESPONSE, "ERROR: Invalid reservation code format");
                     }
                 }
-                client.sendToClient(serialize(ret));
+                reply(client, message, ret);
+                break;
+                
+            case GET_SERVER_METRICS:
+                if (!parkingController.isManagerSession(client)) {
+                    ret = new Message(MessageType.SERVER_METRICS_RESPONSE, "ERROR: Only managers can view server metrics");
+                } else {
+                    ret = new Message(MessageType.SERVER_METRICS_RESPONSE, metrics.toPrometheusText());
+                }
+                reply(client, message, ret);
+                break;
+                
+            case GET_QUERY_STATS:
+                if (!parkingController.isManagerSession(client)) {
+                    ret = new Message(MessageType.QUERY_STATS_RESPONSE, "ERROR: Only managers can view query statistics");
+                } else {
+                    ret = new Message(MessageType.QUERY_STATS_RESPONSE, getQueryReport());
+                }
+                reply(client, message, ret);
                 break;
                 
             default:
                 System.out.println("Unknown message type: " + message.getType());
+                metrics.markFailed();
                 break;
             }
         } catch (IOException e) {
+            metrics.markFailed();
             e.printStackTrace();
+        } finally {
+            resourceLocks.release(locks);
         }
     }
     
     /**
      * Handle String messages (following your string handling pattern)
      */
-    private synchronized void handleStringMessage(String message, ConnectionToClient client) {
+    private void handleStringMessage(String message, ClientEndpoint client) {
         String[] arr = message.split("\\s");
+        int[] locks = resourceLocks.acquire(lockKeysFor(arr));
         
         try {
             switch (arr[0]) {
@@ -269,12 +510,18 @@ public class ParkingServer extends AbstractServer {
                 disconnect(client);
                 break;
                 
+            case "ping":
+                client.sendToClient("pong");
+                break;
+                
             case "login:":
-                String loginResult = parkingController.checkLogin(arr[1], arr.length > 2 ? arr[2] : "");
+                ParkingSubscriber loggedIn = parkingController.openSession(client, arr[1]);
+                String loginResult = loggedIn != null ? loggedIn.getUserType() : "None";
                 client.sendToClient("login: " + loginResult);
                 break;
                 
             case "LoggedOut":
+                parkingController.closeSession(client);
                 parkingController.logoutUser(arr[1]);
                 break;
                 
@@ -326,23 +573,147 @@ public class ParkingServer extends AbstractServer {
                 
             default:
                 System.out.println("Unknown string command: " + arr[0]);
+                metrics.markFailed();
                 break;
             }
+            // String replies are not cached, so the hint may follow them (the change is committed by now)
+            sendCacheInvalidation(client, cacheKeysChangedBy(arr[0]));
         } catch (Exception e) {
+            metrics.markFailed();
             e.printStackTrace();
             try {
                 client.sendToClient("error " + e.getMessage());
             } catch (IOException ioException) {
                 ioException.printStackTrace();
             }
+        } finally {
+            resourceLocks.release(locks);
+        }
+    }
+    
+    /**
+     * Client cache keys (see client.ResponseCache) whose replies a request changes
+     */
+    private String[] cacheKeysChangedBy(Message message) {
+        switch (message.getType()) {
+        case RESERVE_PARKING:
+        case ACTIVATE_RESERVATION:
+        case CANCEL_RESERVATION:
+            return new String[] { MessageType.CHECK_PARKING_AVAILABILITY.name() };
+        default:
+            return new String[0];
+        }
+    }
+    
+    /**
+     * Client cache keys whose replies a string command changes (gate entries and exits move availability)
+     */
+    private String[] cacheKeysChangedBy(String command) {
+        switch (command) {
+        case "enterParking":
+        case "enterWithReservation":
+        case "exitParking":
+        case "makeReservation":
+        case "cancelReservation":
+            return new String[] { MessageType.CHECK_PARKING_AVAILABILITY.name() };
+        default:
+            return new String[0];
+        }
+    }
+    
+    /**
+     * Requests that only read, so they may run alongside the same client's other requests
+     */
+    private boolean isIndependentRead(MessageType type) {
+        switch (type) {
+        case CHECK_PARKING_AVAILABILITY:
+        case GET_PARKING_HISTORY:
+        case GET_PARKING_HISTORY_PAGE:
+        case MANAGER_GET_REPORTS:
+        case GET_ACTIVE_PARKINGS:
+        case GET_ACTIVE_PARKING_CHANGES:
+            return true;
+        default:
+            return false;
+        }
+    }
+    
+    /**
+     * Resources touched by a Message request. Reports, history and status
+     * queries take no locks, so they never hold up gate operations.
+     */
+    private String[] lockKeysFor(Message message) {
+        String content = message.getContent() instanceof String ? (String) message.getContent() : "";
+        String first = content.split(",", 2)[0].trim();
+        
+        switch (message.getType()) {
+        case RESERVE_PARKING:
+            return new String[] { "user:" + first, ResourceLocks.SPOTS };
+        case REGISTER_SUBSCRIBER:
+            String[] regParts = content.split(",");
+            return new String[] { "user:" + regParts[regParts.length - 1].trim() };
+        case REQUEST_LOST_CODE:
+        case UPDATE_SUBSCRIBER_INFO:
+            return new String[] { "user:" + first };
+        case ACTIVATE_RESERVATION:
+            return new String[] { "reservation:" + lastField(content) };
+        case CANCEL_RESERVATION:
+            return new String[] { "reservation:" + lastField(content) };
+        default:
+            return new String[0];
         }
     }
+    
+    /**
+     * Resources touched by a string command
+     */
+    private String[] lockKeysFor(String[] arr) {
+        String argument = arr.length > 1 ? arr[1] : "";
+        
+        switch (arr[0]) {
+        case "enterParking":
+            return new String[] { "user:" + argument };
+        case "makeReservation":
+            return new String[] { "user:" + argument, ResourceLocks.SPOTS };
+        case "enterWithReservation":
+            return new String[] { "reservation:" + argument };
+        case "cancelReservation":
+            return new String[] { "reservation:" + argument };
+        case "exitParking":
+        case "extendParking":
+            return new String[] { "code:" + argument };
+        case "getLostCode":
+            return new String[] { "user:" + argument };
+        default:
+            return new String[0];
+        }
+    }
+    
+    private String lastField(String content) {
+        String[] parts = content.split(",", 2);
+        return parts[parts.length - 1].trim();
+    }
 
     /**
-     * Serializes a Message object to byte array (following your pattern)
+     * Serializes a Message object to byte array, using the binary codec
+     * if this client negotiated it (following your pattern otherwise)
      */
-    private byte[] serialize(Message msg) {
+    private byte[] serialize(Message msg, ClientEndpoint client) {
+        long start = System.nanoTime();
+        byte[] bytes = serialize(msg, client.getInfo(CODEC_INFO));
+        metrics.addEncodeNanos(System.nanoTime() - start);
+        return bytes;
+    }
+    
+    /**
+     * Serializes a Message object for a codec version (null = Java serialization).
+     * Public for the hot-path benchmarks.
+     */
+    public static byte[] serialize(Message msg, Object codecVersion) {
         try {
+            if (codecVersion != null) {
+                return MessageCodec.encode(msg, (Integer) codecVersion);
+            }
             ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
             ObjectOutputStream out = new ObjectOutputStream(byteStream);
             out.writeObject(msg);
@@ -357,9 +728,12 @@ public class ParkingServer extends AbstractServer {
     /**
      * Deserializes byte array to Message object (following your pattern)
      */
-    private Object deserialize(Object msg) {
+    public static Object deserialize(Object msg) {
         try {
             byte[] messageBytes = (byte[]) msg;
+            if (MessageCodec.isBinary(messageBytes)) {
+                return MessageCodec.decode(messageBytes);
+            }
             ByteArrayInputStream byteStream = new ByteArrayInputStream(messageBytes);
             ObjectInputStream objectStream = new ObjectInputStream(byteStream);
             return objectStream.readObject();
@@ -374,9 +748,26 @@ public class ParkingServer extends AbstractServer {
      * starts listening for connections.
      */
     protected void serverStarted() {
-        System.out.println("ParkB Server listening for connections on port " + getPort());
+        System.out.println("ParkB Server listening for connections on port " + getPort()
+                + " (" + mode.getOptionName() + " mode)");
         // Initialize parking spots if needed
-        parkingController.initializeParkingSpots();
+        if (parkingController != null) {
+            parkingController.initializeParkingSpots();
+            
+            updatePublisher = new UpdatePublisher(parkingController, CODEC_INFO, ParkingServer::serialize);
+            parkingController.setEventListener(updatePublisher);
+        }
+        
+        int metricsPort = MetricsEndpoint.configuredPort();
+        if (metricsPort >= 0) {
+            try {
+                metricsEndpoint.start(metricsPort);
+                System.out.println("Metrics available at http://127.0.0.1:" + metricsEndpoint.getPort()
+                    + "/metrics (SQL statements at /queries)");
+            } catch (IOException e) {
+                System.out.println("Could not start the metrics endpoint on port " + metricsPort + ": " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -389,31 +780,125 @@ public class ParkingServer extends AbstractServer {
         
         // Stop auto-cancellation service cleanly
         if (parkingController != null) {
+            parkingController.setEventListener(null);
             parkingController.shutdown();
             System.out.println("Auto-cancellation service shut down successfully");
         }
         
+        if (updatePublisher != null) {
+            updatePublisher.shutdown();
+        }
+        
+        metricsEndpoint.stop();
+        
         if (connectionPoolTimer != null) {
             connectionPoolTimer.shutdown();
         }
+        
+        dispatcher.shutdown();
     }
 
     /**
-     * Client connected handler (following your pattern)
+     * Starts accepting clients using the configured server mode
+     */
+    public void start() throws IOException {
+        switch (mode) {
+            case VIRTUAL_THREADS:
+                transport = new VirtualThreadServer(this, getPort());
+                transport.listen();
+                break;
+            case NIO:
+                transport = new NioServer(this, getPort());
+                transport.listen();
+                break;
+            default:
+                listen();
+        }
+    }
+    
+    /**
+     * @return the request metrics of this server
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * @return the pool the controllers draw connections from, or null before they connected
+     */
+    public static ConnectionPool getConnectionPool() {
+        if (parkingController != null && parkingController.getDataSource() instanceof ConnectionPool) {
+            return (ConnectionPool) parkingController.getDataSource();
+        }
+        return null;
+    }
+    
+    /**
+     * SQL statement statistics and slow-query log of the controllers' pool, with each statement's
+     * executions per request of the operations that ran it
+     */
+    public String getQueryReport() {
+        ConnectionPool pool = getConnectionPool();
+        if (pool == null) {
+            return "No database connection";
+        }
+        return pool.getStatementTracer().report(metrics.getRequestCounts());
+    }
+    
+    /**
+     * Number of clients whose last recorded status is connected
+     */
+    public long getConnectedClientCount() {
+        synchronized (clientsMap) {
+            return clientsMap.values().stream().filter(status -> status.endsWith("status: connected")).count();
+        }
+    }
+    
+    /**
+     * @return the mode this server was started with
+     */
+    public ServerMode getMode() {
+        return mode;
+    }
+    
+    /**
+     * OCSF client connected hook
      */
     @Override
-    protected synchronized void clientConnected(ConnectionToClient client) {
+    protected void clientConnected(ConnectionToClient client) {
+        endpointConnected(OcsfClientEndpoint.of(client));
+    }
+    
+    /**
+     * OCSF client disconnected hook
+     */
+    @Override
+    protected void clientDisconnected(ConnectionToClient client) {
+        endpointDisconnected(OcsfClientEndpoint.of(client));
+    }
+    
+    /**
+     * OCSF hook for a connection that dropped (read failed) rather than being closed
+     */
+    @Override
+    protected void clientException(ConnectionToClient client, Throwable exception) {
+        endpointDisconnected(OcsfClientEndpoint.of(client));
+    }
+    
+    /**
+     * Client connected handler (following your pattern)
+     */
+    protected void endpointConnected(ClientEndpoint client) {
+        // Address only: a host name lookup would block the transport's accept/selector thread
         String clientIP = client.getInetAddress().getHostAddress();
-        String clientHostName = client.getInetAddress().getHostName();
-        String connectionStatus = "ClientIP: " + clientIP + " Client Host Name: " + clientHostName
-                + " status: connected";
+        String connectionStatus = "ClientIP: " + clientIP + " status: connected";
 
         // Check if IP already exists
         synchronized (clientsMap) {
             boolean ipExists = false;
-            ConnectionToClient existingClient = null;
+            ClientEndpoint existingClient = null;
 
-            for (Map.Entry<ConnectionToClient, String> entry : clientsMap.entrySet()) {
+            for (Map.Entry<ClientEndpoint, String> entry : clientsMap.entrySet()) {
                 if (entry.getValue().contains(clientIP)) {
                     ipExists = true;
                     existingClient = entry.getKey();
@@ -433,29 +918,46 @@ public class ParkingServer extends AbstractServer {
         }
     }
 
+    /**
+     * Client disconnect handler used by transports when a connection drops
+     */
+    protected void endpointDisconnected(ClientEndpoint client) {
+        disconnect(client);
+    }
+
     /**
      * Client disconnect handler (following your pattern)
      */
-    protected synchronized void disconnect(ConnectionToClient client) {
-        String clientIP = client.getInetAddress().getHostAddress();
-        String clientHostName = client.getInetAddress().getHostName();
-        String disconnectionStatus = "ClientIP: " + clientIP + " Client Host Name: " + clientHostName
-                + " status: disconnected";
+    protected void disconnect(ClientEndpoint client) {
+        // Per-connection state first, so it is released even if the bookkeeping below fails
+        dispatcher.release(client);
+        if (updatePublisher != null) {
+            updatePublisher.unsubscribe(client);
+        }
+        if (parkingController != null) {
+            parkingController.closeSession(client);
+        }
 
-        synchronized (clientsMap) {
-            boolean ipExists = false;
-            ConnectionToClient existingClient = null;
+        InetAddress address = client.getInetAddress();
+        if (address != null) {
+            String clientIP = address.getHostAddress();
+            String disconnectionStatus = "ClientIP: " + clientIP + " status: disconnected";
 
-            for (Map.Entry<ConnectionToClient, String> entry : clientsMap.entrySet()) {
-                if (entry.getValue().contains(clientIP)) {
-                    ipExists = true;
-                    existingClient = entry.getKey();
-                    break;
+            synchronized (clientsMap) {
+                boolean ipExists = false;
+                ClientEndpoint existingClient = null;
+
+                for (Map.Entry<ClientEndpoint, String> entry : clientsMap.entrySet()) {
+                    if (entry.getValue().contains(clientIP)) {
+                        ipExists = true;
+                        existingClient = entry.getKey();
+                        break;
+                    }
                 }
-            }
 
-            if (ipExists) {
-                clientsMap.put(existingClient, disconnectionStatus);
+                if (ipExists) {
+                    clientsMap.put(existingClient, disconnectionStatus);
+                }
             }
         }
 
@@ -478,11 +980,13 @@ public class ParkingServer extends AbstractServer {
         } catch (Throwable t) {
             port = DEFAULT_PORT;
         }
+        
+        ServerMode mode = args.length > 1 ? ServerMode.fromOption(args[1]) : ServerMode.fromSystemProperty();
 
-        ParkingServer sv = new ParkingServer(port);
+        ParkingServer sv = new ParkingServer(port, mode);
 
         try {
-            sv.listen();
+            sv.start();
         } catch (Exception ex) {
             System.out.println("ERROR - Could not listen for clients!");
         }
@@ -501,8 +1005,19 @@ public class ParkingServer extends AbstractServer {
         if (connectionPoolTimer != null) {
             connectionPoolTimer.shutdown();
         }
+        if (updatePublisher != null) {
+            updatePublisher.shutdown();
+        }
+        metricsEndpoint.stop();
+        dispatcher.shutdown();
+        ConnectionPool.shutdownAll();
+        EmailService.shutdown(); // Unsent emails stay in the outbox for the next start
         try {
-            close();
+            if (transport != null) {
+                transport.close();
+            } else {
+                close();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
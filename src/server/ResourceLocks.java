@@ -0,0 +1,59 @@
+package server;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ResourceLocks - striped locks keyed by the resource an operation touches
+ * ("user:dana", "code:123456", "reservation:42", SPOTS).
+ * Only operations that share a stripe wait for each other; everything else runs in parallel.
+ */
+public class ResourceLocks {
+
+    /**
+     * Key shared by reservation requests, which check the 40% availability rule before booking.
+     * Entries do not need it: spots are claimed atomically by SpotOccupancy.
+     */
+    public static final String SPOTS = "spots";
+
+    private static final int STRIPES = 64;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public ResourceLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Acquire the locks for all given keys.
+     * Stripes are always taken in index order so two operations can never deadlock.
+     * @return the stripe indexes that were locked, to be passed to release()
+     */
+    public int[] acquire(String... keys) {
+        int[] held = Arrays.stream(keys)
+            .mapToInt(this::stripeFor)
+            .distinct()
+            .sorted()
+            .toArray();
+
+        for (int index : held) {
+            stripes[index].lock();
+        }
+        return held;
+    }
+
+    /**
+     * Release locks previously taken with acquire()
+     */
+    public void release(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            stripes[held[i]].unlock();
+        }
+    }
+
+    private int stripeFor(String key) {
+        return Math.floorMod(key.hashCode(), STRIPES);
+    }
+}
@@ -0,0 +1,336 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import services.ConnectionPool;
+import services.LatencyHistogram;
+import services.StatementTracer;
+
+/**
+ * ServerMetrics - request counts and latency histograms per operation (a Message type such as
+ * ENTER_PARKING, or the keyword of a string command such as enterParking).
+ *
+ * Each request's time is split into phases that add up to its total:
+ * - decode: turning the received bytes into a Message
+ * - handler: the handler's own work, without the two phases below
+ * - db: waiting for and holding pooled database connections (see ConnectionPool.takeThreadDatabaseNanos)
+ * - encode: serializing the Messages sent back (string replies are written by the transport and not counted)
+ *
+ * While a handler runs, the SQL statements it executes are tagged with its operation
+ * (see StatementTracer), so statement counts can be related to requests.
+ *
+ * Recording is lock-free. The number of operations is capped so unknown string commands
+ * cannot grow the table without bound; anything beyond the cap is counted as "other".
+ * Rendered in the Prometheus text format for the HTTP endpoint and GET_SERVER_METRICS.
+ */
+public class ServerMetrics {
+
+    public static final String UNDECODABLE = "undecodable";
+    private static final String OTHER = "other";
+    private static final int MAX_OPERATIONS = 256;
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    /**
+     * The parts a request's time is split into
+     */
+    public enum Phase {
+        DECODE, HANDLER, DB, ENCODE, TOTAL;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new LinkedHashMap<>();
+    private final List<Supplier<String>> collectors = new ArrayList<>();
+    private final ThreadLocal<RequestTiming> currentRequest = ThreadLocal.withInitial(RequestTiming::new);
+    private final long startedAt = System.nanoTime();
+
+    // Recording *******************************************************
+
+    /**
+     * Runs a request's handler on the calling thread and records its phases
+     * @param operation Message type name or string command keyword
+     * @param decodeNanos Time spent decoding the request before the handler
+     */
+    public void record(String operation, long decodeNanos, Runnable handler) {
+        RequestTiming timing = currentRequest.get();
+        timing.encodeNanos = 0;
+        timing.failed = false;
+        ConnectionPool.takeThreadDatabaseNanos();
+        StatementTracer.setOperation(operation);
+
+        long start = System.nanoTime();
+        try {
+            handler.run();
+        } catch (RuntimeException | Error e) {
+            timing.failed = true;
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            StatementTracer.setOperation(null);
+            long db = ConnectionPool.takeThreadDatabaseNanos();
+            OperationMetrics metrics = operation(operation);
+            metrics.requests.incrementAndGet();
+            if (timing.failed) {
+                metrics.errors.incrementAndGet();
+            }
+            metrics.phase(Phase.DECODE).record(decodeNanos);
+            metrics.phase(Phase.HANDLER).record(elapsed - db - timing.encodeNanos);
+            metrics.phase(Phase.DB).record(db);
+            metrics.phase(Phase.ENCODE).record(timing.encodeNanos);
+            metrics.phase(Phase.TOTAL).record(decodeNanos + elapsed);
+        }
+    }
+
+    /**
+     * Records a request that could not be decoded, so it has no operation
+     */
+    public void recordUndecodable(long decodeNanos) {
+        OperationMetrics metrics = operation(UNDECODABLE);
+        metrics.requests.incrementAndGet();
+        metrics.errors.incrementAndGet();
+        metrics.phase(Phase.DECODE).record(decodeNanos);
+        metrics.phase(Phase.TOTAL).record(decodeNanos);
+    }
+
+    /**
+     * Adds encoding time to the request running on the calling thread
+     */
+    public void addEncodeNanos(long nanos) {
+        currentRequest.get().encodeNanos += nanos;
+    }
+
+    /**
+     * Counts the request running on the calling thread as an error (its handler caught the failure)
+     */
+    public void markFailed() {
+        currentRequest.get().failed = true;
+    }
+
+    /**
+     * Adds a value sampled at render time, e.g. the number of connected clients
+     */
+    public synchronized void registerGauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    /**
+     * Adds metrics rendered elsewhere (already in the Prometheus text format) to the output
+     */
+    public synchronized void registerCollector(Supplier<String> prometheusText) {
+        collectors.add(prometheusText);
+    }
+
+    private OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (operations.size() >= MAX_OPERATIONS) {
+            return operations.computeIfAbsent(OTHER, n -> new OperationMetrics());
+        }
+        return operations.computeIfAbsent(name, n -> new OperationMetrics());
+    }
+
+    // Reading *********************************************************
+
+    /**
+     * Snapshot of every operation seen so far, sorted by name
+     */
+    public Map<String, OperationSnapshot> snapshot() {
+        Map<String, OperationSnapshot> snapshot = new TreeMap<>();
+        operations.forEach((name, metrics) -> snapshot.put(name, metrics.snapshot()));
+        return snapshot;
+    }
+
+    /**
+     * @return requests handled so far per operation
+     */
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        operations.forEach((name, metrics) -> counts.put(name, metrics.requests.get()));
+        return counts;
+    }
+
+    public double getUptimeSeconds() {
+        return (System.nanoTime() - startedAt) / 1e9;
+    }
+
+    /**
+     * Renders everything in the Prometheus text exposition format (version 0.0.4)
+     */
+    public String toPrometheusText() {
+        Map<String, OperationSnapshot> snapshot = snapshot();
+        StringBuilder out = new StringBuilder();
+
+        out.append("# HELP parkb_uptime_seconds Time since the server started\n");
+        out.append("# TYPE parkb_uptime_seconds gauge\n");
+        out.append("parkb_uptime_seconds ").append(format(getUptimeSeconds())).append('\n');
+        synchronized (this) {
+            gauges.forEach((name, gauge) -> {
+                out.append("# HELP ").append(name).append(' ').append(gauge.help).append('\n');
+                out.append("# TYPE ").append(name).append(" gauge\n");
+                out.append(name).append(' ').append(gauge.value.getAsLong()).append('\n');
+            });
+        }
+
+        out.append("# HELP parkb_requests_total Requests handled, by operation\n");
+        out.append("# TYPE parkb_requests_total counter\n");
+        snapshot.forEach((name, op) -> out.append("parkb_requests_total{operation=\"").append(name).append("\"} ")
+            .append(op.getRequests()).append('\n'));
+
+        out.append("# HELP parkb_request_errors_total Requests that failed, by operation\n");
+        out.append("# TYPE parkb_request_errors_total counter\n");
+        snapshot.forEach((name, op) -> out.append("parkb_request_errors_total{operation=\"").append(name).append("\"} ")
+            .append(op.getErrors()).append('\n'));
+
+        out.append("# HELP parkb_request_duration_seconds Request time by operation and phase\n");
+        out.append("# TYPE parkb_request_duration_seconds summary\n");
+        snapshot.forEach((name, op) -> {
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram.Snapshot histogram = op.get(phase);
+                String labels = "operation=\"" + name + "\",phase=\"" + phase.label() + "\"";
+                for (double quantile : QUANTILES) {
+                    out.append("parkb_request_duration_seconds{").append(labels).append(",quantile=\"")
+                        .append(quantile).append("\"} ").append(seconds(histogram.percentile(quantile))).append('\n');
+                }
+                out.append("parkb_request_duration_seconds_sum{").append(labels).append("} ")
+                    .append(seconds(histogram.getSumNanos())).append('\n');
+                out.append("parkb_request_duration_seconds_count{").append(labels).append("} ")
+                    .append(histogram.getCount()).append('\n');
+            }
+        });
+
+        out.append("# HELP parkb_request_duration_max_seconds Longest request time by operation and phase\n");
+        out.append("# TYPE parkb_request_duration_max_seconds gauge\n");
+        snapshot.forEach((name, op) -> {
+            for (Phase phase : Phase.values()) {
+                out.append("parkb_request_duration_max_seconds{operation=\"").append(name).append("\",phase=\"")
+                    .append(phase.label()).append("\"} ").append(seconds(op.get(phase).getMaxNanos())).append('\n');
+            }
+        });
+        synchronized (this) {
+            collectors.forEach(collector -> out.append(collector.get()));
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return format(nanos / 1e9);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.9f", value);
+    }
+
+    /**
+     * Turns the first word of a string command into an operation name (letters, digits and '_' only)
+     */
+    public static String commandOperation(String command) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < command.length() && name.length() < 32; i++) {
+            char c = command.charAt(i);
+            if (Character.isWhitespace(c) || c == ':') {
+                break;
+            }
+            if (c < 128 && (Character.isLetterOrDigit(c) || c == '_')) {
+                name.append(c);
+            }
+        }
+        return name.length() > 0 ? name.toString() : OTHER;
+    }
+
+    /**
+     * Counters and one histogram per phase for one operation
+     */
+    private static class OperationMetrics {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+        OperationMetrics() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+
+        LatencyHistogram phase(Phase phase) {
+            return phases[phase.ordinal()];
+        }
+
+        OperationSnapshot snapshot() {
+            List<LatencyHistogram.Snapshot> copies = new ArrayList<>(phases.length);
+            for (LatencyHistogram histogram : phases) {
+                copies.add(histogram.snapshot());
+            }
+            return new OperationSnapshot(requests.get(), errors.get(), copies);
+        }
+    }
+
+    /**
+     * One operation's counters and phase histograms at a point in time
+     */
+    public static class OperationSnapshot {
+        private final long requests;
+        private final long errors;
+        private final List<LatencyHistogram.Snapshot> phases;
+
+        OperationSnapshot(long requests, long errors, List<LatencyHistogram.Snapshot> phases) {
+            this.requests = requests;
+            this.errors = errors;
+            this.phases = phases;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public LatencyHistogram.Snapshot get(Phase phase) {
+            return phases.get(phase.ordinal());
+        }
+
+        /**
+         * The requests recorded after an earlier snapshot of the same operation
+         */
+        public OperationSnapshot minus(OperationSnapshot earlier) {
+            List<LatencyHistogram.Snapshot> window = new ArrayList<>(phases.size());
+            for (int i = 0; i < phases.size(); i++) {
+                window.add(phases.get(i).minus(earlier.phases.get(i)));
+            }
+            return new OperationSnapshot(requests - earlier.requests, errors - earlier.errors, window);
+        }
+    }
+
+    /**
+     * State of the request running on one thread
+     */
+    private static class RequestTiming {
+        long encodeNanos;
+        boolean failed;
+    }
+
+    private static class Gauge {
+        final String help;
+        final LongSupplier value;
+
+        Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
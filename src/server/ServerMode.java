@@ -0,0 +1,54 @@
+package server;
+
+/**
+ * How ParkingServer serves client connections.
+ * Selected at startup with the "bpark.server.mode" system property or the second argument of ParkingServer.main.
+ */
+public enum ServerMode {
+    /**
+     * Classic OCSF server - one platform thread per connected client
+     */
+    PLATFORM_THREADS("platform"),
+    /**
+     * One Java 21 virtual thread per connected client, same wire format as OCSF
+     */
+    VIRTUAL_THREADS("virtual"),
+    /**
+     * A few selector threads multiplex all clients; length-prefixed frames (common.FrameCodec)
+     */
+    NIO("nio");
+
+    public static final String MODE_PROPERTY = "bpark.server.mode";
+
+    private final String optionName;
+
+    ServerMode(String optionName) {
+        this.optionName = optionName;
+    }
+
+    public String getOptionName() {
+        return optionName;
+    }
+
+    /**
+     * Parses a mode option ("platform", "virtual", "nio"), falling back to PLATFORM_THREADS
+     */
+    public static ServerMode fromOption(String option) {
+        if (option != null) {
+            for (ServerMode mode : values()) {
+                if (mode.optionName.equalsIgnoreCase(option.trim()) || mode.name().equalsIgnoreCase(option.trim())) {
+                    return mode;
+                }
+            }
+            System.out.println("Unknown server mode '" + option + "', using " + PLATFORM_THREADS.optionName);
+        }
+        return PLATFORM_THREADS;
+    }
+
+    /**
+     * Reads the mode from the bpark.server.mode system property
+     */
+    public static ServerMode fromSystemProperty() {
+        return fromOption(System.getProperty(MODE_PROPERTY));
+    }
+}
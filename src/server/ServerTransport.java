@@ -0,0 +1,25 @@
+package server;
+
+import java.io.IOException;
+
+/**
+ * ServerTransport - an alternative to the OCSF listener that accepts clients
+ * and feeds their messages to ParkingServer.handleClientMessage
+ */
+public interface ServerTransport {
+
+    /**
+     * Opens the listening socket and starts accepting clients
+     */
+    void listen() throws IOException;
+
+    /**
+     * @return number of currently connected clients
+     */
+    int getNumberOfClients();
+
+    /**
+     * Stops accepting clients and closes all open connections
+     */
+    void close();
+}
@@ -22,10 +22,12 @@ public class ServerUI extends Application {
     }
 
     /**
-     * Starts the parking server with the specified port
+     * Starts the parking server with the specified port.
+     * The connection mode comes from -Dbpark.server.mode=platform|virtual|nio
      * @param p The port number as a string
+     * @return the server, which may have failed to listen (see ServerPortFrame.str)
      */
-    public static void runServer(String p) {
+    public static ParkingServer runServer(String p) {
         int port = 0;
 
         try {
@@ -34,13 +36,14 @@ public class ServerUI extends Application {
             System.out.println("ERROR - Could not parse port number!");
         }
 
-        ParkingServer sv = new ParkingServer(port);
+        ParkingServer sv = new ParkingServer(port, ServerMode.fromSystemProperty());
 
         try {
-            sv.listen();
+            sv.start();
         } catch (Exception ex) {
             ServerPortFrame.str = "error";
             System.out.println("ERROR - Could not listen for clients!");
         }
+        return sv;
     }
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+package server;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import controllers.ParkingController;
+import controllers.ParkingEventListener;
+import entities.ActiveParkingChanges;
+import entities.Message;
+import entities.Message.MessageType;
+import entities.ParkingEvent;
+
+/**
+ * UpdatePublisher - pushes ParkingController's occupancy and session changes to the clients
+ * that sent SUBSCRIBE_PARKING_UPDATES, replacing the portals' periodic full reloads.
+ *
+ * Events are handed to one publisher thread, so the gate request that caused a change never waits
+ * for the subscribers. It encodes each event once per codec in use and queues the bytes for every
+ * subscriber; each subscriber's queue is written out by its own sender, one at a time and in order,
+ * so a slow client holds up only itself. A subscriber whose queue is full (MAX_QUEUED_UPDATES behind)
+ * is disconnected rather than buffered without limit; it reloads and subscribes again on reconnect.
+ * A new subscriber first gets a SNAPSHOT taken on the publisher thread; events raised after it was
+ * registered follow the snapshot, and session events carry the active parking log version, so a
+ * client skips what the snapshot already holds and notices a gap.
+ */
+public class UpdatePublisher implements ParkingEventListener {
+
+    private static final int MAX_QUEUED_UPDATES = 256;
+
+    private final ParkingController controller;
+    private final String codecInfoKey;
+    private final BiFunction<Message, Object, byte[]> encoder;
+    private final Map<ClientEndpoint, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService publisher;
+    private final ExecutorService senders;
+
+    /**
+     * @param controller Source of the snapshot sent to new subscribers
+     * @param codecInfoKey ClientEndpoint info key holding the codec a client negotiated
+     * @param encoder Encodes a message for a codec version (null = Java serialization)
+     */
+    public UpdatePublisher(ParkingController controller, String codecInfoKey, BiFunction<Message, Object, byte[]> encoder) {
+        this.controller = controller;
+        this.codecInfoKey = codecInfoKey;
+        this.encoder = encoder;
+        this.publisher = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "update-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        this.senders = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "update-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a client and sends it the current state
+     */
+    public void subscribe(ClientEndpoint client) {
+        publisher.execute(() -> {
+            Subscriber subscriber = new Subscriber(client);
+            subscribers.put(client, subscriber);
+            ActiveParkingChanges all = controller.getActiveParkingChanges(-1);
+            ParkingEvent snapshot = ParkingEvent.snapshot(all.getInserted(), all.getVersion(), controller.getAvailableParkingSpots());
+            Message msg = new Message(MessageType.PARKING_UPDATE, snapshot);
+            subscriber.offer(encoder.apply(msg, client.getInfo(codecInfoKey)));
+        });
+    }
+
+    public void unsubscribe(ClientEndpoint client) {
+        subscribers.remove(client);
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void parkingEvent(ParkingEvent event) {
+        // Nobody listening: nothing to encode. A client subscribing right now
+        // reads this change in its snapshot, which is taken after it was registered.
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        try {
+            publisher.execute(() -> publish(event));
+        } catch (RuntimeException e) {
+            // Shut down
+        }
+    }
+
+    public void shutdown() {
+        publisher.shutdownNow();
+        senders.shutdownNow();
+        subscribers.clear();
+    }
+
+    private void publish(ParkingEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Message msg = new Message(MessageType.PARKING_UPDATE, event);
+        Map<Object, byte[]> encoded = new HashMap<>();
+        for (Subscriber subscriber : subscribers.values()) {
+            byte[] bytes = encoded.computeIfAbsent(subscriber.client.getInfo(codecInfoKey), codec -> encoder.apply(msg, codec));
+            subscriber.offer(bytes);
+        }
+    }
+
+    private void drop(Subscriber subscriber, String reason) {
+        if (!subscribers.remove(subscriber.client, subscriber)) {
+            return;
+        }
+        System.out.println("Dropping update subscriber " + subscriber.client.getInetAddress() + ": " + reason);
+    }
+
+    /**
+     * Updates waiting for one client. At most one sender drains it at any time,
+     * which keeps the client's updates in order.
+     */
+    private class Subscriber implements Runnable {
+        private final ClientEndpoint client;
+        private final Queue<byte[]> pending = new ArrayBlockingQueue<>(MAX_QUEUED_UPDATES);
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Subscriber(ClientEndpoint client) {
+            this.client = client;
+        }
+
+        void offer(byte[] bytes) {
+            if (bytes == null) {
+                return;
+            }
+            if (!client.isAlive()) {
+                drop(this, "connection closed");
+                return;
+            }
+            if (!pending.offer(bytes)) {
+                drop(this, "more than " + MAX_QUEUED_UPDATES + " updates behind");
+                pending.clear();
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // Already closing
+                }
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false); // Shut down
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                byte[] bytes;
+                while ((bytes = pending.poll()) != null) {
+                    try {
+                        client.sendToClient(bytes);
+                    } catch (IOException e) {
+                        drop(this, e.getMessage());
+                        pending.clear();
+                        return;
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            // An update queued after the last poll but before the flag was cleared
+            if (!pending.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
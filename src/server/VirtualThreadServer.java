@@ -0,0 +1,203 @@
+package server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * VirtualThreadServer - accepts clients and reads each connection on its own virtual thread.
+ * Speaks the same object-stream protocol as the OCSF client, so existing clients connect unchanged,
+ * but thousands of idle kiosks no longer cost thousands of OS threads.
+ */
+public class VirtualThreadServer implements ServerTransport {
+
+    private final ParkingServer server;
+    private final int port;
+    private final Set<StreamClientEndpoint> connections = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket serverSocket;
+    private volatile boolean listening = false;
+
+    public VirtualThreadServer(ParkingServer server, int port) {
+        this.server = server;
+        this.port = port;
+    }
+
+    /**
+     * Opens the server socket and starts the accept loop on a virtual thread
+     */
+    @Override
+    public void listen() throws IOException {
+        if (listening) {
+            return;
+        }
+        serverSocket = new ServerSocket(port);
+        listening = true;
+        Thread.ofVirtual().name("vt-accept-" + port).start(this::acceptLoop);
+        server.serverStarted();
+    }
+
+    private void acceptLoop() {
+        while (listening) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("vt-client-" + socket.getInetAddress().getHostAddress())
+                    .start(() -> serve(socket));
+            } catch (IOException e) {
+                if (listening) {
+                    System.out.println("Error accepting client connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads messages from one client until it disconnects
+     */
+    private void serve(Socket socket) {
+        StreamClientEndpoint endpoint;
+        try {
+            endpoint = new StreamClientEndpoint(socket);
+        } catch (IOException e) {
+            System.out.println("Error opening client streams: " + e.getMessage());
+            closeQuietly(socket);
+            return;
+        }
+
+        connections.add(endpoint);
+        server.endpointConnected(endpoint);
+        try {
+            while (listening) {
+                Object msg = endpoint.readObject();
+                server.handleClientMessage(msg, endpoint);
+            }
+        } catch (EOFException | SocketException e) {
+            // Client went away
+        } catch (IOException | ClassNotFoundException e) {
+            System.out.println("Error reading from client " + endpoint + ": " + e.getMessage());
+        } finally {
+            connections.remove(endpoint);
+            closeQuietly(socket);
+            server.endpointDisconnected(endpoint);
+        }
+    }
+
+    /**
+     * @return number of currently connected clients
+     */
+    @Override
+    public int getNumberOfClients() {
+        return connections.size();
+    }
+
+    /**
+     * Stops accepting clients and closes all open connections
+     */
+    @Override
+    public void close() {
+        if (!listening) {
+            return;
+        }
+        listening = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (StreamClientEndpoint endpoint : connections) {
+            try {
+                endpoint.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+        server.serverStopped();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    /**
+     * Client connection carried over object streams on a plain socket
+     */
+    static class StreamClientEndpoint implements ClientEndpoint {
+        private final Socket socket;
+        private final ObjectOutputStream output;
+        private final ObjectInputStream input;
+        // ReentrantLock rather than synchronized so a blocked write does not pin the carrier thread
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final Map<String, Object> info = new ConcurrentHashMap<>();
+
+        StreamClientEndpoint(Socket socket) throws IOException {
+            this.socket = socket;
+            // Output first: the header must go out before we block waiting for the client's header
+            this.output = new ObjectOutputStream(socket.getOutputStream());
+            this.output.flush();
+            this.input = new ObjectInputStream(socket.getInputStream());
+        }
+
+        Object readObject() throws IOException, ClassNotFoundException {
+            return input.readObject();
+        }
+
+        @Override
+        public void sendToClient(Object msg) throws IOException {
+            writeLock.lock();
+            try {
+                output.writeObject(msg);
+                output.flush();
+                output.reset(); // Do not keep every sent object reachable through the handle table
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return socket.getInetAddress();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !socket.isClosed();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        @Override
+        public Object getInfo(String infoType) {
+            return info.get(infoType);
+        }
+
+        @Override
+        public void setInfo(String infoType, Object value) {
+            if (value == null) {
+                info.remove(infoType);
+            } else {
+                info.put(infoType, value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+        }
+    }
+}
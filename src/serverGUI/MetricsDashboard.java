@@ -0,0 +1,229 @@
+package serverGUI;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.Node;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+import controllers.ParkingController;
+import server.ParkingServer;
+import server.ServerMetrics.OperationSnapshot;
+import server.ServerMetrics.Phase;
+import services.ConnectionPool;
+import services.EmailService;
+import services.LatencyHistogram;
+
+/**
+ * MetricsDashboard - live charts of the running server for the server GUI: request throughput,
+ * p50/p99 latency, connection pool use, email queue depth, auto-cancellation lag and occupancy,
+ * plus a table of each operation's rate and latency, slowest p99 first.
+ *
+ * One frame per second on the JavaFX thread. Every value comes from in-process state
+ * (ServerMetrics, ConnectionPool, EmailService and the in-memory spot occupancy), never the
+ * database. Rates and percentiles cover the last frame; the charts keep the last two minutes.
+ */
+public class MetricsDashboard {
+
+    private static final Duration FRAME = Duration.seconds(1);
+    private static final int HISTORY_FRAMES = 120;
+
+    private final ParkingServer server;
+    private final Timeline timeline;
+    private final VBox view = new VBox(10);
+
+    private final RollingChart throughput = new RollingChart("Throughput", "req/s", "requests", "errors");
+    private final RollingChart latency = new RollingChart("Latency (all operations)", "ms", "p50", "p99");
+    private final RollingChart pool = new RollingChart("Connection pool", "connections", "in use", "waiting", "max");
+    private final RollingChart email = new RollingChart("Email queue", "emails", "queued");
+    private final RollingChart cancellation = new RollingChart("Auto-cancellation lag", "s", "lag");
+    private final RollingChart occupancy = new RollingChart("Occupancy", "spots", "occupied", "total");
+    private final TextArea operationTable = new TextArea();
+
+    private Map<String, OperationSnapshot> previous;
+    private long previousNanos;
+    private long frame = 0;
+
+    public MetricsDashboard(ParkingServer server) {
+        this.server = server;
+        this.previous = server.getMetrics().snapshot();
+        this.previousNanos = System.nanoTime();
+
+        GridPane charts = new GridPane();
+        charts.setHgap(10);
+        charts.setVgap(10);
+        charts.add(throughput.chart, 0, 0);
+        charts.add(latency.chart, 1, 0);
+        charts.add(pool.chart, 2, 0);
+        charts.add(email.chart, 0, 1);
+        charts.add(cancellation.chart, 1, 1);
+        charts.add(occupancy.chart, 2, 1);
+
+        operationTable.setEditable(false);
+        operationTable.setPrefHeight(160);
+        operationTable.getStyleClass().add("client-connections");
+
+        Label tableHeader = new Label("Operations (last second, slowest p99 first)");
+        tableHeader.getStyleClass().add("field-label");
+        view.getChildren().addAll(charts, tableHeader, operationTable);
+
+        timeline = new Timeline(new KeyFrame(FRAME, event -> update()));
+        timeline.setCycleCount(Animation.INDEFINITE);
+    }
+
+    public Node getView() {
+        return view;
+    }
+
+    public void start() {
+        timeline.play();
+    }
+
+    public void stop() {
+        timeline.stop();
+    }
+
+    /**
+     * Samples everything once and adds a point to each chart (runs on the JavaFX thread)
+     */
+    private void update() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - previousNanos) / 1e9);
+        Map<String, OperationSnapshot> current = server.getMetrics().snapshot();
+        frame++;
+
+        long requests = 0;
+        long errors = 0;
+        LatencyHistogram.Snapshot all = null;
+        List<OperationRow> rows = new ArrayList<>();
+        for (Map.Entry<String, OperationSnapshot> entry : current.entrySet()) {
+            OperationSnapshot earlier = previous.get(entry.getKey());
+            OperationSnapshot window = earlier != null ? entry.getValue().minus(earlier) : entry.getValue();
+            if (window.getRequests() == 0) {
+                continue;
+            }
+            LatencyHistogram.Snapshot total = window.get(Phase.TOTAL);
+            requests += window.getRequests();
+            errors += window.getErrors();
+            all = all == null ? total : all.plus(total);
+            rows.add(new OperationRow(entry.getKey(), window, seconds));
+        }
+        previous = current;
+        previousNanos = now;
+
+        throughput.add(frame, requests / seconds, errors / seconds);
+        latency.add(frame, all == null ? 0 : millis(all.percentile(0.5)), all == null ? 0 : millis(all.percentile(0.99)));
+
+        ConnectionPool connections = ParkingServer.getConnectionPool();
+        if (connections != null) {
+            pool.add(frame, connections.getActiveCount(), connections.getWaitingCount(), connections.getMaxSize());
+        } else {
+            pool.add(frame, 0, 0, 0);
+        }
+        email.add(frame, EmailService.getPendingCount());
+
+        ParkingController parking = ParkingServer.parkingController;
+        if (parking != null) {
+            cancellation.add(frame, parking.getAutoCancellationLagMillis() / 1000.0);
+            occupancy.add(frame, parking.getOccupiedParkingSpots(), parking.getTotalParkingSpots());
+        } else {
+            cancellation.add(frame, 0);
+            occupancy.add(frame, 0, 0);
+        }
+
+        rows.sort((a, b) -> Long.compare(b.p99, a.p99));
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%-28s %9s %10s %10s %10s %7s%n",
+            "operation", "req/s", "p50 ms", "p99 ms", "max ms", "errors"));
+        for (OperationRow row : rows) {
+            table.append(row).append('\n');
+        }
+        operationTable.setText(table.toString());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * One line of the operation table
+     */
+    private static class OperationRow {
+        final String operation;
+        final double rate;
+        final long p50;
+        final long p99;
+        final long max;
+        final long errors;
+
+        OperationRow(String operation, OperationSnapshot window, double seconds) {
+            LatencyHistogram.Snapshot total = window.get(Phase.TOTAL);
+            this.operation = operation;
+            this.rate = window.getRequests() / seconds;
+            this.p50 = total.percentile(0.5);
+            this.p99 = total.percentile(0.99);
+            this.max = total.getMaxNanos();
+            this.errors = window.getErrors();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-28s %9.1f %10.2f %10.2f %10.2f %7d",
+                operation, rate, millis(p50), millis(p99), millis(max), errors);
+        }
+    }
+
+    /**
+     * A line chart showing the last HISTORY_FRAMES frames of one or more series
+     */
+    private static class RollingChart {
+        final NumberAxis xAxis = new NumberAxis();
+        final NumberAxis yAxis = new NumberAxis();
+        final LineChart<Number, Number> chart = new LineChart<>(xAxis, yAxis);
+        final List<XYChart.Series<Number, Number>> series = new ArrayList<>();
+
+        RollingChart(String title, String unit, String... seriesNames) {
+            chart.setTitle(title);
+            chart.setAnimated(false);
+            chart.setCreateSymbols(false);
+            chart.setPrefSize(300, 180);
+            chart.getStyleClass().add("metrics-chart");
+            xAxis.setAutoRanging(false);
+            xAxis.setTickLabelsVisible(false);
+            xAxis.setTickMarkVisible(false);
+            yAxis.setLabel(unit);
+            yAxis.setForceZeroInRange(true);
+            for (String name : seriesNames) {
+                XYChart.Series<Number, Number> line = new XYChart.Series<>();
+                line.setName(name);
+                series.add(line);
+                chart.getData().add(line);
+            }
+        }
+
+        /**
+         * Adds one value per series at a frame, dropping points older than the history
+         */
+        void add(long frame, double... values) {
+            for (int i = 0; i < series.size(); i++) {
+                List<XYChart.Data<Number, Number>> points = series.get(i).getData();
+                points.add(new XYChart.Data<>(frame, values[i]));
+                if (points.size() > HISTORY_FRAMES) {
+                    points.remove(0);
+                }
+            }
+            xAxis.setLowerBound(frame - HISTORY_FRAMES);
+            xAxis.setUpperBound(frame);
+        }
+    }
+}
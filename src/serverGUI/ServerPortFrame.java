@@ -12,8 +12,9 @@ import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
+import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
-import ocsf.server.ConnectionToClient;
+import server.ClientEndpoint;
 import server.ParkingServer;
 import controllers.ParkingController;
 import controllers.ReportController;
@@ -21,7 +22,7 @@ import server.ServerUI;
 
 /**
  * ServerPortFrame provides the GUI interface for managing the ParkB server.
- * Now includes auto-cancellation service status display.
+ * Now includes auto-cancellation service status display and a live metrics dashboard.
  */
 public class ServerPortFrame extends Application {
     public static String str = "";
@@ -34,8 +35,11 @@ public class ServerPortFrame extends Application {
     private TextField serverip;
     @FXML
     private TextArea txtClientConnection;
+    @FXML
+    private VBox metricsPane;
 
     ServerPortFrame controller;
+    private MetricsDashboard dashboard;
 
     @Override
     public void start(Stage primaryStage) throws Exception {
@@ -70,12 +74,17 @@ public class ServerPortFrame extends Application {
                 
                 if (ParkingServer.parkingController.successFlag == 1) {
                     // Start the server
-                    ServerUI.runServer(ParkingServer.DEFAULT_PORT.toString());
+                    ParkingServer server = ServerUI.runServer(ParkingServer.DEFAULT_PORT.toString());
+                    if ("error".equals(str)) {
+                        controller.textMessage.setText("Could not listen on port " + ParkingServer.DEFAULT_PORT + "!");
+                        return;
+                    }
                     controller.serverip.setText(ParkingServer.serverIp);
                     controller.textMessage.setText("ParkB Server Running Successfully!");
                     
                     // Show connection info with auto-cancellation status
                     showSystemInfo();
+                    startDashboard(server);
                 } else {
                     controller.textMessage.setText("Database connection failed! Check MySQL server.");
                 }
@@ -85,6 +94,19 @@ public class ServerPortFrame extends Application {
         });
     }
 
+    /**
+     * Shows live charts of the running server below the connection list.
+     * Kept on the FXML controller, which is the instance the Exit button calls.
+     */
+    private void startDashboard(ParkingServer server) {
+        if (controller.metricsPane == null) {
+            return;
+        }
+        controller.dashboard = new MetricsDashboard(server);
+        controller.metricsPane.getChildren().add(controller.dashboard.getView());
+        controller.dashboard.start();
+    }
+
     /**
      * Handles the Exit button click event.
      */
@@ -92,6 +114,10 @@ public class ServerPortFrame extends Application {
     public void getExitBtn(ActionEvent event) throws Exception {
         System.out.println("Shutting down ParkB Server");
         
+        if (dashboard != null) {
+            dashboard.stop();
+        }
+        
         // Shutdown server gracefully including auto-cancellation service
         if (ParkingServer.parkingController != null) {
             ParkingServer.parkingController.shutdown();
@@ -105,7 +131,7 @@ public class ServerPortFrame extends Application {
      * Updates the client connections display in the GUI.
      * @param clientsMap Map containing client connection information
      */
-    public void printConnection(Map<ConnectionToClient, String> clientsMap) {
+    public void printConnection(Map<ClientEndpoint, String> clientsMap) {
         System.out.println("Client connections: " + clientsMap);
         Platform.runLater(() -> {
             String toPrint = "";
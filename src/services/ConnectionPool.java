@@ -0,0 +1,464 @@
+package services;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * ConnectionPool - a small pooled DataSource for the MySQL database.
+ * ParkingController, ReportController and SmartParkingController all draw from one pool per database,
+ * so concurrent requests each get their own connection instead of sharing a single socket.
+ *
+ * - Borrowing is reentrant per thread: a nested getConnection() on a thread that already holds a connection
+ *   returns a handle to the same connection, so helper methods join the caller's transaction and cannot
+ *   deadlock the pool by waiting for a second connection.
+ * - When the last handle is closed the connection is reset (uncommitted work rolled back, auto-commit on,
+ *   read-only off) before it goes back to the pool.
+ * - Connections idle for a while are validated before being handed out.
+ * - A housekeeping thread reports connections held longer than the leak threshold, and trims idle
+ *   connections down to the minimum size. With -Dbpark.pool.traceLeaks=true each borrow also records
+ *   its stack trace, which the leak report prints (off by default: it costs a stack walk per borrow).
+ * - The time each thread spends waiting for and holding connections is added up, so request metrics
+ *   can tell database time from the rest (see takeThreadDatabaseNanos).
+ * - Statements created on pooled connections are traced per SQL template, with a slow-query log
+ *   (see StatementTracer and getStatementTracer).
+ */
+public class ConnectionPool implements DataSource {
+
+    public static final int DEFAULT_MIN_SIZE = 2;
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    private static final long BORROW_TIMEOUT_MS = 10_000;
+    private static final long VALIDATE_AFTER_IDLE_MS = 5_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long LEAK_THRESHOLD_MS = 30_000;
+    private static final long IDLE_TIMEOUT_MS = 10 * 60_000;
+    private static final long HOUSEKEEPING_INTERVAL_MS = 10_000;
+    private static final boolean TRACE_LEAKS = Boolean.getBoolean("bpark.pool.traceLeaks");
+
+    private static final Map<String, ConnectionPool> POOLS = new HashMap<>();
+
+    // Per thread, across all pools: nanoseconds spent waiting for or holding a connection
+    private static final ThreadLocal<long[]> THREAD_DATABASE_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ThreadLocal<Lease> currentLease = new ThreadLocal<>();
+    private final StatementTracer tracer = new StatementTracer();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "db-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeeping,
+            HOUSEKEEPING_INTERVAL_MS, HOUSEKEEPING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the shared pool for a database, creating it on first use
+     */
+    public static synchronized ConnectionPool forDatabase(String url, String user, String password) {
+        String key = url + "|" + user;
+        ConnectionPool pool = POOLS.get(key);
+        if (pool == null || pool.closed) {
+            pool = new ConnectionPool(url, user, password, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE);
+            POOLS.put(key, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Closes every shared pool (server shutdown)
+     */
+    public static synchronized void shutdownAll() {
+        for (ConnectionPool pool : POOLS.values()) {
+            pool.shutdown();
+        }
+        POOLS.clear();
+    }
+
+    /**
+     * Borrows a connection. Close it (try-with-resources) to return it to the pool.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        Lease lease = currentLease.get();
+        if (lease != null && !lease.released) {
+            lease.depth++;
+            return lease.newHandle();
+        }
+
+        long waitStart = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        if (!acquired) {
+            THREAD_DATABASE_NANOS.get()[0] += System.nanoTime() - waitStart;
+            throw new SQLTimeoutException("Timed out after " + BORROW_TIMEOUT_MS + " ms waiting for a database connection ("
+                + leases.size() + " in use, max " + maxSize + ")");
+        }
+
+        try {
+            lease = new Lease(takeIdleOrCreate(), waitStart);
+        } catch (SQLException | RuntimeException e) {
+            THREAD_DATABASE_NANOS.get()[0] += System.nanoTime() - waitStart;
+            permits.release();
+            throw e;
+        }
+        leases.add(lease);
+        currentLease.set(lease);
+        return lease.newHandle();
+    }
+
+    /**
+     * Returns the time the calling thread spent waiting for or holding pooled connections
+     * since the previous call, and starts counting again from zero
+     */
+    public static long takeThreadDatabaseNanos() {
+        long[] nanos = THREAD_DATABASE_NANOS.get();
+        long taken = nanos[0];
+        nanos[0] = 0;
+        return taken;
+    }
+
+    /**
+     * Takes a healthy idle connection, or opens a new one
+     */
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER_IDLE_MS || isHealthy(pooled)) {
+                return pooled;
+            }
+            System.out.println("Discarding broken pooled connection");
+            destroy(pooled);
+        }
+        Connection physical = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isHealthy(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Called when the last handle of a lease is closed
+     */
+    private void release(Lease lease) {
+        THREAD_DATABASE_NANOS.get()[0] += System.nanoTime() - lease.requestedNanos;
+        lease.released = true;
+        currentLease.remove();
+        leases.remove(lease);
+        PooledConnection pooled = lease.pooled;
+        try {
+            if (resetState(pooled.physical) && !closed) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pooled); // Most recently used first, so surplus connections age out
+            } else {
+                destroy(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Puts a connection back into the state a new borrower expects
+     * @return false if the connection is unusable
+     */
+    private boolean resetState(Connection physical) {
+        try {
+            if (physical.isClosed()) {
+                return false;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback(); // Whatever the borrower did not commit is discarded
+                physical.setAutoCommit(true);
+            }
+            if (physical.isReadOnly()) {
+                physical.setReadOnly(false);
+            }
+            physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Failed to reset pooled connection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // Already broken
+        }
+    }
+
+    /**
+     * Reports suspected leaks, trims surplus idle connections and tops up to the minimum size
+     */
+    private void housekeeping() {
+        long now = System.currentTimeMillis();
+
+        for (Lease lease : leases) {
+            if (!lease.leakReported && now - lease.borrowedAt > LEAK_THRESHOLD_MS) {
+                lease.leakReported = true;
+                System.out.println("Possible connection leak: connection held for " + (now - lease.borrowedAt) / 1000
+                    + "s by thread " + lease.borrowerThread);
+                if (lease.borrowSite != null) {
+                    lease.borrowSite.printStackTrace(System.out);
+                }
+            }
+        }
+
+        PooledConnection pooled;
+        while (totalConnections.get() > minSize && (pooled = idle.peekLast()) != null
+                && now - pooled.lastUsed > IDLE_TIMEOUT_MS) {
+            if (idle.removeLastOccurrence(pooled)) {
+                destroy(pooled);
+            }
+        }
+
+        while (!closed && totalConnections.get() < minSize) {
+            try {
+                Connection physical = DriverManager.getConnection(url, user, password);
+                totalConnections.incrementAndGet();
+                idle.offerLast(new PooledConnection(physical));
+            } catch (SQLException e) {
+                System.out.println("Could not open pooled connection: " + e.getMessage());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Closes idle connections and stops handing out new ones.
+     * Connections still borrowed are closed when they are returned.
+     */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    // Statistics ******************************************************
+
+    public int getActiveCount() {
+        return leases.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return threads waiting for a connection because all are in use
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return execution statistics and the slow-query log of the statements run on this pool
+     */
+    public StatementTracer getStatementTracer() {
+        return tracer;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    // DataSource boilerplate ******************************************
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only serves its configured user");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * A physical connection owned by the pool
+     */
+    private static class PooledConnection {
+        final Connection physical;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    /**
+     * One thread's use of a pooled connection, shared by all nested handles on that thread
+     */
+    private class Lease {
+        final PooledConnection pooled;
+        final long borrowedAt = System.currentTimeMillis();
+        final long requestedNanos; // When the borrower started waiting for it
+        final String borrowerThread = Thread.currentThread().getName();
+        final Throwable borrowSite = TRACE_LEAKS ? new Throwable("Connection borrowed here") : null;
+        int depth = 1;
+        volatile boolean released = false;
+        volatile boolean leakReported = false;
+
+        Lease(PooledConnection pooled, long requestedNanos) {
+            this.pooled = pooled;
+            this.requestedNanos = requestedNanos;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new Handle(this));
+        }
+
+        void handleClosed() {
+            if (--depth == 0) {
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * What callers see: delegates to the physical connection, and close() returns it to the pool
+     */
+    private class Handle implements InvocationHandler {
+        private final Lease lease;
+        private boolean closed = false;
+
+        Handle(Lease lease) {
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    lease.handleClosed();
+                }
+                return null;
+            case "isClosed":
+                return closed || lease.pooled.physical.isClosed();
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Pooled[" + lease.pooled.physical + "]";
+            default:
+                if (closed) {
+                    throw new SQLException("Connection handle is already closed");
+                }
+                Object result;
+                try {
+                    result = method.invoke(lease.pooled.physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Statement) {
+                    String sql = method.getName().equals("createStatement") ? null : (String) args[0];
+                    return tracer.wrap((Statement) result, method.getReturnType(), sql, (Connection) proxy);
+                }
+                return result;
+            }
+        }
+    }
+}
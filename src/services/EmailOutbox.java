@@ -0,0 +1,321 @@
+package services;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * EmailOutbox - persistent queue of outgoing emails with a small pool of sender threads.
+ *
+ * enqueue() writes the email to a file in the outbox directory and returns at once; the file is
+ * deleted only after the SMTP server accepted the message, so queued mail survives a restart
+ * and is picked up again by the next server run. Each worker keeps one connected Transport and
+ * sends whatever is ready in batches over it, closing it after a quiet period. A failed email is
+ * retried with exponential backoff and moved to the failed/ subdirectory after MAX_ATTEMPTS.
+ */
+public class EmailOutbox {
+
+    private static final String SUFFIX = ".mail";
+    private static final int FILE_MAGIC = 0x42504D31; // "BPM1"
+    private static final int BATCH_SIZE = 20;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long FIRST_RETRY_MS = 2_000;
+    private static final long MAX_RETRY_MS = 5 * 60_000;
+    private static final long IDLE_DISCONNECT_MS = 30_000; // SMTP servers drop idle connections anyway
+    private static final long SHUTDOWN_WAIT_MS = 15_000; // Per worker, for the email it is sending
+
+    private final Path directory;
+    private final Path failedDirectory;
+    private final Session session;
+    private final InternetAddress sender;
+    private final DelayQueue<OutboundEmail> ready = new DelayQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param directory Where queued emails are kept until sent
+     * @param workerCount Number of sender threads, each with its own SMTP connection
+     * @param session Mail session (SMTP host, port, credentials)
+     * @param sender From address
+     */
+    public EmailOutbox(Path directory, int workerCount, Session session, InternetAddress sender) throws IOException {
+        this.directory = directory;
+        this.failedDirectory = directory.resolve("failed");
+        this.session = session;
+        this.sender = sender;
+        Files.createDirectories(failedDirectory);
+
+        int recovered = recoverPending();
+        if (recovered > 0) {
+            System.out.println("Email outbox: " + recovered + " unsent emails recovered from " + directory);
+        }
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::workerLoop, "email-sender-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Queues an email. Returns once it is on disk; delivery happens in the background.
+     * @return false if the email could not be written to the outbox
+     */
+    public boolean enqueue(String label, String recipient, String subject, String htmlBody) {
+        String id = String.format("%d-%06d", System.currentTimeMillis(), sequence.incrementAndGet() % 1_000_000);
+        OutboundEmail email = new OutboundEmail(id, label, recipient, subject, htmlBody);
+        try {
+            write(email);
+        } catch (IOException e) {
+            System.err.println("❌ Could not queue email " + label + " to " + recipient + ": " + e.getMessage());
+            return false;
+        }
+        ready.add(email);
+        return true;
+    }
+
+    /**
+     * @return emails waiting to be sent, including those waiting for a retry
+     */
+    public int getPendingCount() {
+        return ready.size();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Stops the sender threads and waits for them, so an email being sent is not picked up again by
+     * the next outbox reading the directory. Unsent emails stay in the outbox directory for the next start.
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(SHUTDOWN_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (worker.isAlive()) {
+                System.err.println("Email outbox: " + worker.getName() + " still sending after "
+                    + SHUTDOWN_WAIT_MS / 1000 + "s, its email may be sent twice");
+            }
+        }
+    }
+
+    // Sending *********************************************************
+
+    private void workerLoop() {
+        Transport transport = null;
+        while (running) {
+            List<OutboundEmail> batch = new ArrayList<>(BATCH_SIZE);
+            try {
+                OutboundEmail first = ready.poll(IDLE_DISCONNECT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    transport = disconnect(transport);
+                    continue;
+                }
+                batch.add(first);
+                ready.drainTo(batch, BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            // On shutdown the rest of the batch stays on disk for the next outbox
+            for (int i = 0; i < batch.size() && running; i++) {
+                OutboundEmail email = batch.get(i);
+                try {
+                    if (transport == null || !transport.isConnected()) {
+                        transport = disconnect(transport);
+                        transport = session.getTransport("smtp");
+                        transport.connect();
+                    }
+                    MimeMessage message = toMessage(email);
+                    transport.sendMessage(message, message.getAllRecipients());
+                    delivered(email);
+                } catch (MessagingException | RuntimeException e) {
+                    // The connection state is unknown after a failure, start the next attempt on a fresh one
+                    transport = disconnect(transport);
+                    retryOrGiveUp(email, e);
+                }
+            }
+        }
+        disconnect(transport);
+    }
+
+    private MimeMessage toMessage(OutboundEmail email) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(sender);
+        message.addRecipient(Message.RecipientType.TO, new InternetAddress(email.recipient));
+        message.setSubject(email.subject);
+        message.setContent(email.htmlBody, "text/html; charset=UTF-8");
+        message.saveChanges();
+        return message;
+    }
+
+    private Transport disconnect(Transport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // Connection already gone
+            }
+        }
+        return null;
+    }
+
+    private void delivered(OutboundEmail email) {
+        try {
+            Files.deleteIfExists(fileFor(email));
+        } catch (IOException e) {
+            System.err.println("Could not remove sent email " + email.id + " from the outbox: " + e.getMessage());
+        }
+        sentCount.incrementAndGet();
+        System.out.println("✅ Email sent successfully: " + email.label + " to " + email.recipient);
+    }
+
+    private void retryOrGiveUp(OutboundEmail email, Exception cause) {
+        email.attempts++;
+        if (email.attempts >= MAX_ATTEMPTS) {
+            failedCount.incrementAndGet();
+            System.err.println("❌ Failed to send email: " + email.label + " to " + email.recipient
+                + " after " + email.attempts + " attempts: " + cause.getMessage());
+            try {
+                Files.move(fileFor(email), failedDirectory.resolve(email.id + SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.err.println("Could not move failed email " + email.id + ": " + e.getMessage());
+            }
+            return;
+        }
+        long delay = Math.min(MAX_RETRY_MS, FIRST_RETRY_MS << (email.attempts - 1));
+        System.err.println("⚠️ Email " + email.label + " to " + email.recipient + " failed (" + cause.getMessage()
+            + "), retry " + email.attempts + " in " + delay / 1000 + "s");
+        email.notBefore = System.currentTimeMillis() + delay;
+        ready.add(email);
+    }
+
+    // Persistence *****************************************************
+
+    private Path fileFor(OutboundEmail email) {
+        return directory.resolve(email.id + SUFFIX);
+    }
+
+    /**
+     * Writes to a temporary file first, so a crash never leaves a half-written email behind
+     */
+    private void write(OutboundEmail email) throws IOException {
+        Path temp = directory.resolve(email.id + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp); DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(FILE_MAGIC);
+            writeString(out, email.label);
+            writeString(out, email.recipient);
+            writeString(out, email.subject);
+            writeString(out, email.htmlBody);
+        }
+        Files.move(temp, fileFor(email), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int recoverPending() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null); // Names start with the enqueue time, so this keeps the original order
+
+        int recovered = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            String id = name.substring(0, name.length() - SUFFIX.length());
+            try (InputStream stream = Files.newInputStream(file); DataInputStream in = new DataInputStream(stream)) {
+                if (in.readInt() != FILE_MAGIC) {
+                    throw new IOException("not an outbox file");
+                }
+                ready.add(new OutboundEmail(id, readString(in), readString(in), readString(in), readString(in)));
+                recovered++;
+            } catch (IOException e) {
+                System.err.println("Skipping unreadable outbox file " + file + ": " + e.getMessage());
+                Files.move(file, failedDirectory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return recovered;
+    }
+
+    // Length-prefixed UTF-8 (writeUTF is limited to 64KB, HTML bodies can be larger)
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One queued email; ordered by the time it may next be attempted
+     */
+    private static class OutboundEmail implements Delayed {
+        final String id;
+        final String label;
+        final String recipient;
+        final String subject;
+        final String htmlBody;
+        int attempts = 0;
+        volatile long notBefore = 0;
+
+        OutboundEmail(String id, String label, String recipient, String subject, String htmlBody) {
+            this.id = id;
+            this.label = label;
+            this.recipient = recipient;
+            this.subject = subject;
+            this.htmlBody = htmlBody;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(notBefore - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            OutboundEmail that = (OutboundEmail) other;
+            int byTime = Long.compare(notBefore, that.notBefore);
+            return byTime != 0 ? byTime : id.compareTo(that.id);
+        }
+    }
+}
@@ -1,21 +1,23 @@
 package services;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Properties;
 
 import javax.mail.Authenticator;
-import javax.mail.Message;
 import javax.mail.PasswordAuthentication;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
 
 /**
  * EmailService for BPark System - Hebrew Only Handles all email notifications
  * for the parking system
+ *
+ * Emails are not sent on the caller's thread: sendNotification builds the content, puts it in
+ * the persistent EmailOutbox and returns, and the outbox workers deliver it in the background.
  */
 public class EmailService {
     
@@ -27,6 +29,14 @@ public class EmailService {
     private static final String COMPANY_NAME = "BPARK";
     private static final String LOGO_URL = "https://i.postimg.cc/7LFkRhp3/Screenshot-2025-06-04-180239.jpg";
     
+    // Delivery configuration
+    private static final int SENDER_THREADS = 2;
+    private static final String OUTBOX_DIRECTORY = System.getProperty("bpark.mail.outbox", "outbox");
+    private static String smtpHost = "smtp.gmail.com";
+    private static int smtpPort = 587;
+    private static boolean smtpSecure = true; // STARTTLS + login; off for the local test server
+    private static EmailOutbox outbox;
+    
     // Email notification types
     public enum NotificationType {
         LATE_PICKUP,
@@ -41,33 +51,64 @@ public class EmailService {
     
     /**
      * Main method to send any type of email notification (Hebrew only)
+     * Queues the email and returns immediately
+     * @return true if the email was queued for delivery
      */
     public static boolean sendNotification(NotificationType type, String recipientEmail, 
                                          String customerName, Object... additionalData) {
         try {
-            Session session = createEmailSession();
-            MimeMessage message = new MimeMessage(session);
-            
-            // Set sender
-            message.setFrom(new InternetAddress(GMAIL_USERNAME, COMPANY_NAME + " System"));
-            message.addRecipient(Message.RecipientType.TO, new InternetAddress(recipientEmail));
-            
             // Get email content based on type
             EmailContent content = generateEmailContent(type, customerName, additionalData);
-            message.setSubject(content.subject);
-            message.setContent(content.htmlBody, "text/html; charset=UTF-8");
-            
-            Transport.send(message);
-            System.out.println("✅ Email sent successfully: " + type + " to " + recipientEmail);
-            return true;
+            return outbox().enqueue(type.name(), recipientEmail, content.subject, content.htmlBody);
             
         } catch (Exception e) {
-            System.err.println("❌ Failed to send email: " + type + " to " + recipientEmail);
+            System.err.println("❌ Failed to queue email: " + type + " to " + recipientEmail);
             e.printStackTrace();
             return false;
         }
     }
     
+    /**
+     * Sends through another SMTP server, e.g. a LocalSmtpServer for offline testing.
+     * Emails already queued stay in the outbox and go to the new server.
+     * @param secure true for STARTTLS and login with the configured account
+     */
+    public static synchronized void useSmtpServer(String host, int port, boolean secure) {
+        shutdown();
+        smtpHost = host;
+        smtpPort = port;
+        smtpSecure = secure;
+    }
+    
+    /**
+     * @return emails queued and not yet delivered
+     */
+    public static synchronized int getPendingCount() {
+        return outbox == null ? 0 : outbox.getPendingCount();
+    }
+    
+    /**
+     * Stops the sender threads; undelivered emails stay on disk for the next start
+     */
+    public static synchronized void shutdown() {
+        if (outbox != null) {
+            outbox.shutdown();
+            outbox = null;
+        }
+    }
+    
+    /**
+     * Returns the outbox, starting it (and recovering unsent emails) on first use
+     */
+    private static synchronized EmailOutbox outbox() throws Exception {
+        if (outbox == null) {
+            Path directory = Paths.get(OUTBOX_DIRECTORY);
+            outbox = new EmailOutbox(directory, SENDER_THREADS, createEmailSession(),
+                                     new InternetAddress(GMAIL_USERNAME, COMPANY_NAME + " System"));
+        }
+        return outbox;
+    }
+    
     /**
      * Specific methods for easy integration
      */
@@ -112,14 +153,17 @@ public class EmailService {
      */
     private static Session createEmailSession() {
         Properties properties = new Properties();
-        properties.put("mail.smtp.host", "smtp.gmail.com");
-        properties.put("mail.smtp.port", "587");
+        properties.put("mail.smtp.host", smtpHost);
+        properties.put("mail.smtp.port", String.valueOf(smtpPort));
+        properties.put("mail.smtp.connectiontimeout", "10000");
+        properties.put("mail.smtp.timeout", "10000");
+        if (!smtpSecure) {
+            return Session.getInstance(properties);
+        }
         properties.put("mail.smtp.auth", "true");
         properties.put("mail.smtp.starttls.enable", "true");
         properties.put("mail.smtp.starttls.required", "true");
         properties.put("mail.smtp.ssl.protocols", "TLSv1.2");
-        properties.put("mail.smtp.connectiontimeout", "10000");
-        properties.put("mail.smtp.timeout", "10000");
         
         return Session.getInstance(properties, new Authenticator() {
             @Override
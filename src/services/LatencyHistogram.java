@@ -0,0 +1,152 @@
+package services;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram - lock-free histogram of durations in nanoseconds, bucketed like HdrHistogram:
+ * 16 linear sub-buckets per power of two, so a percentile is within 1/16 (6.25%) of the true value
+ * at every magnitude. Recording is one atomic increment per bucket plus count, sum and max updates,
+ * so request threads never block on it.
+ *
+ * Values above MAX_TRACKABLE_NANOS (about 18 minutes) land in the top bucket; the max stays exact.
+ * A snapshot is a copy that can be read at leisure, and the difference of two snapshots gives the
+ * distribution of the window between them.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final long MAX_TRACKABLE_NANOS = 1L << 40;
+    private static final int BUCKETS = indexOf(MAX_TRACKABLE_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration; negative values count as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(Math.min(value, MAX_TRACKABLE_NANOS)));
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Another thread raised the max in between; compare again
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.get(), max.get());
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Highest value that falls into a bucket
+     */
+    private static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * A point-in-time copy of a histogram
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSumNanos() {
+            return sum;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param quantile Between 0 and 1 (0.99 for p99)
+         * @return the value at or below which that share of the recorded values lies, 0 if empty
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * The values of this and another snapshot together
+         */
+        public Snapshot plus(Snapshot other) {
+            long[] merged = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                merged[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(merged, sum + other.sum, Math.max(max, other.max));
+        }
+
+        /**
+         * The values recorded after an earlier snapshot of the same histogram.
+         * The max of the window is only known to bucket precision.
+         */
+        public Snapshot minus(Snapshot earlier) {
+            long[] window = new long[counts.length];
+            int highest = -1;
+            for (int i = 0; i < counts.length; i++) {
+                window[i] = counts[i] - earlier.counts[i];
+                if (window[i] > 0) {
+                    highest = i;
+                }
+            }
+            long windowMax = highest < 0 ? 0 : Math.min(highestValueIn(highest), max);
+            return new Snapshot(window, sum - earlier.sum, windowMax);
+        }
+    }
+}
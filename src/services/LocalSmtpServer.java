@@ -0,0 +1,207 @@
+package services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LocalSmtpServer - minimal in-process SMTP server for trying the email pipeline offline.
+ * Accepts every message on the loopback interface and keeps it in memory; no AUTH, no TLS.
+ * Point EmailService at it with EmailService.useSmtpServer("localhost", server.getPort(), false).
+ *
+ * Supports HELO/EHLO, MAIL, RCPT, DATA, RSET, NOOP and QUIT, which is all JavaMail needs to send.
+ * failNextMessages(n) makes the next n DATA commands fail with a 451, to exercise retries.
+ */
+public class LocalSmtpServer {
+
+    private final ServerSocket serverSocket;
+    private final BlockingQueue<ReceivedMail> received = new LinkedBlockingQueue<>();
+    private final List<Socket> sessions = Collections.synchronizedList(new ArrayList<>());
+    private volatile int failuresToInject = 0;
+    private volatile int connectionCount = 0;
+    private volatile boolean running = true;
+
+    /**
+     * @param port Port to listen on, 0 for any free port
+     */
+    public LocalSmtpServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "local-smtp-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return number of SMTP connections opened so far (shows whether senders reuse connections)
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public void failNextMessages(int count) {
+        failuresToInject = count;
+    }
+
+    /**
+     * Waits for the next delivered message
+     * @return the message, or null on timeout
+     */
+    public ReceivedMail poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return received.poll(timeout, unit);
+    }
+
+    public int getReceivedCount() {
+        return received.size();
+    }
+
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        synchronized (sessions) {
+            for (Socket socket : sessions) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionCount++;
+                sessions.add(socket);
+                Thread session = new Thread(() -> serve(socket), "local-smtp-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Local SMTP accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * One SMTP conversation
+     */
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            reply(out, "220 localhost BPark test SMTP");
+
+            String from = null;
+            List<String> recipients = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                switch (command) {
+                case "EHLO":
+                    reply(out, "250-localhost\r\n250-8BITMIME\r\n250 SMTPUTF8");
+                    break;
+                case "HELO":
+                    reply(out, "250 localhost");
+                    break;
+                case "MAIL":
+                    from = argument(line);
+                    recipients.clear();
+                    reply(out, "250 OK");
+                    break;
+                case "RCPT":
+                    recipients.add(argument(line));
+                    reply(out, "250 OK");
+                    break;
+                case "DATA":
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    String data = readData(in);
+                    if (failuresToInject > 0) {
+                        failuresToInject--;
+                        reply(out, "451 Injected failure, try again later");
+                    } else {
+                        received.add(new ReceivedMail(from, new ArrayList<>(recipients), data));
+                        reply(out, "250 OK queued");
+                    }
+                    from = null;
+                    recipients.clear();
+                    break;
+                case "RSET":
+                    from = null;
+                    recipients.clear();
+                    reply(out, "250 OK");
+                    break;
+                case "NOOP":
+                    reply(out, "250 OK");
+                    break;
+                case "QUIT":
+                    reply(out, "221 Bye");
+                    return;
+                default:
+                    reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            sessions.remove(socket);
+        }
+    }
+
+    private static String readData(BufferedReader in) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(".")) {
+            data.append(line.startsWith("..") ? line.substring(1) : line).append("\r\n"); // Undo dot-stuffing
+        }
+        return data.toString();
+    }
+
+    private static String argument(String line) {
+        int open = line.indexOf('<');
+        int close = line.indexOf('>', open + 1);
+        return open >= 0 && close > open ? line.substring(open + 1, close) : line.substring(line.indexOf(':') + 1).trim();
+    }
+
+    private static void reply(Writer out, String text) throws IOException {
+        out.write(text + "\r\n");
+        out.flush();
+    }
+
+    /**
+     * A message as it arrived over SMTP (headers and body, still MIME-encoded)
+     */
+    public static class ReceivedMail {
+        public final String from;
+        public final List<String> recipients;
+        public final String data;
+
+        ReceivedMail(String from, List<String> recipients, String data) {
+            this.from = from;
+            this.recipients = recipients;
+            this.data = data;
+        }
+    }
+}
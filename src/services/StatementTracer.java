@@ -0,0 +1,522 @@
+package services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StatementTracer - statistics per SQL template for every statement run on a ConnectionPool's
+ * connections: executions, failures (counted even when the caller swallows the SQLException),
+ * a latency histogram, rows returned and rows affected, and which server operation ran it.
+ *
+ * Statements run slower than the slow-query threshold are printed and kept, with their bound
+ * parameters, in a log of the most recent ones. The threshold comes from the
+ * bpark.db.slowQueryMs system property (default 100 ms).
+ *
+ * The template of a PreparedStatement is its SQL with whitespace collapsed; the SQL given to a
+ * plain Statement also has its literals replaced by '?'. The number of templates is capped,
+ * anything beyond the cap is counted under "other".
+ */
+public class StatementTracer {
+
+    public static final long DEFAULT_SLOW_QUERY_MS = 100;
+    private static final int MAX_TEMPLATES = 512;
+    private static final int SLOW_LOG_SIZE = 100;
+    private static final int MAX_PARAMETER_LENGTH = 64;
+    private static final String OTHER = "other";
+    private static final String BACKGROUND = "(background)"; // Run outside a server request
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    // Server operation (ServerMetrics) the calling thread is handling, null outside a request
+    private static final ThreadLocal<String> CURRENT_OPERATION = new ThreadLocal<>();
+
+    private final long slowQueryNanos;
+    private final Map<String, TemplateStats> templates = new ConcurrentHashMap<>();
+    private final ArrayDeque<SlowQuery> slowLog = new ArrayDeque<>();
+    private final AtomicLong slowQueries = new AtomicLong();
+
+    public StatementTracer() {
+        this(Long.getLong("bpark.db.slowQueryMs", DEFAULT_SLOW_QUERY_MS));
+    }
+
+    public StatementTracer(long slowQueryMs) {
+        this.slowQueryNanos = slowQueryMs * 1_000_000L;
+    }
+
+    /**
+     * Tags the statements the calling thread runs with a server operation (null clears the tag)
+     */
+    public static void setOperation(String operation) {
+        if (operation == null) {
+            CURRENT_OPERATION.remove();
+        } else {
+            CURRENT_OPERATION.set(operation);
+        }
+    }
+
+    // Wrapping ********************************************************
+
+    /**
+     * Wraps a statement just created on a pooled connection
+     * @param type The interface the caller asked for (Statement, PreparedStatement or CallableStatement)
+     * @param sql The SQL it was prepared with, null for a plain Statement
+     * @param connection What the statement's getConnection() returns (the caller's handle)
+     */
+    Statement wrap(Statement statement, Class<?> type, String sql, Connection connection) {
+        Class<?> face = type == CallableStatement.class || type == PreparedStatement.class ? type : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { face },
+            new TracedStatement(statement, sql == null ? null : template(sql, false), connection));
+    }
+
+    // Recording *******************************************************
+
+    private TemplateStats stats(String template) {
+        TemplateStats stats = templates.get(template);
+        if (stats != null) {
+            return stats;
+        }
+        if (templates.size() >= MAX_TEMPLATES) {
+            return templates.computeIfAbsent(OTHER, t -> new TemplateStats());
+        }
+        return templates.computeIfAbsent(template, t -> new TemplateStats());
+    }
+
+    private TemplateStats executed(String template, long nanos, boolean failed, Map<Integer, Object> parameters) {
+        TemplateStats stats = stats(template);
+        stats.executions.incrementAndGet();
+        if (failed) {
+            stats.errors.incrementAndGet();
+        }
+        stats.latency.record(nanos);
+        String operation = CURRENT_OPERATION.get();
+        stats.byOperation.computeIfAbsent(operation != null ? operation : BACKGROUND, o -> new AtomicLong())
+            .incrementAndGet();
+
+        if (nanos >= slowQueryNanos) {
+            SlowQuery slow = new SlowQuery(LocalDateTime.now(), template, describe(parameters), nanos, operation, failed);
+            slowQueries.incrementAndGet();
+            stats.keepIfSlowest(slow);
+            synchronized (slowLog) {
+                if (slowLog.size() == SLOW_LOG_SIZE) {
+                    slowLog.removeFirst();
+                }
+                slowLog.addLast(slow);
+            }
+            System.out.println("Slow query: " + slow);
+        }
+        return stats;
+    }
+
+    // Reading *********************************************************
+
+    public long getSlowQueryCount() {
+        return slowQueries.get();
+    }
+
+    /**
+     * @return the most recent slow queries, newest first
+     */
+    public List<SlowQuery> getSlowQueries() {
+        List<SlowQuery> recent;
+        synchronized (slowLog) {
+            recent = new ArrayList<>(slowLog);
+        }
+        Collections.reverse(recent);
+        return recent;
+    }
+
+    /**
+     * Readable report: templates by total time spent, how often each server operation ran them
+     * per request, and the slow-query log
+     * @param requestsByOperation Requests handled per server operation, for the per-request counts (may be empty)
+     */
+    public String report(Map<String, Long> requestsByOperation) {
+        Map<String, LatencyHistogram.Snapshot> latencies = new HashMap<>();
+        templates.forEach((sql, stats) -> latencies.put(sql, stats.latency.snapshot()));
+        List<String> sorted = new ArrayList<>(latencies.keySet());
+        sorted.sort(Comparator.comparingLong((String sql) -> latencies.get(sql).getSumNanos()).reversed());
+
+        StringBuilder out = new StringBuilder();
+        out.append("=== SQL statements by total time (").append(sorted.size()).append(" templates) ===\n");
+        int rank = 1;
+        for (String sql : sorted) {
+            TemplateStats stats = templates.get(sql);
+            LatencyHistogram.Snapshot latency = latencies.get(sql);
+            out.append(String.format(Locale.ROOT,
+                "#%d  total %.1f ms  calls %d  errors %d  mean %.3f ms  p50 %.3f ms  p99 %.3f ms  max %.3f ms  rows returned %d  rows affected %d%n",
+                rank++, latency.getSumNanos() / 1e6, stats.executions.get(), stats.errors.get(), latency.getMeanNanos() / 1e6,
+                latency.percentile(0.5) / 1e6, latency.percentile(0.99) / 1e6, latency.getMaxNanos() / 1e6,
+                stats.rowsReturned.get(), stats.rowsAffected.get()));
+            out.append("    ").append(sql).append('\n');
+
+            out.append("    run by:");
+            new TreeMap<>(stats.byOperation).forEach((operation, count) -> {
+                out.append(' ').append(operation).append(' ').append(count.get());
+                Long requests = requestsByOperation.get(operation);
+                if (requests != null && requests > 0) {
+                    out.append(String.format(Locale.ROOT, " (%.1f per request)", (double) count.get() / requests));
+                }
+                out.append(';');
+            });
+            out.append('\n');
+
+            SlowQuery slowest = stats.slowest;
+            if (slowest != null) {
+                out.append(String.format(Locale.ROOT, "    slowest: %.1f ms %s%n", slowest.getMillis(), slowest.getParameters()));
+            }
+        }
+
+        List<SlowQuery> slow = getSlowQueries();
+        out.append("\n=== Slow queries (>= ").append(slowQueryNanos / 1_000_000).append(" ms, ")
+            .append(slowQueries.get()).append(" in total, newest first) ===\n");
+        for (SlowQuery query : slow) {
+            out.append(query).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Per-template counters in the Prometheus text format, labelled with the SQL template
+     */
+    public String toPrometheusText() {
+        Map<String, TemplateStats> sorted = new TreeMap<>(templates);
+        StringBuilder out = new StringBuilder();
+
+        out.append("# HELP parkb_db_statements_total SQL statement executions, by template\n");
+        out.append("# TYPE parkb_db_statements_total counter\n");
+        sorted.forEach((sql, stats) -> out.append("parkb_db_statements_total{sql=\"").append(escape(sql)).append("\"} ")
+            .append(stats.executions.get()).append('\n'));
+
+        out.append("# HELP parkb_db_statement_errors_total SQL statement executions that threw, by template\n");
+        out.append("# TYPE parkb_db_statement_errors_total counter\n");
+        sorted.forEach((sql, stats) -> out.append("parkb_db_statement_errors_total{sql=\"").append(escape(sql)).append("\"} ")
+            .append(stats.errors.get()).append('\n'));
+
+        out.append("# HELP parkb_db_statement_rows_total Rows returned by queries and affected by updates, by template\n");
+        out.append("# TYPE parkb_db_statement_rows_total counter\n");
+        sorted.forEach((sql, stats) -> {
+            out.append("parkb_db_statement_rows_total{sql=\"").append(escape(sql)).append("\",kind=\"returned\"} ")
+                .append(stats.rowsReturned.get()).append('\n');
+            out.append("parkb_db_statement_rows_total{sql=\"").append(escape(sql)).append("\",kind=\"affected\"} ")
+                .append(stats.rowsAffected.get()).append('\n');
+        });
+
+        out.append("# HELP parkb_db_statement_duration_seconds SQL statement execution time, by template\n");
+        out.append("# TYPE parkb_db_statement_duration_seconds summary\n");
+        sorted.forEach((sql, stats) -> {
+            LatencyHistogram.Snapshot latency = stats.latency.snapshot();
+            String label = "sql=\"" + escape(sql) + "\"";
+            for (double quantile : new double[] { 0.5, 0.99 }) {
+                out.append("parkb_db_statement_duration_seconds{").append(label).append(",quantile=\"").append(quantile)
+                    .append("\"} ").append(String.format(Locale.ROOT, "%.9f", latency.percentile(quantile) / 1e9)).append('\n');
+            }
+            out.append("parkb_db_statement_duration_seconds_sum{").append(label).append("} ")
+                .append(String.format(Locale.ROOT, "%.9f", latency.getSumNanos() / 1e9)).append('\n');
+            out.append("parkb_db_statement_duration_seconds_count{").append(label).append("} ")
+                .append(latency.getCount()).append('\n');
+        });
+
+        out.append("# HELP parkb_db_slow_statements_total SQL statements slower than the slow-query threshold\n");
+        out.append("# TYPE parkb_db_slow_statements_total counter\n");
+        out.append("parkb_db_slow_statements_total ").append(slowQueries.get()).append('\n');
+        return out.toString();
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // Templates *******************************************************
+
+    /**
+     * Collapses whitespace and, for SQL with inline values, replaces string and number literals with '?'
+     */
+    static String template(String sql, boolean replaceLiterals) {
+        StringBuilder out = new StringBuilder(sql.length());
+        boolean space = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = out.length() > 0;
+                continue;
+            }
+            if (space) {
+                out.append(' ');
+                space = false;
+            }
+            if (replaceLiterals && (c == '\'' || c == '"')) {
+                // Skip to the closing quote, past backslash escapes and doubled quotes
+                int end = i + 1;
+                while (end < sql.length()) {
+                    char d = sql.charAt(end);
+                    if (d == '\\') {
+                        end += 2;
+                    } else if (d == c && end + 1 < sql.length() && sql.charAt(end + 1) == c) {
+                        end += 2;
+                    } else if (d == c) {
+                        break;
+                    } else {
+                        end++;
+                    }
+                }
+                out.append('?');
+                i = end;
+            } else if (replaceLiterals && Character.isDigit(c)
+                    && (out.length() == 0 || !Character.isLetterOrDigit(out.charAt(out.length() - 1)) && out.charAt(out.length() - 1) != '_')) {
+                while (i + 1 < sql.length() && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                out.append('?');
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String describe(Map<Integer, Object> parameters) {
+        if (parameters.isEmpty()) {
+            return "[]";
+        }
+        StringBuilder out = new StringBuilder("[");
+        parameters.forEach((index, value) -> {
+            if (out.length() > 1) {
+                out.append(", ");
+            }
+            String text = value instanceof String ? "'" + value + "'" : String.valueOf(value);
+            out.append(index).append('=').append(text.length() > MAX_PARAMETER_LENGTH
+                ? text.substring(0, MAX_PARAMETER_LENGTH) + "..." : text);
+        });
+        return out.append(']').toString();
+    }
+
+    // Types ***********************************************************
+
+    /**
+     * Counters for one SQL template
+     */
+    private static class TemplateStats {
+        final AtomicLong executions = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong rowsReturned = new AtomicLong();
+        final AtomicLong rowsAffected = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<String, AtomicLong> byOperation = new ConcurrentHashMap<>();
+        volatile SlowQuery slowest;
+
+        synchronized void keepIfSlowest(SlowQuery query) {
+            if (slowest == null || query.nanos > slowest.nanos) {
+                slowest = query;
+            }
+        }
+    }
+
+    /**
+     * One execution slower than the threshold
+     */
+    public static class SlowQuery {
+        private final LocalDateTime time;
+        private final String sql;
+        private final String parameters;
+        private final long nanos;
+        private final String operation;
+        private final boolean failed;
+
+        SlowQuery(LocalDateTime time, String sql, String parameters, long nanos, String operation, boolean failed) {
+            this.time = time;
+            this.sql = sql;
+            this.parameters = parameters;
+            this.nanos = nanos;
+            this.operation = operation;
+            this.failed = failed;
+        }
+
+        public LocalDateTime getTime() {
+            return time;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return the bound parameters, e.g. [1=42, 2='2025-06-01 10:00:00']
+         */
+        public String getParameters() {
+            return parameters;
+        }
+
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %.1f ms%s [%s] %s %s", TIME_FORMAT.format(time), getMillis(),
+                failed ? " FAILED" : "", operation != null ? operation : BACKGROUND, sql, parameters);
+        }
+    }
+
+    /**
+     * What callers see instead of the driver's statement: records each execution and its parameters
+     */
+    private class TracedStatement implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedTemplate;
+        private final Connection connection;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private String batchTemplate; // First SQL added to a plain Statement's batch
+
+        TracedStatement(Statement statement, String preparedTemplate, Connection connection) {
+            this.statement = statement;
+            this.preparedTemplate = preparedTemplate;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Traced[" + statement + "]";
+            case "getConnection":
+                return connection;
+            case "clearParameters":
+                parameters.clear();
+                break;
+            case "addBatch":
+                if (args != null && args.length == 1 && batchTemplate == null) {
+                    batchTemplate = template((String) args[0], true);
+                }
+                break;
+            case "clearBatch":
+                batchTemplate = null;
+                break;
+            case "execute":
+            case "executeQuery":
+            case "executeUpdate":
+            case "executeLargeUpdate":
+            case "executeBatch":
+            case "executeLargeBatch":
+                return execute(proxy, method, args);
+            default:
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                        && method.getDeclaringClass() != Statement.class) {
+                    parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                }
+            }
+            return call(method, args);
+        }
+
+        private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+            String template;
+            if (args != null && args.length > 0 && args[0] instanceof String) {
+                template = template((String) args[0], true);
+            } else if (preparedTemplate != null) {
+                template = preparedTemplate;
+            } else {
+                template = batchTemplate != null ? batchTemplate : OTHER;
+            }
+
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = call(method, args);
+            } catch (Throwable e) {
+                executed(template, System.nanoTime() - start, true, parameters);
+                throw e;
+            }
+            TemplateStats stats = executed(template, System.nanoTime() - start, false, parameters);
+
+            if (method.getName().endsWith("Batch")) {
+                batchTemplate = null;
+            }
+            if (result instanceof ResultSet) {
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                    new CountedResultSet((ResultSet) result, stats, (Statement) proxy));
+            } else if (result instanceof Integer || result instanceof Long) {
+                stats.rowsAffected.addAndGet(Math.max(0, ((Number) result).longValue()));
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    stats.rowsAffected.addAndGet(Math.max(0, count));
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    stats.rowsAffected.addAndGet(Math.max(0, count));
+                }
+            }
+            return result;
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A query's result set that counts the rows the caller read
+     */
+    private static class CountedResultSet implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final TemplateStats stats;
+        private final Statement statement;
+
+        CountedResultSet(ResultSet resultSet, TemplateStats stats, Statement statement) {
+            this.resultSet = resultSet;
+            this.stats = stats;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Counted[" + resultSet + "]";
+            case "getStatement":
+                return statement;
+            default:
+                Object result;
+                try {
+                    result = method.invoke(resultSet, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                    stats.rowsReturned.incrementAndGet();
+                }
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * TimerWheel - hashed timing wheel for many one-shot deadlines keyed by an ID.
+ * Scheduling and cancelling are O(1); one ticker thread advances the wheel and hands every key
+ * whose deadline has passed to the handler as one batch per tick.
+ *
+ * Deadlines further away than one revolution stay in their bucket and are skipped until
+ * the revolution they belong to. If the ticker falls behind, it catches up on the next run,
+ * so no deadline is lost, only delayed.
+ */
+public class TimerWheel<K> {
+
+    private final long tickMs;
+    private final List<Map<K, Long>> buckets; // key -> deadline tick
+    private final Map<K, Long> deadlines = new HashMap<>();
+    private final Consumer<List<K>> handler;
+    private final ScheduledExecutorService ticker;
+    private final long origin = System.currentTimeMillis();
+    private long processedTick = -1;
+    private volatile long handlingDeadline = -1; // Earliest deadline of the batch being handled, -1 when idle
+    private volatile long lastLagMs = 0;
+    private ScheduledFuture<?> ticking; // null while stopped
+
+    /**
+     * @param name Name of the ticker thread
+     * @param tickMs Resolution; a deadline fires within one tick after it passes
+     * @param wheelSize Number of buckets (one revolution = wheelSize * tickMs)
+     * @param handler Receives the keys that expired during one tick; runs on the ticker thread
+     */
+    public TimerWheel(String name, long tickMs, int wheelSize, Consumer<List<K>> handler) {
+        this.tickMs = tickMs;
+        this.handler = handler;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new HashMap<>());
+        }
+        this.ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts ticking; may be called again after stop, but not after shutdown
+     */
+    public synchronized void start() {
+        if (ticking != null) {
+            return;
+        }
+        ticking = ticker.scheduleAtFixedRate(this::advance, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops ticking and drops the pending deadlines; the ticker thread is kept for the next start.
+     * A batch already being handled still finishes.
+     */
+    public synchronized void stop() {
+        if (ticking != null) {
+            ticking.cancel(false);
+            ticking = null;
+        }
+        deadlines.clear();
+        for (Map<K, Long> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    /**
+     * Schedules (or moves) the deadline for a key. A deadline in the past fires on the next tick.
+     */
+    public synchronized void schedule(K key, long deadlineMillis) {
+        cancel(key);
+        // Round up, so a key never fires before its deadline
+        long tick = Math.max(tickAt(deadlineMillis + tickMs - 1), processedTick + 1);
+        deadlines.put(key, tick);
+        bucketFor(tick).put(key, tick);
+    }
+
+    /**
+     * @return true if the key had a pending deadline
+     */
+    public synchronized boolean cancel(K key) {
+        Long tick = deadlines.remove(key);
+        if (tick == null) {
+            return false;
+        }
+        bucketFor(tick).remove(key);
+        return true;
+    }
+
+    public synchronized boolean isScheduled(K key) {
+        return deadlines.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * How late expired keys are handled: while a batch is being handled, the time since its
+     * earliest deadline; otherwise how long after its earliest deadline the last batch finished
+     */
+    public long getLagMillis() {
+        long deadline = handlingDeadline;
+        return deadline >= 0 ? Math.max(0, System.currentTimeMillis() - deadline) : lastLagMs;
+    }
+
+    /**
+     * Stops the ticker thread for good; pending deadlines are dropped
+     */
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Processes every tick up to now and passes the expired keys to the handler
+     */
+    private void advance() {
+        List<K> expired = new ArrayList<>();
+        long earliestTick = Long.MAX_VALUE;
+        synchronized (this) {
+            long now = tickAt(System.currentTimeMillis());
+            while (processedTick < now) {
+                processedTick++;
+                Iterator<Map.Entry<K, Long>> entries = bucketFor(processedTick).entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<K, Long> entry = entries.next();
+                    if (entry.getValue() <= processedTick) {
+                        entries.remove();
+                        deadlines.remove(entry.getKey());
+                        expired.add(entry.getKey());
+                        earliestTick = Math.min(earliestTick, entry.getValue());
+                    }
+                }
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        long deadline = origin + earliestTick * tickMs;
+        handlingDeadline = deadline;
+        try {
+            handler.accept(expired);
+        } catch (RuntimeException e) {
+            System.err.println("Timer handler failed: " + e.getMessage());
+        } finally {
+            lastLagMs = Math.max(0, System.currentTimeMillis() - deadline);
+            handlingDeadline = -1;
+        }
+    }
+
+    private long tickAt(long millis) {
+        return Math.floorDiv(millis - origin, tickMs);
+    }
+
+    private Map<K, Long> bucketFor(long tick) {
+        return buckets.get((int) Math.floorMod(tick, (long) buckets.size()));
+    }
+}